@@ -25,8 +25,14 @@ import java.io.Serializable;
 
 import java.util.logging.Logger;
 
+import java.security.MessageDigest;
+
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.TreeMap;
+
+import javax.xml.bind.DatatypeConverter;
 
 import net.sf.json.JSONObject;
 import net.sf.json.JSONArray;
@@ -46,11 +52,21 @@ public class Artifact implements Serializable {
     /** The map of files to file metadata for an artifact */
     private final HashMap<String, FileMetadata> metadata;
 
+    /** When the version folder was last modified on the server, null if unknown */
+    private final String lastModified;
+
+    /** The digest of the version and its files, see {@link #getDigest()}. Null until it is computed. */
+    private String digest;
+
+    /** Read only view of the metadata, handed out instead of copies */
+    private transient Map<String, FileMetadata> metadataView;
+
     /** JSON tags for serializing/deserializing json objects */
     public static final String VERSION_TAG = "version";
     public static final String FILES_TAG = "files";
     public static final String FILE_NAME_TAG = "filename";
     public static final String METADATA_TAG = "metadata";
+    public static final String LAST_MODIFIED_TAG = "lastModified";
 
     /** A logger for the class */
     private static final Logger LOGGER = Logger.getLogger(Artifact.class.getName());
@@ -61,18 +77,82 @@ public class Artifact implements Serializable {
      * @param metadata The file information about the artifact
      */
     public Artifact(String version, HashMap<String, FileMetadata> metadata)
+    {
+        this(version, metadata, null);
+    }
+
+    /**
+     * Constructor
+     * @param version The version of the artifact
+     * @param metadata The file information about the artifact
+     * @param lastModified When the version folder was last modified on the server, may be null
+     */
+    public Artifact(String version, HashMap<String, FileMetadata> metadata, String lastModified)
+    {
+        this(version, metadata, lastModified, null);
+    }
+
+    /**
+     * Constructor
+     * @param version The version of the artifact
+     * @param metadata The file information about the artifact
+     * @param lastModified When the version folder was last modified on the server, may be null
+     * @param digest The digest of the artifact as returned by {@link #getDigest()}, null to compute it when needed
+     */
+    public Artifact(String version, HashMap<String, FileMetadata> metadata, String lastModified, String digest)
     {
         this.version = version;
+        this.digest = digest;
         this.metadata = new HashMap<String, FileMetadata>(metadata);
+        this.lastModified = lastModified;
+        this.metadataView = Collections.unmodifiableMap(this.metadata);
+    }
+
+    /**
+     * Function to restore the read only view after the artifact was deserialized
+     * @return The artifact to use
+     */
+    private Object readResolve()
+    {
+        metadataView = Collections.unmodifiableMap(metadata);
+        return this;
     }
 
     /**
      * Getter function for the file info of an artifact
-     * @return The file info of an artifact
+     * @return The file info of an artifact, which can not be modified
+     */
+    public Map<String, FileMetadata> getFileMetadata()
+    {
+        return metadataView;
+    }
+
+    /**
+     * Function to get the digest of the artifact. It is the SHA-1 of the version and the name, checksums and 
+     * size of each file in name order, so artifacts with equal digests have files with the same content.
+     * Both checksums of a file are included, with a placeholder for a missing one, so equal digests agree 
+     * with {@link FileMetadata#hasSameContent(FileMetadata)} whichever checksum it compares.
+     * @return The digest as lower case hex
      */
-    public HashMap<String, FileMetadata> getFileMetadata()
+    public String getDigest()
     {
-        return new HashMap<String,FileMetadata>(metadata);
+        String digest = this.digest;
+        if (digest == null)
+        {
+            MessageDigest sha1 = ArtifactoryUtils.newSHA1();
+            ArtifactoryUtils.update(sha1, version);
+            for (Map.Entry<String, FileMetadata> file : new TreeMap<String, FileMetadata>(metadata).entrySet())
+            {
+                FileMetadata fileMetadata = file.getValue();
+                ArtifactoryUtils.update(sha1, file.getKey());
+                ArtifactoryUtils.update(sha1, "sha1:" + (fileMetadata.getSHA1Sum() != null ? fileMetadata.getSHA1Sum() : "-"));
+                ArtifactoryUtils.update(sha1, "md5:" + (fileMetadata.getMD5Sum() != null ? fileMetadata.getMD5Sum() : "-"));
+                ArtifactoryUtils.update(sha1, String.valueOf(fileMetadata.getSize()));
+            }
+            digest = ArtifactoryUtils.toHex(sha1.digest());
+            this.digest = digest;
+        }
+        return digest;
     }
 
     /**
@@ -84,10 +164,46 @@ public class Artifact implements Serializable {
         return version;
     }
 
+    /**
+     * Getter for the modification date of the artifact's version folder
+     * @return When the version folder was last modified as an ISO8601 string, or null if unknown
+     */
+    public String getLastModified()
+    {
+        return lastModified;
+    }
+
+    /**
+     * Function to find when the version was published, which is when its newest file was created, 
+     * or when its folder was last modified if no file has a known creation date
+     * @return The publish time in milliseconds since the epoch, 0 if it is unknown
+     */
+    public long getPublishedTime()
+    {
+        long published = 0;
+        for (FileMetadata file : metadata.values())
+        {
+            published = Math.max(published, file.getCreatedTime());
+        }
+        if (published == 0 && lastModified != null)
+        {
+            try
+            {
+                published = DatatypeConverter.parseDateTime(lastModified).getTimeInMillis();
+            }
+            catch (IllegalArgumentException e)
+            {
+                LOGGER.log(FINE, "Could not parse modification date: " + lastModified);
+            }
+        }
+        return published;
+    }
+
     /**
      * Function to deserialize JSON that looks like: 
      * {
      *      "version": "V1",
+     *      "lastModified": "2014-01-01T00:00:00.000Z",   (optional)
      *      "files": [
      *      {
      *          "filename": "fileName",
@@ -115,7 +231,8 @@ public class Artifact implements Serializable {
             fileMetadata.put(file.getString(FILE_NAME_TAG), FileMetadata.fromJSON((JSONObject)file.get(METADATA_TAG)));
         }
 
-        return new Artifact(version, fileMetadata);
+        String lastModified = json.has(LAST_MODIFIED_TAG) ? json.getString(LAST_MODIFIED_TAG) : null;
+        return new Artifact(version, fileMetadata, lastModified);
     }
 
     /**
@@ -126,6 +243,10 @@ public class Artifact implements Serializable {
     {
         JSONObject json = new JSONObject();
         json.element(VERSION_TAG, version);
+        if (lastModified != null)
+        {
+            json.element(LAST_MODIFIED_TAG, lastModified);
+        }
 
         JSONArray fileArray = new JSONArray();
         for(Map.Entry<String, FileMetadata> data : metadata.entrySet())
@@ -0,0 +1,223 @@
+// Copyright (c) 2014 Pason Systems, Inc.
+
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+package com.pason.plugins.artifactorypolling;
+
+import hudson.Extension;
+import hudson.model.AbstractBuild;
+import hudson.model.AbstractDescribableImpl;
+import hudson.model.Descriptor;
+import hudson.util.ListBoxModel;
+
+import java.io.File;
+
+import jenkins.model.Jenkins;
+
+import org.kohsuke.stapler.DataBoundConstructor;
+
+/**
+ * Class that describes one artifact that a job polls: the repository, group and name of the artifact, 
+ * the filter its versions have to match and where its files are checked out to
+ */
+public class ArtifactCoordinate extends AbstractDescribableImpl<ArtifactCoordinate>
+{
+    /** The extension of the versions files */
+    public static final String VERSIONS_FILE_EXTENSION = ".state";
+    /** The extension of the versions files written when the state was stored as JSON */
+    public static final String LEGACY_VERSIONS_FILE_EXTENSION = ".json";
+
+    /** The repo that the artifact is from */
+    private final String repo;
+    /** The group that the artifact belongs to */
+    private final String groupID;
+    /** The name of the artifact */
+    private final String artifactID;
+    /** The version filter to use for filtering changes */
+    private final String versionFilter;
+    /** The directory to put the files of the artifact into */
+    private final String localPath;
+
+    /**
+     * Constructor
+     * @param repo The repository that the artifact is found in
+     * @param groupID The group that the artifact belongs to
+     * @param artifactID The name of the artifact
+     * @param versionFilter The filter that versions have to match
+     * @param localPath The directory to put the files of the artifact into, the artifactID if empty
+     */
+    @DataBoundConstructor
+    public ArtifactCoordinate(String repo, String groupID, String artifactID, String versionFilter, String localPath)
+    {
+        this.repo = repo;
+        this.groupID = groupID;
+        this.artifactID = artifactID;
+        this.versionFilter = versionFilter == null || versionFilter.length() == 0 ? "+" : versionFilter;
+        this.localPath = localPath == null || localPath.length() == 0 ? artifactID : localPath;
+    }
+
+    /**
+     * Getter function for the repository
+     * @return the repo that contains the artifact
+     */
+    public String getRepo()
+    {
+        return repo;
+    }
+
+    /**
+     * Getter function for the groupID
+     * @return the group that the artifact belongs to
+     */
+    public String getGroupID()
+    {
+        return groupID;
+    }
+
+    /**
+     * Getter function for the artifactID
+     * @return the name of the artifact
+     */
+    public String getArtifactID()
+    {
+        return artifactID;
+    }
+
+    /** 
+     * Getter function for the versionFilter
+     * @return the version filter for the artifact
+     */
+    public String getVersionFilter()
+    {
+        return versionFilter;
+    }
+
+    /** 
+     * Getter function for the local path
+     * @return the local path to checkout the artifact to
+     */
+    public String getLocalPath()
+    {
+        return localPath;
+    }
+
+    /**
+     * Function to get the key that identifies the coordinate in combined states and publish histories
+     * @return The key of the coordinate
+     */
+    public String getKey()
+    {
+        return key(repo, groupID, artifactID, versionFilter);
+    }
+
+    /**
+     * Function to build the key of a coordinate, see {@link #getKey()}. The version filter comes last, 
+     * so the keys of an artifact for every filter start with its key for an empty filter.
+     * @param repo The repository that contains the artifact
+     * @param groupID The group that the artifact belongs to
+     * @param artifactID The name of the artifact
+     * @param versionFilter The filter that versions have to match
+     * @return The key
+     */
+    public static String key(String repo, String groupID, String artifactID, String versionFilter)
+    {
+        return repo + "|" + groupID + "|" + artifactID + "|" + versionFilter;
+    }
+
+    /**
+     * Function to get the file that the state of the artifact is written to for a build. It holds a 
+     * {@link RevisionStateFile} or a {@link StateStore} manifest.
+     * @param build The build
+     * @return The versions file of the artifact in the directory of the build
+     */
+    public File getVersionsFile(AbstractBuild<?,?> build)
+    {
+        return new File(build.getRootDir(), getVersionsFileName() + VERSIONS_FILE_EXTENSION);
+    }
+
+    /**
+     * Function to find the file that the state of the artifact was stored in for a build. Builds from before 
+     * the state was stored in binary have a JSON file with the {@link #LEGACY_VERSIONS_FILE_EXTENSION}.
+     * @param build The build
+     * @return The versions file of the artifact in the directory of the build, or null if the build has none
+     */
+    public File findVersionsFile(AbstractBuild<?,?> build)
+    {
+        File file = getVersionsFile(build);
+        if (file.exists())
+        {
+            return file;
+        }
+        File legacy = new File(build.getRootDir(), getVersionsFileName() + LEGACY_VERSIONS_FILE_EXTENSION);
+        return legacy.exists() ? legacy : null;
+    }
+
+    /**
+     * Function to get the name of the versions files of the artifact
+     * @return The name without the extension
+     */
+    private String getVersionsFileName()
+    {
+        return "artifactoryVersions" +"-"+ repo +"-"+ groupID +"-"+ artifactID +"-"+ versionFilter;
+    }
+
+    /**
+     * Function to check if a state describes this artifact
+     * @param state The state to check
+     * @return Whether or not the repo, groupID and artifactID of the state match
+     */
+    public boolean isSameArtifact(ArtifactoryRevisionState state)
+    {
+        return artifactID.equals(state.getArtifactID()) &&
+               groupID.equals(state.getGroupID()) &&
+               repo.equals(state.getRepo());
+    }
+
+    @Override
+    public String toString()
+    {
+        return repo + ":" + groupID + ":" + artifactID + ":" + versionFilter;
+    }
+
+    /**
+     * Descriptor internal class for the coordinate
+     * For use with the UI
+     */
+    @Extension
+    public static class DescriptorImpl extends Descriptor<ArtifactCoordinate>
+    {
+        @Override
+        public String getDisplayName()
+        {
+            return "Artifact";
+        }
+
+        /**
+         * Function to populate the repositories drop down menu of the coordinate
+         * @return All the local repositories on the artifactory server
+         */
+        public ListBoxModel doFillRepoItems()
+        {
+            Jenkins jenkins = Jenkins.getInstance();
+            ArtifactoryRepository.DescriptorImpl descriptor = jenkins != null 
+                ? jenkins.getDescriptorByType(ArtifactoryRepository.DescriptorImpl.class) : null;
+            return descriptor != null ? descriptor.doFillRepoItems() : new ListBoxModel();
+        }
+    }
+}
@@ -20,21 +20,47 @@
 
 package com.pason.plugins.artifactorypolling;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
+import java.io.InputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
-import net.sf.json.JSON;
-import net.sf.json.JSONObject;
+import javax.xml.bind.DatatypeConverter;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+import com.google.common.base.Function;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+
 import net.sf.json.JSONArray;
-import net.sf.json.groovy.JsonSlurper;
+import net.sf.json.JSONObject;
 
+import org.apache.http.Consts;
 import org.apache.http.Header;
+import org.apache.http.HttpHeaders;
 import org.apache.http.HttpResponse;
-import org.apache.http.client.HttpClient;
+import org.apache.http.HttpStatus;
 import org.apache.http.client.methods.HttpGet;
-import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.util.EntityUtils;
 
 import static java.util.logging.Level.FINE;
 import static java.util.logging.Level.WARNING;
@@ -42,7 +68,9 @@ import static java.util.logging.Level.WARNING;
 /**
  * A class to interact with an artifactory server via the API.
  * 
- * All the API calls necessary are encapsulated in this class
+ * All the API calls necessary are encapsulated in this class. The calls that crawls make 
+ * many of also come in an asynchronous variant, which returns as soon as the request has been 
+ * handed to the non-blocking client of the connection.
  * @author ngutzmann
  *
  */
@@ -51,21 +79,65 @@ public class ArtifactoryAPI
 	/** The url of the artifactory instance */
     private final String artifactoryURL;
 
+    /** The shared connection to the artifactory instance */
+    private final ArtifactoryConnection connection;
+
+    /** Whether or not this object created the connection and has to close it */
+    private final boolean ownsConnection;
+
     /** A Logger for this class */
     private static final Logger LOGGER = Logger.getLogger(ArtifactoryAPI.class.getName());
 
     /**
-     * Constructor
+     * Constructor that creates a private connection to the server. 
+     * {@link ArtifactoryAPI#close()} must be called when the object is no longer needed.
      * @param artifactoryURL The server's URL.
      */
     public ArtifactoryAPI(String artifactoryURL)
     {
-        if (!artifactoryURL.endsWith("/"))
+        this(new ArtifactoryConnection(artifactoryURL, 
+                ArtifactoryConnection.DEFAULT_MAX_CONNECTIONS_PER_ROUTE, ArtifactoryConnection.DEFAULT_MAX_CONNECTIONS_TOTAL, 0, 0, 1, true), true);
+    }
+
+    /**
+     * Constructor that reuses a shared connection to the server
+     * @param connection The pooled connection to the server
+     */
+    public ArtifactoryAPI(ArtifactoryConnection connection)
+    {
+        this(connection, false);
+    }
+
+    /**
+     * Constructor
+     * @param connection The connection to the server
+     * @param ownsConnection Whether or not the connection is closed with this object
+     */
+    private ArtifactoryAPI(ArtifactoryConnection connection, boolean ownsConnection)
+    {
+        this.connection = connection;
+        this.ownsConnection = ownsConnection;
+        this.artifactoryURL = connection.getArtifactoryURL();
+    }
+
+    /**
+     * Getter function for the connection
+     * @return The connection to the server
+     */
+    public ArtifactoryConnection getConnection()
+    {
+        return connection;
+    }
+
+    /**
+     * Function to release the resources of this object. A shared connection is left open.
+     */
+    public void close()
+    {
+        if (ownsConnection)
         {
-            artifactoryURL += "/";
+            connection.close();
         }
-        
-        this.artifactoryURL = artifactoryURL;
     }
 
     /**
@@ -74,44 +146,46 @@ public class ArtifactoryAPI
      * @param groupID The group that the artifact belongs to
      * @param artifactID The name of the artifact
      * @param versionFilter 
-     * @return an array of artifact versions
+     * @return a list of artifact versions
+     * @throws IOException If the request failed
      */
-    public JSONArray getArtifactVersions(String repo, String groupID, String artifactID, String versionFilter)
+    public List<String> getArtifactVersions(String repo, String groupID, String artifactID, String versionFilter) throws IOException
     {
-        String groupURLPart = groupID.replace('.', '/');
-        String versionsURL = artifactoryURL + "api/storage/" + repo + '/' + groupURLPart + '/' + artifactID + "/";   
-        JSONObject json = (JSONObject) doGET(versionsURL, false);
-
-        JSONArray versions = getSubdirs(json, false);
-        JSONArray filteredVersions = new JSONArray();
-        String [] filterElements = versionFilter.split("\\.");
-        for (int i = 0; i < versions.size(); i++)
-        {
-            Boolean isValid = true;
-            String version = versions.getString(i);
-            String [] numbers = version.split("\\.");
+        FolderInfo folder = doGET(artifactURL(repo, groupID, artifactID), ArtifactoryJsonDecoder.FOLDER_INFO, FolderInfo.EMPTY);
+        return filterVersions(folder, versionFilter);
+    }
 
-            for (int j = 0; j < numbers.length; j++)
+    /**
+     * Function to retrieve all the available versions for an artifact without waiting for the response
+     * @param repo The repository the artifact is stored in
+     * @param groupID The group that the artifact belongs to
+     * @param artifactID The name of the artifact
+     * @param versionFilter The filter that versions have to match
+     * @return The future list of artifact versions
+     */
+    public ListenableFuture<List<String>> getArtifactVersionsAsync(String repo, String groupID, String artifactID, final String versionFilter)
+    {
+        ListenableFuture<FolderInfo> folder = doGETAsync(artifactURL(repo, groupID, artifactID), ArtifactoryJsonDecoder.FOLDER_INFO, FolderInfo.EMPTY);
+        return Futures.transform(folder, new Function<FolderInfo, List<String>>() {
+            public List<String> apply(FolderInfo input)
             {
-                if( !ArtifactoryUtils.isVersionDynamic(filterElements[j]) )
-                {
-                    if ( numbers[j].equals( filterElements[j] ) )
-                    {
-                        isValid &= true;
-                    }
-                    else
-                    {
-                        isValid &= false;
-                        break;
-                    }
-                }
-                else
-                {
-                    break;
-                }
+                return filterVersions(input, versionFilter);
             }
+        });
+    }
 
-            if (isValid)
+    /**
+     * Function to select the versions of an artifact folder that match a filter
+     * @param folder The artifact folder
+     * @param versionFilter The filter that versions have to match
+     * @return The matching versions
+     */
+    private List<String> filterVersions(FolderInfo folder, String versionFilter)
+    {
+        List<String> filteredVersions = new ArrayList<String>();
+        for (String version : getSubdirs(folder.getChildren(), false))
+        {
+            if (ArtifactoryUtils.matchesVersionFilter(version, versionFilter))
             {
                 LOGGER.log(FINE, "Version " + version + " matched filter: " + versionFilter);
                 filteredVersions.add(version);
@@ -127,15 +201,67 @@ public class ArtifactoryAPI
      * @param groupID The group that the artifact belongs to
      * @param artifactID The name of the artifact
      * @param version The version of the artifact
-     * @return an array of files that belong to an artifact at a version
+     * @return a list of files that belong to an artifact at a version
+     * @throws IOException If the request failed
      */
-    public JSONArray getArtifactFiles(String repo, String groupID, String artifactID, String version)
+    public List<String> getArtifactFiles(String repo, String groupID, String artifactID, String version) throws IOException
     { 
-        String groupURLPart = groupID.replace('.', '/');
-        String folderURL = artifactoryURL + "api/storage/" + repo + '/' + groupURLPart + '/' + artifactID + "/" + version +"/";
-        JSONObject json = (JSONObject) doGET(folderURL, false);
+        return getFileNames(getVersionFolder(repo, groupID, artifactID, version));
+    }
+
+    /**
+     * Function to retrieve the files associated with an artifact without waiting for the response
+     * @param repo The repository the artifact is stored in
+     * @param groupID The group that the artifact belongs to
+     * @param artifactID The name of the artifact
+     * @param version The version of the artifact
+     * @return The future list of files that belong to an artifact at a version
+     */
+    public ListenableFuture<List<String>> getArtifactFilesAsync(String repo, String groupID, String artifactID, String version)
+    {
+        return Futures.transform(getVersionFolderAsync(repo, groupID, artifactID, version), new Function<FolderInfo, List<String>>() {
+            public List<String> apply(FolderInfo input)
+            {
+                return getFileNames(input);
+            }
+        });
+    }
+
+    /**
+     * Function to retrieve the folder of an artifact version
+     * @param repo The repository the artifact is stored in
+     * @param groupID The group that the artifact belongs to
+     * @param artifactID The name of the artifact
+     * @param version The version of the artifact
+     * @return The modification date and contents of the version folder, {@link FolderInfo#EMPTY} if it does not exist
+     * @throws IOException If the request failed
+     */
+    public FolderInfo getVersionFolder(String repo, String groupID, String artifactID, String version) throws IOException
+    {
+        return doGET(artifactURL(repo, groupID, artifactID) + version + "/", ArtifactoryJsonDecoder.FOLDER_INFO, FolderInfo.EMPTY);
+    }
 
-        return getSubdirs(json, true);
+    /**
+     * Function to retrieve the folder of an artifact version without waiting for the response
+     * @param repo The repository the artifact is stored in
+     * @param groupID The group that the artifact belongs to
+     * @param artifactID The name of the artifact
+     * @param version The version of the artifact
+     * @return The future version folder, {@link FolderInfo#EMPTY} if it does not exist
+     */
+    public ListenableFuture<FolderInfo> getVersionFolderAsync(String repo, String groupID, String artifactID, String version)
+    {
+        return doGETAsync(artifactURL(repo, groupID, artifactID) + version + "/", ArtifactoryJsonDecoder.FOLDER_INFO, FolderInfo.EMPTY);
+    }
+
+    /**
+     * Function to get the names of the files (and sub folders) of a version folder
+     * @param folder The version folder
+     * @return The names of the entries of the folder
+     */
+    public List<String> getFileNames(FolderInfo folder)
+    {
+        return getSubdirs(folder.getChildren(), true);
     }
 
     /**
@@ -145,7 +271,8 @@ public class ArtifactoryAPI
      * @param artifactID The name of the artifact
      * @param version The version of the artifact
      * @param fileName The filename to fetch the data for
-     * @return JSON that looks like: 
+     * @return The checksums and size of the file, or null if the file does not exist. 
+     *   They are decoded from JSON that looks like: 
      *   {
 	 *		"uri": "http://localhost:8080/artifactory/api/storage/libs-release-local/org/acme/lib/ver/lib-ver.pom",
  	 *		"downloadUri": "http://localhost:8080/artifactory/libs-release-local/org/acme/lib/ver/lib-ver.pom",
@@ -169,25 +296,277 @@ public class ArtifactoryAPI
 	 *		        "sha1" : string
 	 *		    }
 	 *		}
+     * @throws IOException If the request failed
      */
-    public JSONObject getFileMetadata(String repo, String groupID, String artifactID, String version, String fileName)
+    public FileMetadata getFileMetadata(String repo, String groupID, String artifactID, String version, String fileName) throws IOException
     {
-        String groupURLPart = groupID.replace('.', '/');
-        String metadataURL = artifactoryURL + "api/storage/" + repo + '/' + groupURLPart + '/' + artifactID + "/" + version +"/" + fileName;
-        return (JSONObject) doGET(metadataURL, false);
+        return doGET(artifactURL(repo, groupID, artifactID) + version + "/" + fileName, ArtifactoryJsonDecoder.FILE_METADATA, null);
+    }
+
+    /**
+     * Function to retrieve file metadata of an artifact's file without waiting for the response, 
+     * see {@link #getFileMetadata(String, String, String, String, String)}
+     * @param repo The repository the artifact is stored in
+     * @param groupID The group that the artifact belongs to
+     * @param artifactID The name of the artifact
+     * @param version The version of the artifact
+     * @param fileName The filename to fetch the data for
+     * @return The future checksums and size of the file, null if the file does not exist
+     */
+    public ListenableFuture<FileMetadata> getFileMetadataAsync(String repo, String groupID, String artifactID, String version, String fileName)
+    {
+        return doGETAsync(artifactURL(repo, groupID, artifactID) + version + "/" + fileName, ArtifactoryJsonDecoder.FILE_METADATA, null);
+    }
+
+    /**
+     * Function to retrieve every file below an artifact, in every version folder and their sub folders, 
+     * with a single recursive listing
+     * @param repo The repository the artifact is stored in
+     * @param groupID The group that the artifact belongs to
+     * @param artifactID The name of the artifact
+     * @return a list of files with paths relative to the artifact folder, decoded from JSON that looks like:
+     *   {
+     *      "uri": "http://localhost:8080/artifactory/api/storage/libs-release-local/org/acme/lib",
+     *      "files": [
+     *          {
+     *              "uri": "/ver/lib-ver.pom",
+     *              "size": 1024,
+     *              "lastModified": ISO8601 (yyyy-MM-dd'T'HH:mm:ss.SSSZ),
+     *              "folder": false,
+     *              "sha1": string
+     *          }
+     *      ]
+     *   }
+     * @throws IOException If the request failed
+     */
+    public List<RemoteFile> listArtifactFiles(String repo, String groupID, String artifactID) throws IOException
+    {
+        String listURL = artifactURL(repo, groupID, artifactID) + "?list&deep=1&listFolders=0";
+        return doGET(listURL, ArtifactoryJsonDecoder.DEEP_LISTING, Collections.<RemoteFile>emptyList());
+    }
+
+    /**
+     * Function to retrieve every file of every version of an artifact with a single AQL query
+     * @param repo The repository the artifact is stored in
+     * @param groupID The group that the artifact belongs to
+     * @param artifactID The name of the artifact
+     * @return a list of files with paths relative to the artifact folder, decoded from AQL results that look like:
+     *   {
+     *      "results": [
+     *          {
+     *              "path": "org/acme/lib/ver",
+     *              "name": "lib-ver.pom",
+     *              "size": 1024,
+     *              "actual_md5": string,
+     *              "actual_sha1": string,
+     *              "created": ISO8601 (yyyy-MM-dd'T'HH:mm:ss.SSSZ)
+     *          }
+     *      ]
+     *   }
+     * @throws IOException If the request failed
+     */
+    public List<RemoteFile> searchArtifactFiles(String repo, String groupID, String artifactID) throws IOException
+    {
+        return searchFiles(repo, groupID, artifactID, null, Collections.<RemoteFile>emptyList());
+    }
+
+    /**
+     * Function to retrieve the files of an artifact that were created or modified after a point in time, with
+     * a single AQL query that adds a date clause to the one of {@link #searchArtifactFiles}
+     * @param repo The repository the artifact is stored in
+     * @param groupID The group that the artifact belongs to
+     * @param artifactID The name of the artifact
+     * @param since The time in milliseconds since the epoch after which the files were created or modified
+     * @return a list of files with paths relative to the artifact folder, or null if the server does not support AQL
+     * @throws IOException If the request failed
+     */
+    public List<RemoteFile> searchModifiedFiles(String repo, String groupID, String artifactID, long since) throws IOException
+    {
+        Calendar sinceTime = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        sinceTime.setTimeInMillis(since);
+        JSONObject after = new JSONObject();
+        after.element("$gt", DatatypeConverter.printDateTime(sinceTime));
+
+        JSONArray clauses = new JSONArray();
+        clauses.add(new JSONObject().element("created", after));
+        clauses.add(new JSONObject().element("modified", after));
+        JSONObject dateCriteria = new JSONObject();
+        dateCriteria.element("$or", clauses);
+
+        return searchFiles(repo, groupID, artifactID, dateCriteria, null);
+    }
+
+    /**
+     * Function to retrieve every file of every version of several artifacts with a single AQL query 
+     * whose criteria are an $or of the criteria of {@link #searchArtifactFiles(String, String, String)}
+     * @param coordinates The artifacts to search for
+     * @return the files of each artifact by the key of its coordinate, with paths relative to the artifact folder
+     * @throws IOException If the request failed
+     */
+    public Map<String, List<RemoteFile>> searchArtifactFiles(List<ArtifactCoordinate> coordinates) throws IOException
+    {
+        String searchURL = artifactoryURL + "api/search/aql";
+
+        Map<String, List<RemoteFile>> files = new LinkedHashMap<String, List<RemoteFile>>();
+        JSONArray clauses = new JSONArray();
+        for (ArtifactCoordinate coordinate : coordinates)
+        {
+            files.put(coordinate.getKey(), new ArrayList<RemoteFile>());
+
+            JSONObject path = new JSONObject();
+            path.element("$match", artifactPath(coordinate.getGroupID(), coordinate.getArtifactID()) + '*');
+            JSONObject clause = new JSONObject();
+            clause.element("repo", coordinate.getRepo());
+            clause.element("path", path);
+            clauses.add(clause);
+        }
+        JSONObject criteria = new JSONObject();
+        criteria.element("$or", clauses);
+
+        List<RemoteFile> results = doPOST(searchURL, aqlQuery(criteria), ArtifactoryJsonDecoder.AQL_RESULTS, Collections.<RemoteFile>emptyList());
+
+        // Several coordinates can share files when they only differ in their version filter
+        for (RemoteFile result : results)
+        {
+            for (ArtifactCoordinate coordinate : coordinates)
+            {
+                String artifactPath = artifactPath(coordinate.getGroupID(), coordinate.getArtifactID());
+                if (coordinate.getRepo().equals(result.getRepo()) && result.getPath().startsWith(artifactPath))
+                {
+                    files.get(coordinate.getKey()).add(new RemoteFile(result.getPath().substring(artifactPath.length()), result.getMetadata()));
+                }
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Function to run an AQL query for the files below an artifact folder
+     * @param repo The repository the artifact is stored in
+     * @param groupID The group that the artifact belongs to
+     * @param artifactID The name of the artifact
+     * @param extraCriteria Further criteria the files have to match, may be null
+     * @param defaultValue The value to return if the server does not know the search API
+     * @return a list of files with paths relative to the artifact folder, or the default value
+     * @throws IOException If the request failed
+     */
+    private List<RemoteFile> searchFiles(String repo, String groupID, String artifactID, JSONObject extraCriteria, 
+        List<RemoteFile> defaultValue) throws IOException
+    {
+        String artifactPath = artifactPath(groupID, artifactID);
+        String searchURL = artifactoryURL + "api/search/aql";
+
+        JSONObject path = new JSONObject();
+        path.element("$match", artifactPath + '*');
+        JSONObject criteria = new JSONObject();
+        criteria.element("repo", repo);
+        criteria.element("path", path);
+        if (extraCriteria != null)
+        {
+            criteria.putAll(extraCriteria);
+        }
+
+        List<RemoteFile> results = doPOST(searchURL, aqlQuery(criteria), ArtifactoryJsonDecoder.AQL_RESULTS, defaultValue);
+        if (results == null)
+        {
+            return null;
+        }
+
+        List<RemoteFile> files = new ArrayList<RemoteFile>(results.size());
+        for (RemoteFile result : results)
+        {
+            if (result.getPath().startsWith(artifactPath))
+            {
+                files.add(new RemoteFile(result.getPath().substring(artifactPath.length()), result.getMetadata()));
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Function to build an AQL query for files and the fields that their metadata is read from
+     * @param criteria The criteria the files have to match
+     * @return The query, sorted by path
+     */
+    private static String aqlQuery(JSONObject criteria)
+    {
+        return "items.find(" + criteria.toString() + ")"
+            + ".include(\"repo\",\"name\",\"path\",\"size\",\"actual_md5\",\"actual_sha1\",\"created\")"
+            + ".sort({\"$asc\":[\"path\",\"name\"]})";
+    }
+
+    /**
+     * Function to get the path of an artifact folder within its repository
+     * @param groupID The group that the artifact belongs to
+     * @param artifactID The name of the artifact
+     * @return The path, ending in '/'
+     */
+    private static String artifactPath(String groupID, String artifactID)
+    {
+        return groupID.replace('.', '/') + '/' + artifactID + '/';
     }
 
     /**
      * 	Function to return the local repositories of an artifactory server (not the mirrored ones)
-     * @return An array of repositories
+     * @return The keys of the local repositories
+     * @throws IOException If the request failed
      */
-    public JSONArray getRepositories()
+    public List<String> getRepositories() throws IOException
     {
     	String reposURL = artifactoryURL + "api/repositories/";
-    	JSONArray json = (JSONArray) doGET(reposURL, true);
-    	return json;
+    	return doGET(reposURL, ArtifactoryJsonDecoder.LOCAL_REPOSITORIES, Collections.<String>emptyList());
     }
     
+    /**
+     * Function to wait for the result of asynchronous requests
+     * @param future The result of the requests
+     * @return The result
+     * @throws IOException If a request failed
+     * @throws InterruptedException If the calling thread was interrupted while waiting, the requests are cancelled
+     */
+    public static <T> T await(ListenableFuture<T> future) throws IOException, InterruptedException
+    {
+        try
+        {
+            return future.get();
+        }
+        catch (InterruptedException e)
+        {
+            future.cancel(true);
+            throw e;
+        }
+        catch (ExecutionException e)
+        {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException)
+            {
+                throw (IOException) cause;
+            }
+            else if (cause instanceof RuntimeException)
+            {
+                throw (RuntimeException) cause;
+            }
+            else if (cause instanceof Error)
+            {
+                throw (Error) cause;
+            }
+            throw new IOException("Request failed: " + cause, cause);
+        }
+    }
+
+    /**
+     * Function to build the storage API URL of an artifact folder
+     * @param repo The repository the artifact is stored in
+     * @param groupID The group that the artifact belongs to
+     * @param artifactID The name of the artifact
+     * @return The URL, ending in '/'
+     */
+    private String artifactURL(String repo, String groupID, String artifactID)
+    {
+        String groupURLPart = groupID.replace('.', '/');
+        return artifactoryURL + "api/storage/" + repo + '/' + groupURLPart + '/' + artifactID + "/";
+    }
+
     /**
      * Function to log the headers of a web request
      * @param response The response to a web request
@@ -206,81 +585,426 @@ public class ArtifactoryAPI
     /**
      * Function that does a GET request to the artifactory server
      * @param url The URL to get 
-     * @param isArray whether or not the data is expected as a JSONArray or JSONObject
-     * @return A JSONArray or JSONObject depending on the isArray parameter
+     * @param decoder The decoder for the response body
+     * @param defaultValue The value to return if the server does not have the resource
+     * @return The decoded response, or the default value
+     * @throws IOException If the request failed
      */
-    private JSON doGET(String url, boolean isArray)
+    private <T> T doGET(String url, ResponseDecoder<T> decoder, T defaultValue) throws IOException
     {
-    	JSON json = new JSONObject();
-    	if (isArray)
-    	{
-    		json = new JSONArray();
-    	}
+        return doRequest(new HttpGet(url), decoder, defaultValue);
+    }
+
+    /**
+     * Function that does a POST request to the artifactory server
+     * @param url The URL to post to
+     * @param body The plain text body of the request
+     * @param decoder The decoder for the response body
+     * @param defaultValue The value to return if the server does not have the resource
+     * @return The decoded response, or the default value
+     * @throws IOException If the request failed
+     */
+    private <T> T doPOST(String url, String body, ResponseDecoder<T> decoder, T defaultValue) throws IOException
+    {
+        HttpPost request = new HttpPost(url);
+        request.setEntity(new StringEntity(body, ContentType.create("text/plain", Consts.UTF_8)));
+        return doRequest(request, decoder, defaultValue);
+    }
+
+    /**
+     * Function that sends a request to the artifactory server, retrying it with a growing delay 
+     * when the server is unreachable or reports a server side error. Every attempt goes through 
+     * the circuit breaker of the connection.
+     * @param request The request to send
+     * @param decoder The decoder for the response body
+     * @param defaultValue The value to return if the server does not have the resource
+     * @return The decoded response, or the default value
+     * @throws IOException If the request failed, or was rejected because the circuit breaker is open
+     */
+    private <T> T doRequest(HttpUriRequest request, ResponseDecoder<T> decoder, T defaultValue) throws IOException
+    {
+        String url = request.getURI().toString();
+        CircuitBreaker breaker = connection.getCircuitBreaker();
+
+        for (int attempt = 0; ; attempt++)
+        {
+            if (!breaker.allowRequest())
+            {
+                throw new ArtifactoryException("Circuit breaker is open, skipping " + request.getMethod() + ": " + url, 0);
+            }
+
+            IOException failure;
+            try
+            {
+                T value = doAttempt(request, decoder, defaultValue);
+                breaker.recordSuccess();
+                return value;
+            }
+            catch (ArtifactoryException e)
+            {
+                if (!isTransient(e.getStatus()))
+                {
+                    // The server is up and answered, it just refused the request
+                    breaker.recordSuccess();
+                    throw e;
+                }
+                failure = e;
+            }
+            catch (IOException e)
+            {
+                failure = e;
+            }
+            catch (RuntimeException e)
+            {
+                // Every attempt has to report back, or a probe would keep the breaker half open
+                breaker.recordFailure();
+                throw e;
+            }
+            breaker.recordFailure();
+            retryOrThrow(request, attempt, failure);
+        }
+    }
+
+    /**
+     * Function to wait before the next attempt of a failed request, or give up on it
+     * @param request The request that failed
+     * @param attempt The number of the failed attempt, starting at 0
+     * @param e The reason the attempt failed
+     * @throws IOException The reason, once there are no retries left
+     */
+    private void retryOrThrow(HttpUriRequest request, int attempt, IOException e) throws IOException
+    {
+        if (attempt >= connection.getMaxRetries() || connection.getCircuitBreaker().isOpen())
+        {
+            LOGGER.log(WARNING, "Caught IOException during " + request.getMethod() + ": " + request.getURI() + " " + e.getMessage());
+            throw e;
+        }
+
+        long delay = connection.getRetryDelay(attempt);
+        LOGGER.log(FINE, "Retrying " + request.getMethod() + ": " + request.getURI() + " in " + delay + " ms after: " + e.getMessage());
+        try
+        {
+            Thread.sleep(delay);
+        }
+        catch (InterruptedException ie)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to retry " + request.getURI());
+        }
+    }
+
+    /**
+     * Function to check if a failed request may succeed when it is sent again
+     * @param status The HTTP status of the failed request, 0 if no response was received
+     * @return Whether or not the failure is transient
+     */
+    private static boolean isTransient(int status)
+    {
+        return status == 0 || status == 429 || status >= 500;
+    }
+
+    /**
+     * Function that sends a GET request to the artifactory server without waiting for the response. 
+     * The request is retried and goes through the circuit breaker in the same way as 
+     * {@link #doRequest(HttpUriRequest, ResponseDecoder, Object)}, but no thread waits for it.
+     * @param url The URL to get
+     * @param decoder The decoder for the response body
+     * @param defaultValue The value to return if the server does not have the resource
+     * @return The future decoded response
+     */
+    private <T> ListenableFuture<T> doGETAsync(String url, ResponseDecoder<T> decoder, T defaultValue)
+    {
+        SettableFuture<T> future = SettableFuture.create();
+        sendAsync(url, decoder, defaultValue, future, 0);
+        return future;
+    }
+
+    /**
+     * Function to send one attempt of an asynchronous GET request
+     * @param url The URL to get
+     * @param decoder The decoder for the response body
+     * @param defaultValue The value to return if the server does not have the resource
+     * @param future The future to complete with the decoded response
+     * @param attempt The number of the attempt, starting at 0
+     */
+    private <T> void sendAsync(final String url, final ResponseDecoder<T> decoder, final T defaultValue, 
+        final SettableFuture<T> future, final int attempt)
+    {
+        if (future.isDone())
+        {
+            // The caller is no longer interested
+            return;
+        }
 
-        try{
-            LOGGER.log(FINE, "GET " + url);
+        final CircuitBreaker breaker = connection.getCircuitBreaker();
+        if (!breaker.allowRequest())
+        {
+            future.setException(new ArtifactoryException("Circuit breaker is open, skipping GET: " + url, 0));
+            return;
+        }
 
-            HttpClient client = HttpClientBuilder.create().build();
-            HttpGet request = new HttpGet(url);
-            HttpResponse response = client.execute(request);
-            
-            logHeaders(response);
+        final HttpGet request = new HttpGet(url);
+        final ResponseCache.Entry cached = prepareRequest(request);
+        LOGGER.log(FINE, "GET " + url + " (async)");
 
-            BufferedReader reader = new BufferedReader(new InputStreamReader(response.getEntity().getContent()));
+        final Future<HttpResponse> exchange;
+        try
+        {
+            exchange = connection.getAsyncClient().execute(request, new FutureCallback<HttpResponse>() {
+                public void completed(final HttpResponse response)
+                {
+                    // The body is already buffered, decode it off the I/O threads
+                    try
+                    {
+                        connection.getDecodeExecutor().execute(new Runnable() {
+                            public void run()
+                            {
+                                decode(response);
+                            }
+                        });
+                    }
+                    catch (RejectedExecutionException e)
+                    {
+                        breaker.recordAbandoned();
+                        future.setException(new IOException("Connection to " + url + " has been closed"));
+                    }
+                }
+
+                private void decode(HttpResponse response)
+                {
+                    try
+                    {
+                        T value = readResponse(request, response, cached, decoder, defaultValue);
+                        breaker.recordSuccess();
+                        future.set(value);
+                    }
+                    catch (ArtifactoryException e)
+                    {
+                        if (isTransient(e.getStatus()))
+                        {
+                            failed(e);
+                        }
+                        else
+                        {
+                            breaker.recordSuccess();
+                            future.setException(e);
+                        }
+                    }
+                    catch (IOException e)
+                    {
+                        failed(e);
+                    }
+                    catch (RuntimeException e)
+                    {
+                        // Every attempt has to report back, or a probe would keep the breaker half open
+                        breaker.recordFailure();
+                        future.setException(e);
+                    }
+                }
 
-            String line = "";
-            String jsonString = "";
-            while ((line=reader.readLine())!= null)
+                public void failed(Exception e)
+                {
+                    breaker.recordFailure();
+                    if (attempt >= connection.getMaxRetries() || breaker.isOpen())
+                    {
+                        LOGGER.log(WARNING, "Caught " + e.getClass().getSimpleName() + " during GET: " + url + " " + e.getMessage());
+                        future.setException(e);
+                        return;
+                    }
+
+                    long delay = connection.getRetryDelay(attempt);
+                    LOGGER.log(FINE, "Retrying GET: " + url + " in " + delay + " ms after: " + e.getMessage());
+                    try
+                    {
+                        connection.getScheduler().schedule(new Runnable() {
+                            public void run()
+                            {
+                                sendAsync(url, decoder, defaultValue, future, attempt + 1);
+                            }
+                        }, delay, TimeUnit.MILLISECONDS);
+                    }
+                    catch (RejectedExecutionException re)
+                    {
+                        future.setException(e);
+                    }
+                }
+
+                public void cancelled()
+                {
+                    breaker.recordAbandoned();
+                    future.cancel(false);
+                }
+            });
+        }
+        catch (IOException e)
+        {
+            breaker.recordAbandoned();
+            future.setException(e);
+            return;
+        }
+        catch (RuntimeException e)
+        {
+            breaker.recordAbandoned();
+            future.setException(e);
+            return;
+        }
+
+        // Cancelling the returned future aborts the exchange so that its connection is freed
+        future.addListener(new Runnable() {
+            public void run()
             {
-                jsonString += line;
+                if (future.isCancelled())
+                {
+                    exchange.cancel(true);
+                }
             }
-            reader.close();
+        }, MoreExecutors.sameThreadExecutor());
+    }
 
-            if (200 <= response.getStatusLine().getStatusCode()  && 300 > response.getStatusLine().getStatusCode())
+    /**
+     * Function that sends a request to the artifactory server once and decodes the response
+     * as it is read from the connection
+     * @param request The request to send
+     * @param decoder The decoder for the response body
+     * @param defaultValue The value to return if the server does not have the resource
+     * @return The decoded response, or the default value
+     * @throws IOException If the request failed or the server did not answer with success
+     */
+    private <T> T doAttempt(HttpUriRequest request, ResponseDecoder<T> decoder, T defaultValue) throws IOException
+    {
+        ResponseCache.Entry cached = prepareRequest(request);
+
+        LOGGER.log(FINE, request.getMethod() + " " + request.getURI());
+        HttpResponse response = connection.getClient().execute(request);
+
+        return readResponse(request, response, cached, decoder, defaultValue);
+    }
+
+    /**
+     * Function to add the headers of the connection to a request. GET requests are made conditional 
+     * when the response cache holds an earlier response for the URL.
+     * @param request The request to send
+     * @return The cached response that the request was made conditional on, or null
+     */
+    private ResponseCache.Entry prepareRequest(HttpUriRequest request)
+    {
+        String url = request.getURI().toString();
+        ResponseCache cache = HttpGet.METHOD_NAME.equals(request.getMethod()) ? connection.getResponseCache() : null;
+        ResponseCache.Entry cached = cache != null ? cache.get(url) : null;
+        if (cached != null)
+        {
+            if (cached.getETag() != null)
+            {
+                request.setHeader(HttpHeaders.IF_NONE_MATCH, cached.getETag());
+            }
+            if (cached.getLastModified() != null)
             {
-            	JsonSlurper slurper = new JsonSlurper();
-            	json = slurper.parseText(jsonString);
+                request.setHeader(HttpHeaders.IF_MODIFIED_SINCE, cached.getLastModified());
             }
         }
-        catch(IOException e)
+
+        if (connection.isCompressionEnabled())
         {
-            LOGGER.log(WARNING, "Caught IOException during GET: " + url + " " + e.getMessage() );
+            request.setHeader(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate");
         }
+        return cached;
+    }
 
-        return json;
-    } 
-    
     /**
-     * Function to retrieve subdirs from an artifactory server folder info response
-     * @param folderMetadata the data to parse
-     * @param allowFiles whether or not to allow files or strictly return directories
-     * @return The folders and possibly the files inside a directory as an array
+     * Function to decode the response to a request and release its connection
+     * @param request The request that was sent
+     * @param response The response of the server
+     * @param cached The cached response that the request was made conditional on, or null
+     * @param decoder The decoder for the response body
+     * @param defaultValue The value to return if the server does not have the resource
+     * @return The decoded response, or the default value
+     * @throws IOException If the response could not be read or the server did not answer with success
      */
-    private JSONArray getSubdirs(JSONObject folderMetadata, boolean allowFiles)
+    @SuppressWarnings("unchecked")
+    private <T> T readResponse(HttpUriRequest request, HttpResponse response, ResponseCache.Entry cached, 
+        ResponseDecoder<T> decoder, T defaultValue) throws IOException
     {
-        JSONArray subdirs = new JSONArray();
+        T value = defaultValue;
+        String url = request.getURI().toString();
+        ResponseCache cache = HttpGet.METHOD_NAME.equals(request.getMethod()) ? connection.getResponseCache() : null;
+        
+        logHeaders(response);
 
-        if (folderMetadata.has("children"))
+        try
         {
-            JSONArray children = folderMetadata.getJSONArray("children");
-            
-            for (int i = 0; i < children.size(); i++)
+            int status = response.getStatusLine().getStatusCode();
+            if (status == HttpStatus.SC_NOT_MODIFIED && cached != null)
+            {
+                LOGGER.log(FINE, "Reusing cached response for " + url);
+                cache.recordHit();
+                value = (T) cached.getValue();
+            }
+            else if (200 <= status  && 300 > status && response.getEntity() != null)
             {
-                JSONObject uriObject = (JSONObject) children.get(i);
-                boolean isFolder = uriObject.getBoolean("folder");
-                // if we only want folders only add children with the folder property
-                if (!allowFiles && isFolder)
+                InputStream content = connection.openContent(response.getEntity());
+                try
+                {
+                    value = decoder.decode(content);
+                }
+                catch (JsonProcessingException e)
                 {
-                	subdirs.add(uriObject.getString("uri").substring(1));
+                    // The server answered, asking again returns the same malformed body
+                    throw new ArtifactoryException("Could not decode response to " + request.getMethod() + ": " + url 
+                        + " " + e.getMessage(), status, e);
                 }
-                else if (allowFiles)
+                catch (RuntimeException e)
                 {
-                	subdirs.add(uriObject.getString("uri").substring(1));
+                    throw new ArtifactoryException("Could not decode response to " + request.getMethod() + ": " + url 
+                        + " " + e.getMessage(), status, e);
                 }
-                
+                finally
+                {
+                    content.close();
+                }
+
+                if (cache != null)
+                {
+                    cache.recordMiss();
+                    Header eTag = response.getFirstHeader(HttpHeaders.ETAG);
+                    Header lastModified = response.getFirstHeader(HttpHeaders.LAST_MODIFIED);
+                    cache.put(url, eTag != null ? eTag.getValue() : null, 
+                              lastModified != null ? lastModified.getValue() : null, value);
+                }
+            }
+            else if (status != HttpStatus.SC_NOT_FOUND && (300 <= status || 200 > status))
+            {
+                throw new ArtifactoryException(request.getMethod() + " " + url + " returned " + status + " " 
+                    + response.getStatusLine().getReasonPhrase(), status);
+            }
+        }
+        finally
+        {
+            // Hand the connection back to the pool
+            EntityUtils.consume(response.getEntity());
+        }
+
+        return value;
+    } 
+    
+    /**
+     * Function to retrieve subdirs from an artifactory server folder listing
+     * @param children the entries of the folder
+     * @param allowFiles whether or not to allow files or strictly return directories
+     * @return The folders and possibly the files inside a directory
+     */
+    private List<String> getSubdirs(List<FolderChild> children, boolean allowFiles)
+    {
+        List<String> subdirs = new ArrayList<String>(children.size());
+
+        for (FolderChild child : children)
+        {
+            // if we only want folders only add children with the folder property
+            if (allowFiles || child.isFolder())
+            {
+                subdirs.add(child.getName());
             }
         }
 
         return subdirs; 
     }
-}
\ No newline at end of file
+}
@@ -28,6 +28,11 @@ import hudson.scm.ChangeLogParser;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.List;
+
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+import net.sf.json.groovy.JsonSlurper;
 
 import org.xml.sax.SAXException;
 
@@ -40,12 +45,52 @@ public class ArtifactoryChangeLogParser extends ChangeLogParser {
 
 
 	/**
-	 * Function to parse the changelog
+	 * Function to parse the changelog, which is a JSON array of the differences found for each 
+	 * artifact as written by {@link RevisionStateDiff#toJSON()}, with the repo, groupID and artifactID 
+	 * of the artifact added. Builds that were not triggered by a poll have an empty changelog.
 	 */
     @Override
     public ArtifactoryChangeLogSet parse(@SuppressWarnings("rawtypes") AbstractBuild build, File changeLogFile)
         throws IOException, SAXException
     {
-        return new ArtifactoryChangeLogSet(build, new ArrayList<LogEntry>());
+        List<LogEntry> logs = new ArrayList<LogEntry>();
+        if (!changeLogFile.exists() || changeLogFile.length() == 0)
+        {
+            return new ArtifactoryChangeLogSet(build, logs);
+        }
+
+        JSONArray changeLog = (JSONArray)new JsonSlurper().parse(changeLogFile);
+        for (int i = 0; i < changeLog.size(); i++)
+        {
+            JSONObject diff = changeLog.getJSONObject(i);
+            String artifact = diff.getString(ArtifactoryRevisionState.GROUP_TAG) + ":" + diff.getString(ArtifactoryRevisionState.ARTIFACT_ID_TAG);
+            JSONArray changes = diff.getJSONArray(RevisionStateDiff.CHANGES_TAG);
+            for (int j = 0; j < changes.size(); j++)
+            {
+                JSONObject change = changes.getJSONObject(j);
+                List<String> files = new ArrayList<String>();
+                JSONArray jsonFiles = change.getJSONArray(RevisionStateDiff.FILES_TAG);
+                for (int k = 0; k < jsonFiles.size(); k++)
+                {
+                    JSONObject file = jsonFiles.getJSONObject(k);
+                    files.add(file.getString(RevisionStateDiff.NAME_TAG) + ": " + file.getString(RevisionStateDiff.REASON_TAG));
+                }
+
+                LogEntry entry = new LogEntry();
+                entry.setArtifact(artifact);
+                entry.setVersion(change.getString(RevisionStateDiff.VERSION_TAG));
+                entry.setType(change.getString(RevisionStateDiff.TYPE_TAG));
+                entry.setFiles(files);
+                logs.add(entry);
+            }
+        }
+
+        ArtifactoryChangeLogSet changeLogSet = new ArtifactoryChangeLogSet(build, logs);
+        for (LogEntry entry : logs)
+        {
+            entry.setParent(changeLogSet);
+        }
+        return changeLogSet;
     }
-}
\ No newline at end of file
+
+}
@@ -88,7 +88,10 @@ public class ArtifactoryChangeLogSet extends ChangeLogSet<LogEntry> {
      *
      */
     public static class LogEntry extends ChangeLogSet.Entry {
-        private int version;
+        private String artifact;
+        private String version;
+        private String type;
+        private List<String> files = new ArrayList<String>();
         private long timestamp;
         private URL url;
         private User user;
@@ -105,16 +108,57 @@ public class ArtifactoryChangeLogSet extends ChangeLogSet<LogEntry> {
         }
 
         @Exported
-        public int getVersion()
+        public String getArtifact()
+        {
+            return artifact;
+        }
+
+        public void setArtifact(String artifact)
+        {
+            this.artifact = artifact;
+        }
+
+        @Exported
+        public String getVersion()
         {
             return version;
         }
 
-        public void setVersion(int version)
+        public void setVersion(String version)
         {
             this.version = version;
         }
 
+        /**
+         * Getter function
+         * @return How the version changed, see {@link RevisionStateDiff.ChangeType}
+         */
+        @Exported
+        public String getType()
+        {
+            return type;
+        }
+
+        public void setType(String type)
+        {
+            this.type = type;
+        }
+
+        /**
+         * Getter function
+         * @return The changed files of a modified version with the reason for each
+         */
+        @Exported
+        public List<String> getFiles()
+        {
+            return files;
+        }
+
+        public void setFiles(List<String> files)
+        {
+            this.files = files;
+        }
+
 
         @Override
         public long getTimestamp()
@@ -151,15 +195,22 @@ public class ArtifactoryChangeLogSet extends ChangeLogSet<LogEntry> {
         @Override
         public Collection<String> getAffectedPaths()
         {
-            ArrayList<String> list = new ArrayList<String>();
-            list.add(url.toString());
+            ArrayList<String> list = new ArrayList<String>(files);
+            if (url != null)
+            {
+                list.add(url.toString());
+            }
             return list;
         }
 
         @Override @Exported
         public String getMsg()
         {
-            return new String("");
+            if (type == null)
+            {
+                return "";
+            }
+            return type.charAt(0) + type.substring(1).toLowerCase() + " " + artifact + " " + version;
         }
 
     }
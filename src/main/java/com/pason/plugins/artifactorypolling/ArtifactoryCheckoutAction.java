@@ -0,0 +1,161 @@
+// Copyright (c) 2014 Pason Systems, Inc.
+
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+package com.pason.plugins.artifactorypolling;
+
+import hudson.model.Action;
+import hudson.model.FoldableAction;
+import hudson.model.InvisibleAction;
+import hudson.model.Queue;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Action that carries the artifacts a build checks out, from the poll that found them to the queued
+ * build and on into the build record. It is saved with the queue and the build, so a restart does not 
+ * have to read the server again to find out what to check out.
+ * 
+ * A poll records the digest of the baseline that it compared each coordinate with. The build only uses 
+ * what the poll found for a coordinate if its own baseline is still the same, otherwise it reads the server.
+ */
+public class ArtifactoryCheckoutAction extends InvisibleAction implements FoldableAction
+{
+    /** The artifact to check out for each coordinate, by the key of the coordinate */
+    private final HashMap<String, Artifact> artifacts;
+
+    /** The differences found by the poll for each coordinate that changed, by the key of the coordinate */
+    private final HashMap<String, RevisionStateDiff> diffs;
+
+    /** The digest of the baseline that the poll compared each coordinate with, by the key of the coordinate */
+    private final HashMap<String, String> baselines;
+
+    /**
+     * Constructor
+     * @param artifacts The artifact to check out for each coordinate, by the key of the coordinate
+     */
+    public ArtifactoryCheckoutAction(Map<String, Artifact> artifacts)
+    {
+        this(artifacts, Collections.<String, RevisionStateDiff>emptyMap());
+    }
+
+    /**
+     * Constructor
+     * @param artifacts The artifact to check out for each coordinate, by the key of the coordinate
+     * @param diffs The differences found by the poll for each coordinate that changed, by the key of the coordinate
+     */
+    public ArtifactoryCheckoutAction(Map<String, Artifact> artifacts, Map<String, RevisionStateDiff> diffs)
+    {
+        this(artifacts, diffs, Collections.<String, String>emptyMap());
+    }
+
+    /**
+     * Constructor
+     * @param artifacts The artifact to check out for each coordinate, by the key of the coordinate
+     * @param diffs The differences found by the poll for each coordinate that changed, by the key of the coordinate
+     * @param baselines The digest of the baseline that the poll compared each coordinate with, by the key of the 
+     *                  coordinate, see {@link ArtifactoryRevisionState#getDigest()}
+     */
+    public ArtifactoryCheckoutAction(Map<String, Artifact> artifacts, Map<String, RevisionStateDiff> diffs, Map<String, String> baselines)
+    {
+        this.artifacts = new HashMap<String, Artifact>(artifacts);
+        this.diffs = new HashMap<String, RevisionStateDiff>(diffs);
+        this.baselines = new HashMap<String, String>(baselines);
+    }
+
+    /**
+     * Function to check if the poll compared a coordinate with the baseline that a build starts from
+     * @param coordinate The coordinate
+     * @param baseline The state of the coordinate that the build starts from
+     * @return Whether or not the poll's findings for the coordinate apply to the build
+     */
+    public boolean isBasedOn(ArtifactCoordinate coordinate, ArtifactoryRevisionState baseline)
+    {
+        return baselines != null && baseline.getDigest().equals(baselines.get(coordinate.getKey()));
+    }
+
+    /**
+     * Function to get the artifact to check out for a coordinate
+     * @param coordinate The coordinate
+     * @return The artifact, or null if the action has none for the coordinate
+     */
+    public Artifact getArtifact(ArtifactCoordinate coordinate)
+    {
+        return artifacts.get(coordinate.getKey());
+    }
+
+    /**
+     * Function to get the differences that the poll found for a coordinate
+     * @param coordinate The coordinate
+     * @return The differences, or null if the poll did not find them, as for a manual build
+     */
+    public RevisionStateDiff getDiff(ArtifactCoordinate coordinate)
+    {
+        return diffs == null ? null : diffs.get(coordinate.getKey());
+    }
+
+    /**
+     * Getter function
+     * @return The differences found by the poll for each coordinate that changed, by the key of the coordinate
+     */
+    public Map<String, RevisionStateDiff> getDiffs()
+    {
+        return diffs == null ? Collections.<String, RevisionStateDiff>emptyMap() : Collections.unmodifiableMap(diffs);
+    }
+
+    /**
+     * Getter function
+     * @return The artifact to check out for each coordinate, by the key of the coordinate
+     */
+    public Map<String, Artifact> getArtifacts()
+    {
+        return Collections.unmodifiableMap(artifacts);
+    }
+
+    /**
+     * When the build is already queued the artifacts of this action are added to the ones it will 
+     * check out, replacing older artifacts of the same coordinates
+     */
+    public void foldIntoExisting(Queue.Item item, Queue.Task owner, List<Action> otherActions)
+    {
+        ArtifactoryCheckoutAction existing = item.getAction(ArtifactoryCheckoutAction.class);
+        if (existing == null)
+        {
+            item.getActions().add(this);
+            return;
+        }
+
+        // A later poll compares with the same baseline, so its differences include the earlier ones
+        Map<String, Artifact> merged = new HashMap<String, Artifact>(existing.artifacts);
+        merged.putAll(artifacts);
+        Map<String, RevisionStateDiff> mergedDiffs = new HashMap<String, RevisionStateDiff>(existing.getDiffs());
+        mergedDiffs.putAll(getDiffs());
+        Map<String, String> mergedBaselines = new HashMap<String, String>();
+        if (existing.baselines != null)
+        {
+            mergedBaselines.putAll(existing.baselines);
+        }
+        mergedBaselines.putAll(baselines);
+        item.getActions().remove(existing);
+        item.getActions().add(new ArtifactoryCheckoutAction(merged, mergedDiffs, mergedBaselines));
+    }
+}
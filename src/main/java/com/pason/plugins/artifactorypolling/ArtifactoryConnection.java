@@ -0,0 +1,459 @@
+// Copyright (c) 2014 Pason Systems, Inc.
+
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+package com.pason.plugins.artifactorypolling;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.apache.commons.io.input.CountingInputStream;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.client.HttpClient;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.client.HttpAsyncClient;
+
+import static java.util.logging.Level.FINE;
+import static java.util.logging.Level.WARNING;
+
+/**
+ * Class that holds the HTTP resources shared by every call made against a single 
+ * artifactory server.
+ * 
+ * Connections are pooled and kept alive between requests so that a poll does not have
+ * to open a new TCP/TLS connection for every file it looks at. Connections that have 
+ * been idle for too long are evicted in the background.
+ * 
+ * Crawls send their requests through a non-blocking client instead, which is started on first use. 
+ * A few I/O threads serve every request in flight, so a crawl does not need a thread per request.
+ */
+public class ArtifactoryConnection
+{
+    /** Default maximum number of pooled connections to a single route */
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 10;
+    
+    /** Default maximum number of pooled connections in total */
+    public static final int DEFAULT_MAX_CONNECTIONS_TOTAL = 20;
+    
+    /** Default number of seconds a connection may stay idle before it is closed */
+    public static final int DEFAULT_IDLE_CONNECTION_TIMEOUT = 30;
+
+    /** Default number of connections that crawl requests are sent over */
+    public static final int DEFAULT_CRAWL_PARALLELISM = 4;
+
+    /** Number of threads that serve the connections of the non-blocking client */
+    private static final int ASYNC_IO_THREADS = 2;
+
+    /** Default number of times a failed request is retried */
+    public static final int DEFAULT_MAX_RETRIES = 2;
+
+    /** Milliseconds before the first retry, doubled for every further retry */
+    private static final long RETRY_BASE_DELAY = 500;
+
+    /** Upper bound of the milliseconds between retries */
+    private static final long RETRY_MAX_DELAY = 8000;
+
+    /** Source of the jitter of the retry delays */
+    private static final Random RANDOM = new Random();
+
+    /** A Logger for this class */
+    private static final Logger LOGGER = Logger.getLogger(ArtifactoryConnection.class.getName());
+
+    /** The url of the artifactory instance. Guaranteed to end in '/' */
+    private final String artifactoryURL;
+
+    /** The pool of connections to the server */
+    private final PoolingHttpClientConnectionManager connectionManager;
+
+    /** The client that hands out connections from the pool */
+    private final CloseableHttpClient client;
+
+    /** The background thread that closes idle connections and sends retries of asynchronous requests */
+    private final ScheduledExecutorService scheduler;
+
+    /** The threads that decode the responses of asynchronous requests, so the I/O threads only move bytes */
+    private final ThreadPoolExecutor decodeExecutor;
+
+    /** The cache of responses from the server, null if caching is disabled */
+    private final ResponseCache responseCache;
+
+    /** The number of connections that crawl requests are sent over */
+    private final int crawlParallelism;
+
+    /** The maximum number of connections in each pool */
+    private final int maxConnectionsTotal;
+
+    /** The pool of connections of the non-blocking client, null until the client is started */
+    private volatile PoolingNHttpClientConnectionManager asyncConnectionManager;
+
+    /** The non-blocking client, null until it is first used */
+    private CloseableHttpAsyncClient asyncClient;
+
+    /** Whether or not the connection has been closed */
+    private boolean closed = false;
+
+    /** Whether or not compressed responses are requested */
+    private final boolean compressionEnabled;
+
+    /** The number of times a failed request is retried */
+    private final int maxRetries;
+
+    /** The breaker that stops requests while the server keeps failing */
+    private final CircuitBreaker circuitBreaker;
+
+    /** Number of response body bytes received from the server, as sent on the wire */
+    private final AtomicLong bytesReceived = new AtomicLong();
+
+    /** Number of response body bytes after decompression */
+    private final AtomicLong bytesDecoded = new AtomicLong();
+
+    /**
+     * Constructor that uses the default pool limits
+     * @param artifactoryURL The server's URL
+     */
+    public ArtifactoryConnection(String artifactoryURL)
+    {
+        this(artifactoryURL, DEFAULT_MAX_CONNECTIONS_PER_ROUTE, DEFAULT_MAX_CONNECTIONS_TOTAL, DEFAULT_IDLE_CONNECTION_TIMEOUT, 0, 1, true);
+    }
+
+    /**
+     * Constructor that uses the default retry and circuit breaker settings
+     * @param artifactoryURL The server's URL
+     * @param maxConnectionsPerRoute The maximum number of connections to a single route
+     * @param maxConnectionsTotal The maximum number of connections in the pool
+     * @param idleConnectionTimeout Seconds before an idle connection is closed, 0 disables eviction
+     * @param responseCacheSize The maximum number of cached responses, 0 disables the cache
+     * @param crawlParallelism The number of connections that crawl requests are sent over
+     * @param compressionEnabled Whether or not gzip/deflate compressed responses are requested
+     */
+    public ArtifactoryConnection(String artifactoryURL, int maxConnectionsPerRoute, int maxConnectionsTotal, final int idleConnectionTimeout,
+        int responseCacheSize, int crawlParallelism, boolean compressionEnabled)
+    {
+        this(artifactoryURL, maxConnectionsPerRoute, maxConnectionsTotal, idleConnectionTimeout, responseCacheSize, crawlParallelism, 
+             compressionEnabled, DEFAULT_MAX_RETRIES, 
+             new CircuitBreaker(artifactoryURL, CircuitBreaker.DEFAULT_FAILURE_THRESHOLD, CircuitBreaker.DEFAULT_OPEN_DURATION));
+    }
+
+    /**
+     * Constructor
+     * @param artifactoryURL The server's URL
+     * @param maxConnectionsPerRoute The maximum number of connections to a single route
+     * @param maxConnectionsTotal The maximum number of connections in the pool
+     * @param idleConnectionTimeout Seconds before an idle connection is closed, 0 disables eviction
+     * @param responseCacheSize The maximum number of cached responses, 0 disables the cache
+     * @param crawlParallelism The number of connections that crawl requests are sent over
+     * @param compressionEnabled Whether or not gzip/deflate compressed responses are requested
+     * @param maxRetries The number of times a failed request is retried
+     * @param circuitBreaker The breaker that stops requests while the server keeps failing
+     */
+    public ArtifactoryConnection(String artifactoryURL, int maxConnectionsPerRoute, int maxConnectionsTotal, final int idleConnectionTimeout,
+        int responseCacheSize, int crawlParallelism, boolean compressionEnabled, int maxRetries, CircuitBreaker circuitBreaker)
+    {
+        if (!artifactoryURL.endsWith("/"))
+        {
+            artifactoryURL += "/";
+        }
+        this.artifactoryURL = artifactoryURL;
+
+        connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+        connectionManager.setMaxTotal(maxConnectionsTotal);
+
+        // Compression is handled by openContent so that the transferred bytes can be counted
+        client = HttpClients.custom().setConnectionManager(connectionManager).disableContentCompression().build();
+        this.compressionEnabled = compressionEnabled;
+        this.maxRetries = maxRetries;
+        this.circuitBreaker = circuitBreaker;
+
+        this.crawlParallelism = crawlParallelism > 0 ? crawlParallelism : 1;
+        this.maxConnectionsTotal = maxConnectionsTotal;
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r)
+            {
+                Thread thread = new Thread(r, "Artifactory connection scheduler for " + ArtifactoryConnection.this.artifactoryURL);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        if (idleConnectionTimeout > 0)
+        {
+            scheduler.scheduleWithFixedDelay(new Runnable() {
+                public void run()
+                {
+                    connectionManager.closeExpiredConnections();
+                    connectionManager.closeIdleConnections(idleConnectionTimeout, TimeUnit.SECONDS);
+
+                    PoolingNHttpClientConnectionManager asyncManager = asyncConnectionManager;
+                    if (asyncManager != null)
+                    {
+                        asyncManager.closeExpiredConnections();
+                        asyncManager.closeIdleConnections(idleConnectionTimeout, TimeUnit.SECONDS);
+                    }
+                }
+            }, idleConnectionTimeout, idleConnectionTimeout, TimeUnit.SECONDS);
+        }
+
+        decodeExecutor = new ThreadPoolExecutor(this.crawlParallelism, this.crawlParallelism, 60, TimeUnit.SECONDS, 
+            new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                public Thread newThread(Runnable r)
+                {
+                    Thread thread = new Thread(r, "Artifactory response decoder for " + ArtifactoryConnection.this.artifactoryURL);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        decodeExecutor.allowCoreThreadTimeOut(true);
+
+        responseCache = responseCacheSize > 0 ? new ResponseCache(responseCacheSize) : null;
+
+        LOGGER.log(FINE, "Created connection pool for " + artifactoryURL + " with " + maxConnectionsPerRoute 
+            + " connections per route and " + maxConnectionsTotal + " in total");
+    }
+
+    /**
+     * Getter function for the server
+     * @return The URL of the server, guaranteed to end in '/'
+     */
+    public String getArtifactoryURL()
+    {
+        return artifactoryURL;
+    }
+
+    /**
+     * Getter function for the pooled client
+     * @return The client to make requests to the server with
+     */
+    public HttpClient getClient()
+    {
+        return client;
+    }
+
+    /**
+     * Getter function for the response cache
+     * @return The cache of responses from the server, or null if caching is disabled
+     */
+    public ResponseCache getResponseCache()
+    {
+        return responseCache;
+    }
+
+    /**
+     * Getter function for the non-blocking client. The client and its I/O threads are started on first use.
+     * @return The client to send asynchronous requests to the server with
+     * @throws IOException If the client could not be started, or the connection has been closed
+     */
+    public synchronized HttpAsyncClient getAsyncClient() throws IOException
+    {
+        if (closed)
+        {
+            throw new IOException("Connection to " + artifactoryURL + " has been closed");
+        }
+        if (asyncClient == null)
+        {
+            IOReactorConfig config = IOReactorConfig.custom().setIoThreadCount(ASYNC_IO_THREADS).build();
+            PoolingNHttpClientConnectionManager manager = new PoolingNHttpClientConnectionManager(new DefaultConnectingIOReactor(config));
+            manager.setDefaultMaxPerRoute(crawlParallelism);
+            manager.setMaxTotal(Math.max(crawlParallelism, maxConnectionsTotal));
+
+            asyncClient = HttpAsyncClients.custom().setConnectionManager(manager).build();
+            asyncClient.start();
+            asyncConnectionManager = manager;
+
+            LOGGER.log(FINE, "Started non-blocking client for " + artifactoryURL + " with " + crawlParallelism + " connections");
+        }
+        return asyncClient;
+    }
+
+    /**
+     * Getter function for the scheduler
+     * @return The background thread to schedule retries of asynchronous requests on
+     */
+    public ScheduledExecutorService getScheduler()
+    {
+        return scheduler;
+    }
+
+    /**
+     * Getter function for the decode executor
+     * @return The threads to decode the responses of asynchronous requests on
+     */
+    public ExecutorService getDecodeExecutor()
+    {
+        return decodeExecutor;
+    }
+
+    /**
+     * Getter function for the compression setting
+     * @return Whether or not gzip/deflate compressed responses are requested
+     */
+    public boolean isCompressionEnabled()
+    {
+        return compressionEnabled;
+    }
+
+    /**
+     * Getter function for the retry limit
+     * @return The number of times a failed request is retried
+     */
+    public int getMaxRetries()
+    {
+        return maxRetries;
+    }
+
+    /**
+     * Getter function for the circuit breaker
+     * @return The breaker that stops requests while the server keeps failing
+     */
+    public CircuitBreaker getCircuitBreaker()
+    {
+        return circuitBreaker;
+    }
+
+    /**
+     * Function to compute how long to wait before retrying a failed request. The delay grows 
+     * exponentially with every attempt and is randomized so that the jobs that failed together 
+     * do not retry together.
+     * @param attempt The number of the retry, starting at 0
+     * @return The number of milliseconds to wait
+     */
+    public long getRetryDelay(int attempt)
+    {
+        long ceiling = Math.min(RETRY_MAX_DELAY, RETRY_BASE_DELAY << Math.min(attempt, 16));
+        return ceiling / 2 + (long) (RANDOM.nextDouble() * (ceiling / 2));
+    }
+
+    /**
+     * Getter function
+     * @return The number of response body bytes received from the server, as sent on the wire
+     */
+    public long getBytesReceived()
+    {
+        return bytesReceived.get();
+    }
+
+    /**
+     * Getter function
+     * @return The number of response body bytes after decompression
+     */
+    public long getBytesDecoded()
+    {
+        return bytesDecoded.get();
+    }
+
+    /**
+     * Function to open the body of a response. A gzip or deflate encoded body is decompressed 
+     * while it is read. The bytes read are counted when the stream is closed.
+     * @param entity The body of the response
+     * @return The decoded body
+     * @throws IOException If the body could not be opened
+     */
+    public InputStream openContent(HttpEntity entity) throws IOException
+    {
+        final CountingInputStream wire = new CountingInputStream(entity.getContent());
+        InputStream decompressed = wire;
+
+        Header encoding = entity.getContentEncoding();
+        if (encoding != null)
+        {
+            String value = encoding.getValue().trim().toLowerCase(Locale.ENGLISH);
+            if ("gzip".equals(value) || "x-gzip".equals(value))
+            {
+                decompressed = new GZIPInputStream(wire);
+            }
+            else if ("deflate".equals(value))
+            {
+                decompressed = new InflaterInputStream(wire);
+            }
+        }
+
+        final CountingInputStream decoded = new CountingInputStream(decompressed);
+        return new FilterInputStream(decoded) {
+            private boolean closed = false;
+
+            @Override
+            public void close() throws IOException
+            {
+                if (!closed)
+                {
+                    closed = true;
+                    bytesReceived.addAndGet(wire.getByteCount());
+                    bytesDecoded.addAndGet(decoded.getByteCount());
+                }
+                super.close();
+            }
+        };
+    }
+
+    /**
+     * Function to close every pooled connection and stop the eviction task. 
+     * The connection cannot be used after it has been closed.
+     */
+    public void close()
+    {
+        LOGGER.log(FINE, "Closing connection pool for " + artifactoryURL);
+        scheduler.shutdownNow();
+        decodeExecutor.shutdownNow();
+
+        CloseableHttpAsyncClient async;
+        synchronized (this)
+        {
+            closed = true;
+            async = asyncClient;
+            asyncClient = null;
+            asyncConnectionManager = null;
+        }
+
+        try
+        {
+            client.close();
+            if (async != null)
+            {
+                async.close();
+            }
+        }
+        catch(IOException e)
+        {
+            LOGGER.log(WARNING, "Caught IOException closing connection pool for: " + artifactoryURL + " " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,67 @@
+// Copyright (c) 2014 Pason Systems, Inc.
+
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+package com.pason.plugins.artifactorypolling;
+
+import java.io.IOException;
+
+/**
+ * Exception thrown when a request to the artifactory server failed, so that a failed request 
+ * is not mistaken for an empty response
+ */
+public class ArtifactoryException extends IOException
+{
+    private static final long serialVersionUID = 1L;
+
+    /** The HTTP status of the response, 0 if no response was received */
+    private final int status;
+
+    /**
+     * Constructor
+     * @param message The description of the failure
+     * @param status The HTTP status of the response, 0 if no response was received
+     */
+    public ArtifactoryException(String message, int status)
+    {
+        super(message);
+        this.status = status;
+    }
+
+    /**
+     * Constructor
+     * @param message The description of the failure
+     * @param status The HTTP status of the response, 0 if no response was received
+     * @param cause The failure that the request ended with
+     */
+    public ArtifactoryException(String message, int status, Throwable cause)
+    {
+        super(message, cause);
+        this.status = status;
+    }
+
+    /**
+     * Getter function for the status
+     * @return The HTTP status of the response, 0 if no response was received
+     */
+    public int getStatus()
+    {
+        return status;
+    }
+}
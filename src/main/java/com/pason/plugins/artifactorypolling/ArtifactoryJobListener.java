@@ -0,0 +1,158 @@
+// Copyright (c) 2014 Pason Systems, Inc.
+
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+package com.pason.plugins.artifactorypolling;
+
+import hudson.Extension;
+import hudson.model.AbstractProject;
+import hudson.model.Item;
+import hudson.model.listeners.ItemListener;
+import hudson.scm.SCM;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import jenkins.model.Jenkins;
+
+/**
+ * Listener that keeps the index of the jobs that poll each artifact up to date as jobs are 
+ * loaded, created, configured, renamed and deleted. What the descriptor keeps about a job between 
+ * its polls is dropped as well when the job is deleted, renamed, or stops polling an artifact.
+ */
+@Extension
+public class ArtifactoryJobListener extends ItemListener
+{
+    /** The jobs by the artifact they poll */
+    private final CoordinateIndex index = new CoordinateIndex();
+
+    /**
+     * Function to get the listener that Jenkins created
+     * @return The listener, or null if Jenkins is not running
+     */
+    public static ArtifactoryJobListener get()
+    {
+        Jenkins jenkins = Jenkins.getInstance();
+        return jenkins != null ? jenkins.getExtensionList(ItemListener.class).get(ArtifactoryJobListener.class) : null;
+    }
+
+    /**
+     * Function to find the jobs that poll an artifact containing a path
+     * @param repo The repository that contains the path
+     * @param path The path within the repository, without leading '/'
+     * @return The full names of the jobs
+     */
+    public Set<String> findJobs(String repo, String path)
+    {
+        return index.find(repo, path);
+    }
+
+    @Override
+    public void onLoaded()
+    {
+        index.clear();
+        Jenkins jenkins = Jenkins.getInstance();
+        if (jenkins != null)
+        {
+            for (AbstractProject<?,?> project : jenkins.getAllItems(AbstractProject.class))
+            {
+                update(project);
+            }
+        }
+    }
+
+    @Override
+    public void onCreated(Item item)
+    {
+        update(item);
+    }
+
+    @Override
+    public void onCopied(Item src, Item item)
+    {
+        update(item);
+    }
+
+    @Override
+    public void onUpdated(Item item)
+    {
+        update(item);
+    }
+
+    @Override
+    public void onRenamed(Item item, String oldName, String newName)
+    {
+        String parent = item.getParent().getFullName();
+        String oldFullName = parent.length() == 0 ? oldName : parent + "/" + oldName;
+        index.remove(oldFullName);
+        retainJob(oldFullName, Collections.<String>emptyList());
+        update(item);
+    }
+
+    @Override
+    public void onDeleted(Item item)
+    {
+        index.remove(item.getFullName());
+        retainJob(item.getFullName(), Collections.<String>emptyList());
+    }
+
+    /**
+     * Function to index the artifacts that a job polls, if it polls artifactory
+     * @param item The job
+     */
+    private void update(Item item)
+    {
+        SCM scm = item instanceof AbstractProject ? ((AbstractProject<?,?>) item).getScm() : null;
+        if (scm instanceof ArtifactoryRepository)
+        {
+            List<String[]> coordinates = new ArrayList<String[]>();
+            List<String> keys = new ArrayList<String>();
+            for (ArtifactCoordinate coordinate : ((ArtifactoryRepository) scm).getCoordinates())
+            {
+                coordinates.add(new String[] { coordinate.getRepo(), coordinate.getGroupID(), coordinate.getArtifactID() });
+                keys.add(coordinate.getKey());
+            }
+            index.put(item.getFullName(), coordinates);
+            retainJob(item.getFullName(), keys);
+        }
+        else
+        {
+            index.remove(item.getFullName());
+            retainJob(item.getFullName(), Collections.<String>emptyList());
+        }
+    }
+
+    /**
+     * Function to drop what the descriptor keeps about a job for the artifacts that it no longer polls
+     * @param job The full name of the job
+     * @param keys The keys of the artifacts that the job still polls
+     */
+    private static void retainJob(String job, List<String> keys)
+    {
+        Jenkins jenkins = Jenkins.getInstance();
+        ArtifactoryRepository.DescriptorImpl descriptor = jenkins != null 
+            ? jenkins.getDescriptorByType(ArtifactoryRepository.DescriptorImpl.class) : null;
+        if (descriptor != null)
+        {
+            descriptor.retainJob(job, keys);
+        }
+    }
+}
@@ -0,0 +1,480 @@
+// Copyright (c) 2014 Pason Systems, Inc.
+
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+package com.pason.plugins.artifactorypolling;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Streaming decoders for the artifactory API responses used by this plugin.
+ * 
+ * The responses are read token by token straight from the response body. Only the fields 
+ * that the plugin needs are kept, everything else is skipped without being materialized.
+ * Decoded values are immutable so that they can be shared through the {@link ResponseCache}.
+ */
+public final class ArtifactoryJsonDecoder
+{
+    /** The factory for parsers, thread safe once configured */
+    private static final JsonFactory FACTORY = new JsonFactory();
+
+    /** Decodes a folder info response into its modification date and children */
+    public static final ResponseDecoder<FolderInfo> FOLDER_INFO = new ResponseDecoder<FolderInfo>() {
+        public FolderInfo decode(InputStream content) throws IOException
+        {
+            return readFolderInfo(content);
+        }
+    };
+
+    /** Decodes a file info response into the checksums and size of the file */
+    public static final ResponseDecoder<FileMetadata> FILE_METADATA = new ResponseDecoder<FileMetadata>() {
+        public FileMetadata decode(InputStream content) throws IOException
+        {
+            return readFileMetadata(content);
+        }
+    };
+
+    /** Decodes a recursive file listing into files with paths relative to the listed folder */
+    public static final ResponseDecoder<List<RemoteFile>> DEEP_LISTING = new ResponseDecoder<List<RemoteFile>>() {
+        public List<RemoteFile> decode(InputStream content) throws IOException
+        {
+            return readDeepListing(content);
+        }
+    };
+
+    /** Decodes AQL item results into files with paths relative to the repository */
+    public static final ResponseDecoder<List<RemoteFile>> AQL_RESULTS = new ResponseDecoder<List<RemoteFile>>() {
+        public List<RemoteFile> decode(InputStream content) throws IOException
+        {
+            return readAQLResults(content);
+        }
+    };
+
+    /** Decodes a repository list into the keys of the local repositories */
+    public static final ResponseDecoder<List<String>> LOCAL_REPOSITORIES = new ResponseDecoder<List<String>>() {
+        public List<String> decode(InputStream content) throws IOException
+        {
+            return readLocalRepositories(content);
+        }
+    };
+
+    /**
+     * Private constructor, this class only has static members
+     */
+    private ArtifactoryJsonDecoder()
+    {}
+
+    /**
+     * Function to read a folder info response that looks like:
+     * {
+     *      "uri": "http://localhost:8080/artifactory/api/storage/libs-release-local/org/acme",
+     *      "created": ISO8601 (yyyy-MM-dd'T'HH:mm:ss.SSSZ),
+     *      "lastModified": ISO8601 (yyyy-MM-dd'T'HH:mm:ss.SSSZ),
+     *      "children": [
+     *          { "uri": "/child1", "folder": true },
+     *          { "uri": "/child2", "folder": false }
+     *      ]
+     * }
+     * @param content The response body
+     * @return The modification date and the children of the folder
+     * @throws IOException If the body could not be read or is malformed
+     */
+    public static FolderInfo readFolderInfo(InputStream content) throws IOException
+    {
+        String lastModified = null;
+        List<FolderChild> children = new ArrayList<FolderChild>();
+        JsonParser parser = FACTORY.createParser(content);
+        try
+        {
+            startObject(parser);
+            while (nextField(parser))
+            {
+                String field = parser.getCurrentName();
+                if ("children".equals(field) && parser.nextToken() == JsonToken.START_ARRAY)
+                {
+                    while (parser.nextToken() == JsonToken.START_OBJECT)
+                    {
+                        String uri = null;
+                        boolean folder = false;
+                        while (nextField(parser))
+                        {
+                            String name = parser.getCurrentName();
+                            parser.nextToken();
+                            if ("uri".equals(name))
+                            {
+                                uri = parser.getText();
+                            }
+                            else if ("folder".equals(name))
+                            {
+                                folder = parser.getValueAsBoolean();
+                            }
+                            else
+                            {
+                                parser.skipChildren();
+                            }
+                        }
+                        if (uri != null)
+                        {
+                            children.add(new FolderChild(uri.substring(1), folder));
+                        }
+                    }
+                }
+                else if ("lastModified".equals(field))
+                {
+                    parser.nextToken();
+                    lastModified = parser.getText();
+                }
+                else
+                {
+                    skipValue(parser);
+                }
+            }
+        }
+        finally
+        {
+            parser.close();
+        }
+        return new FolderInfo(lastModified, children);
+    }
+
+    /**
+     * Function to read the checksums and size out of a file info response as described in
+     * {@link ArtifactoryAPI#getFileMetadata(String, String, String, String, String)}
+     * @param content The response body
+     * @return The checksums and size of the file
+     * @throws IOException If the body could not be read or is malformed
+     */
+    public static FileMetadata readFileMetadata(InputStream content) throws IOException
+    {
+        String md5Sum = null;
+        String sha1Sum = null;
+        String created = null;
+        long size = 0;
+
+        JsonParser parser = FACTORY.createParser(content);
+        try
+        {
+            startObject(parser);
+            while (nextField(parser))
+            {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                if (FileMetadata.SIZE_TAG.equals(field))
+                {
+                    size = parser.getValueAsLong();
+                }
+                else if (FileMetadata.CREATED_TAG.equals(field))
+                {
+                    created = parser.getText();
+                }
+                else if (FileMetadata.CHECKSUMS_TAG.equals(field) && parser.getCurrentToken() == JsonToken.START_OBJECT)
+                {
+                    while (nextField(parser))
+                    {
+                        String name = parser.getCurrentName();
+                        parser.nextToken();
+                        if (FileMetadata.MD5_TAG.equals(name))
+                        {
+                            md5Sum = parser.getText();
+                        }
+                        else if (FileMetadata.SHA1_TAG.equals(name))
+                        {
+                            sha1Sum = parser.getText();
+                        }
+                        else
+                        {
+                            parser.skipChildren();
+                        }
+                    }
+                }
+                else
+                {
+                    parser.skipChildren();
+                }
+            }
+        }
+        finally
+        {
+            parser.close();
+        }
+        return new FileMetadata(md5Sum, sha1Sum, size, created);
+    }
+
+    /**
+     * Function to read the files out of a recursive listing as described in
+     * {@link ArtifactoryAPI#listArtifactFiles(String, String, String)}
+     * @param content The response body
+     * @return The files of the listing with paths relative to the listed folder
+     * @throws IOException If the body could not be read or is malformed
+     */
+    public static List<RemoteFile> readDeepListing(InputStream content) throws IOException
+    {
+        List<RemoteFile> files = new ArrayList<RemoteFile>();
+        JsonParser parser = FACTORY.createParser(content);
+        try
+        {
+            startObject(parser);
+            while (nextField(parser))
+            {
+                String field = parser.getCurrentName();
+                if ("files".equals(field) && parser.nextToken() == JsonToken.START_ARRAY)
+                {
+                    while (parser.nextToken() == JsonToken.START_OBJECT)
+                    {
+                        String uri = null;
+                        String sha1Sum = null;
+                        String lastModified = null;
+                        long size = 0;
+                        boolean folder = false;
+                        while (nextField(parser))
+                        {
+                            String name = parser.getCurrentName();
+                            parser.nextToken();
+                            if ("uri".equals(name))
+                            {
+                                uri = parser.getText();
+                            }
+                            else if (FileMetadata.SIZE_TAG.equals(name))
+                            {
+                                size = parser.getValueAsLong();
+                            }
+                            else if (FileMetadata.SHA1_TAG.equals(name))
+                            {
+                                sha1Sum = parser.getText();
+                            }
+                            else if ("lastModified".equals(name))
+                            {
+                                lastModified = parser.getText();
+                            }
+                            else if ("folder".equals(name))
+                            {
+                                folder = parser.getValueAsBoolean();
+                            }
+                            else
+                            {
+                                parser.skipChildren();
+                            }
+                        }
+                        if (uri != null && !folder)
+                        {
+                            // Listings do not report the creation date, a file is last modified when it is deployed
+                            files.add(new RemoteFile(uri.substring(1), new FileMetadata(null, sha1Sum, size, lastModified)));
+                        }
+                    }
+                }
+                else
+                {
+                    skipValue(parser);
+                }
+            }
+        }
+        finally
+        {
+            parser.close();
+        }
+        return Collections.unmodifiableList(files);
+    }
+
+    /**
+     * Function to read the files out of an AQL response as described in
+     * {@link ArtifactoryAPI#searchArtifactFiles(String, String, String)}
+     * @param content The response body
+     * @return The files of the results with paths relative to their repository
+     * @throws IOException If the body could not be read or is malformed
+     */
+    public static List<RemoteFile> readAQLResults(InputStream content) throws IOException
+    {
+        List<RemoteFile> files = new ArrayList<RemoteFile>();
+        JsonParser parser = FACTORY.createParser(content);
+        try
+        {
+            startObject(parser);
+            while (nextField(parser))
+            {
+                String field = parser.getCurrentName();
+                if ("results".equals(field) && parser.nextToken() == JsonToken.START_ARRAY)
+                {
+                    while (parser.nextToken() == JsonToken.START_OBJECT)
+                    {
+                        String repo = null;
+                        String path = null;
+                        String fileName = null;
+                        String md5Sum = null;
+                        String sha1Sum = null;
+                        String created = null;
+                        long size = 0;
+                        while (nextField(parser))
+                        {
+                            String name = parser.getCurrentName();
+                            parser.nextToken();
+                            if ("repo".equals(name))
+                            {
+                                repo = parser.getText();
+                            }
+                            else if ("path".equals(name))
+                            {
+                                path = parser.getText();
+                            }
+                            else if ("name".equals(name))
+                            {
+                                fileName = parser.getText();
+                            }
+                            else if (FileMetadata.SIZE_TAG.equals(name))
+                            {
+                                size = parser.getValueAsLong();
+                            }
+                            else if ("actual_md5".equals(name))
+                            {
+                                md5Sum = parser.getText();
+                            }
+                            else if ("actual_sha1".equals(name))
+                            {
+                                sha1Sum = parser.getText();
+                            }
+                            else if (FileMetadata.CREATED_TAG.equals(name))
+                            {
+                                created = parser.getText();
+                            }
+                            else
+                            {
+                                parser.skipChildren();
+                            }
+                        }
+                        if (path != null && fileName != null)
+                        {
+                            // Items at the root of a repository have a path of "."
+                            String fullPath = ".".equals(path) ? fileName : path + '/' + fileName;
+                            files.add(new RemoteFile(repo, fullPath, new FileMetadata(md5Sum, sha1Sum, size, created)));
+                        }
+                    }
+                }
+                else
+                {
+                    skipValue(parser);
+                }
+            }
+        }
+        finally
+        {
+            parser.close();
+        }
+        return Collections.unmodifiableList(files);
+    }
+
+    /**
+     * Function to read the keys of the local repositories out of a response that looks like:
+     * [
+     *      { "key": "libs-release-local", "type": "LOCAL", "url": "http://localhost:8080/artifactory/libs-release-local" }
+     * ]
+     * @param content The response body
+     * @return The keys of the local repositories
+     * @throws IOException If the body could not be read or is malformed
+     */
+    public static List<String> readLocalRepositories(InputStream content) throws IOException
+    {
+        List<String> repositories = new ArrayList<String>();
+        JsonParser parser = FACTORY.createParser(content);
+        try
+        {
+            if (parser.nextToken() != JsonToken.START_ARRAY)
+            {
+                throw new JsonParseException("Expected an array", parser.getCurrentLocation());
+            }
+            while (parser.nextToken() == JsonToken.START_OBJECT)
+            {
+                String key = null;
+                String type = null;
+                while (nextField(parser))
+                {
+                    String name = parser.getCurrentName();
+                    parser.nextToken();
+                    if ("key".equals(name))
+                    {
+                        key = parser.getText();
+                    }
+                    else if ("type".equals(name))
+                    {
+                        type = parser.getText();
+                    }
+                    else
+                    {
+                        parser.skipChildren();
+                    }
+                }
+                if (key != null && "LOCAL".equals(type))
+                {
+                    repositories.add(key);
+                }
+            }
+        }
+        finally
+        {
+            parser.close();
+        }
+        return Collections.unmodifiableList(repositories);
+    }
+
+    /**
+     * Function to move the parser onto the start of the top level object
+     * @param parser The parser to move
+     * @throws IOException If the body does not start with an object
+     */
+    private static void startObject(JsonParser parser) throws IOException
+    {
+        if (parser.nextToken() != JsonToken.START_OBJECT)
+        {
+            throw new JsonParseException("Expected an object", parser.getCurrentLocation());
+        }
+    }
+
+    /**
+     * Function to move the parser onto the next field name of the current object
+     * @param parser The parser to move
+     * @return false once the end of the current object is reached
+     * @throws IOException If the body could not be read
+     */
+    private static boolean nextField(JsonParser parser) throws IOException
+    {
+        return parser.nextToken() == JsonToken.FIELD_NAME;
+    }
+
+    /**
+     * Function to skip the value of the current field, including any nested values. 
+     * Used where the parser is still on the field name.
+     * @param parser The parser to move
+     * @throws IOException If the body could not be read
+     */
+    private static void skipValue(JsonParser parser) throws IOException
+    {
+        if (parser.getCurrentToken() == JsonToken.FIELD_NAME)
+        {
+            parser.nextToken();
+        }
+        parser.skipChildren();
+    }
+}
@@ -0,0 +1,93 @@
+// Copyright (c) 2014 Pason Systems, Inc.
+
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+package com.pason.plugins.artifactorypolling;
+
+import hudson.Extension;
+import hudson.model.AbstractProject;
+import hudson.model.Action;
+import hudson.model.Cause;
+import hudson.model.CauseAction;
+import hudson.model.Queue;
+import hudson.scm.SCM;
+import hudson.triggers.SCMTrigger;
+
+import java.util.List;
+import java.util.logging.Logger;
+
+import static java.util.logging.Level.FINE;
+
+/**
+ * Handler that attaches the changes found by a poll to the build that the poll triggers. Polling only 
+ * reports that the server changed, the SCM trigger queues the build with its cause and a fixed set of actions, 
+ * so the changes that the last poll of the job found are added to the actions of the build here, or folded 
+ * into the build that is already queued. The build checks that they were found against its own baseline.
+ */
+@Extension
+public class ArtifactoryQueueDecisionHandler extends Queue.QueueDecisionHandler
+{
+    /** A Logger for this class */
+    private static final Logger LOGGER = Logger.getLogger(ArtifactoryQueueDecisionHandler.class.getName());
+
+    @Override
+    public boolean shouldSchedule(Queue.Task p, List<Action> actions)
+    {
+        if (!(p instanceof AbstractProject) || !isTriggeredByPoll(actions))
+        {
+            return true;
+        }
+
+        SCM scm = ((AbstractProject<?,?>) p).getScm();
+        if (scm instanceof ArtifactoryRepository)
+        {
+            ArtifactoryCheckoutAction polled = ((ArtifactoryRepository) scm).getDescriptor()
+                .getPolledChanges(((AbstractProject<?,?>) p).getFullName());
+            if (polled != null)
+            {
+                LOGGER.log(FINE, "Queueing polled changes " + polled.getArtifacts().keySet() + " with the build");
+                actions.add(polled);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Function to check if a build is queued by the SCM trigger
+     * @param actions The actions that the build is queued with
+     * @return Whether or not one of the causes is a poll
+     */
+    static boolean isTriggeredByPoll(List<Action> actions)
+    {
+        for (Action action : actions)
+        {
+            if (action instanceof CauseAction)
+            {
+                for (Cause cause : ((CauseAction) action).getCauses())
+                {
+                    if (cause instanceof SCMTrigger.SCMTriggerCause)
+                    {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+}
@@ -23,6 +23,7 @@ package com.pason.plugins.artifactorypolling;
 import hudson.Extension;
 import hudson.FilePath;
 import hudson.Launcher;
+import hudson.init.Terminator;
 import hudson.scm.ChangeLogParser;
 import hudson.scm.PollingResult;
 import hudson.scm.SCM;
@@ -34,24 +35,32 @@ import hudson.model.BuildListener;
 import hudson.model.TaskListener;
 import hudson.util.FormValidation;
 import hudson.util.ListBoxModel;
+import hudson.util.Secret;
+
+import jenkins.model.Jenkins;
 
 import java.io.File;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.lang.InterruptedException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
 import java.util.logging.Logger;
 
 import net.sf.json.JSONArray;
 import net.sf.json.JSONObject;
 
-import org.apache.commons.io.FileUtils;
-
-import org.apache.http.Header;
 import org.apache.http.HttpResponse;
-import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpGet;
-import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.util.EntityUtils;
 
 import org.kohsuke.stapler.DataBoundConstructor;
 import org.kohsuke.stapler.StaplerRequest;
@@ -69,7 +78,7 @@ import static java.util.logging.Level.WARNING;
  *    This function will compare the server's state with the state in the local build. If there is a difference it
  *    will trigger a build. If not it will try again when the polling period expires
  * 2. {@link ArtifactoryRepository#checkout(AbstractBuild, Launcher, FilePath, BuildListener, File)}
- *     This function will download the changed artifacts from the server, one change per build
+ *     This function will download the changed artifacts from the server, one change per artifact per build
  * 3. {@link ArtifactoryRepository#calcRevisionsFromBuild(AbstractBuild, Launcher, TaskListener)}
  *    This function will store the state of the local build so that it can be compared against the server state
  *    by the compareRemoteRevisionsWith function
@@ -81,6 +90,10 @@ public class ArtifactoryRepository extends SCM {
 
 	/** A logger for this class */
     private static final Logger LOGGER = Logger.getLogger(ArtifactoryRepository.class.getName());
+
+    /** Milliseconds the date search of a poll reaches back before the watermark, to allow for clock skew */
+    private static final long WATERMARK_OVERLAP = 60L * 1000L;
+
     /** The repo that the artifact is from */
     private final String repo;
     /** The group that the artifact belongs to */
@@ -95,9 +108,8 @@ public class ArtifactoryRepository extends SCM {
     private final String localPath;
     /** Whether or not do do the checkout */
     private final Boolean doDownload;
-
-    /** The next artifact to download from Artifactory */
-    private transient Artifact nextArtifact;
+    /** Further artifacts that are polled and checked out together with the first one */
+    private final List<ArtifactCoordinate> additionalArtifacts;
 
     /**
      * Constructor
@@ -108,10 +120,12 @@ public class ArtifactoryRepository extends SCM {
      * @param groupID The group that the artifact belongs to
      * @param artifactID The name of the artifact
      * @param browser The browser dummy variable
+     * @param additionalArtifacts Further artifacts to poll and check out, may be null
      */
     @DataBoundConstructor
     public ArtifactoryRepository(String repo, String groupID, 
-        String artifactID, ArtifactoryBrowser browser, String localPath, String versionFilter, boolean doDownload)
+        String artifactID, ArtifactoryBrowser browser, String localPath, String versionFilter, boolean doDownload,
+        List<ArtifactCoordinate> additionalArtifacts)
     {
         LOGGER.log(FINE, "Configured repo with name: " + repo);
         this.repo = repo;
@@ -125,7 +139,21 @@ public class ArtifactoryRepository extends SCM {
             localPath = ".";
         }
         this.localPath = localPath;
-        this.nextArtifact = null;
+        this.additionalArtifacts = additionalArtifacts != null 
+            ? new ArrayList<ArtifactCoordinate>(additionalArtifacts) : new ArrayList<ArtifactCoordinate>();
+    }
+
+    /**
+     * Constructor for a repository that polls a single artifact
+     * @param repo The repository that the artifact is found in
+     * @param groupID The group that the artifact belongs to
+     * @param artifactID The name of the artifact
+     * @param browser The browser dummy variable
+     */
+    public ArtifactoryRepository(String repo, String groupID, 
+        String artifactID, ArtifactoryBrowser browser, String localPath, String versionFilter, boolean doDownload)
+    {
+        this(repo, groupID, artifactID, browser, localPath, versionFilter, doDownload, null);
     }
 
     /**
@@ -137,64 +165,149 @@ public class ArtifactoryRepository extends SCM {
         FilePath workspace, BuildListener listener, File changelogFile) 
         throws IOException, InterruptedException
     {
-    	AbstractBuild<?, ?> lastBuild = build;
     	LOGGER.log(FINE, "Current job: " + build.getProject().getName() );
 
-        // If this is the first build we need to get the next version to checkout
-        if (nextArtifact == null)
+        // The poll that triggered the build attached what it found to it. A build that was not triggered by a poll, 
+        // or whose baseline changed since the poll, reads the server and compares it with its baseline itself.
+        ArtifactoryCheckoutAction polled = build.getAction(ArtifactoryCheckoutAction.class);
+        if (polled != null)
         {
-            ArtifactoryAPI api = new ArtifactoryAPI(getDescriptor().getArtifactoryServer());
-            ArtifactoryRevisionState serverState = ArtifactoryRevisionState.fromServer(repo, groupID, artifactID, versionFilter, api);
-            if (!serverState.getArtifacts().isEmpty())
+            build.getActions().remove(polled);
+        }
+
+        StateStore store = StateStore.forProject(build.getProject());
+        Map<String, Artifact> nextArtifacts = new HashMap<String, Artifact>();
+        Map<String, RevisionStateDiff> diffs = new HashMap<String, RevisionStateDiff>();
+        Map<String, ArtifactoryRevisionState> baselines = new HashMap<String, ArtifactoryRevisionState>();
+        Map<String, File> baselineFiles = new HashMap<String, File>();
+        List<ArtifactCoordinate> crawl = new ArrayList<ArtifactCoordinate>();
+        for (ArtifactCoordinate coordinate : getCoordinates())
+        {
+            File file = findVersionsFile(coordinate, build);
+            ArtifactoryRevisionState revState = ArtifactoryRevisionState.BASE;
+            if (file != null)
+            {
+                revState = ArtifactoryRevisionState.fromFile(file, store);
+                if ( !coordinate.isSameArtifact(revState) )
+                {
+                    revState = ArtifactoryRevisionState.BASE;
+                }
+            }
+            baselines.put(coordinate.getKey(), revState);
+            baselineFiles.put(coordinate.getKey(), file);
+
+            if (polled == null || !polled.isBasedOn(coordinate, revState))
             {
-                nextArtifact = serverState.getArtifacts().get(0);
+                crawl.add(coordinate);
             }
-            else
+            else if (polled.getArtifact(coordinate) != null && polled.getDiff(coordinate) != null)
+            {
+                nextArtifacts.put(coordinate.getKey(), polled.getArtifact(coordinate));
+                diffs.put(coordinate.getKey(), polled.getDiff(coordinate));
+            }
+            else if (polled.getArtifact(coordinate) != null)
+            {
+                // The lazy search stopped at the first change, the build reads the other versions so that it 
+                // records every change in its state and changelog, like a poll that read all of them
+                crawl.add(coordinate);
+            }
+            else if (!checkoutPrevious(coordinate, build, nextArtifacts))
             {
-                LOGGER.log(FINE, "No artifacts found for " + groupID + ":" + artifactID); 
-                return false;
+                // The poll found no change, but no build recorded what it checked out
+                crawl.add(coordinate);
             }
         }
 
-        CheckoutTask task = new CheckoutTask(getDescriptor().getArtifactoryServer(), 
-                                            repo, groupID, artifactID, nextArtifact, localPath, doDownload);
-        
-        for (AbstractBuild<?,?> b=build; b!=null; b=b.getPreviousBuild())
+        if (!crawl.isEmpty())
         {
-            if (getVersionsFile(b).exists())
+            LOGGER.log(FINE, "Reading the server for " + crawl + ", no poll found their changes");
+            ArtifactoryAPI api = new ArtifactoryAPI(getDescriptor().getConnection());
+            // A crawl shared by the polls may predate the change that triggered the build
+            Map<String, ArtifactoryRevisionState> serverStates = readServerStates(api, getDescriptor().getCrawlMode(), crawl, 
+                Collections.<String, ArtifactoryRevisionState>emptyMap(), false);
+            for (ArtifactCoordinate coordinate : crawl)
             {
-                build = b;
-                break;
+                ArtifactoryRevisionState serverState = serverStates.get(coordinate.getKey());
+                RevisionStateDiff diff = RevisionStateDiff.compute(baselines.get(coordinate.getKey()), serverState);
+                Artifact change = diff.getCheckoutArtifact();
+                if (change != null)
+                {
+                    nextArtifacts.put(coordinate.getKey(), change);
+                    diffs.put(coordinate.getKey(), diff);
+                }
+                else if (!checkoutPrevious(coordinate, build, nextArtifacts))
+                {
+                    if (!serverState.getArtifacts().isEmpty())
+                    {
+                        nextArtifacts.put(coordinate.getKey(), serverState.getArtifacts().get(0));
+                    }
+                    else
+                    {
+                        LOGGER.log(FINE, "No artifacts found for " + coordinate.getGroupID() + ":" + coordinate.getArtifactID()); 
+                    }
+                }
             }
         }
 
-        File file = getVersionsFile(build);
-        LOGGER.log(FINE, "Got version file for " + build.getProject().getName());
-        ArtifactoryRevisionState revState = ArtifactoryRevisionState.BASE;
-        
-        if (file.exists())
+        List<CheckoutTask> tasks = new ArrayList<CheckoutTask>();
+        for (ArtifactCoordinate coordinate : getCoordinates())
         {
-        	revState = ArtifactoryRevisionState.fromFile(file);
-        
-	        if ( !revState.getArtifactID().equals(artifactID) ||
-	        	 !revState.getGroupID().equals(groupID) ||
-	        	 !revState.getRepo().equals(repo) )
-	        {
-	        	revState = ArtifactoryRevisionState.BASE;
-	        }
+            Artifact nextArtifact = nextArtifacts.get(coordinate.getKey());
+            if (nextArtifact == null)
+            {
+                continue;
+            }
+
+            tasks.add(new CheckoutTask(getDescriptor().getArtifactoryServer(), coordinate.getRepo(), coordinate.getGroupID(), 
+                coordinate.getArtifactID(), nextArtifact, coordinate.getLocalPath(), doDownload));
+            LOGGER.log(FINE, "Got version file for " + build.getProject().getName());
+
+            // Create a new Revision state with the parameters. Every version that the poll found changed is 
+            // recorded, so versions published together do not trigger a build each.
+            ArtifactoryRevisionState revState = baselines.get(coordinate.getKey());
+            RevisionStateDiff diff = diffs.get(coordinate.getKey());
+            revState = new ArtifactoryRevisionState(coordinate.getRepo(), coordinate.getGroupID(), coordinate.getArtifactID(), 
+                diff != null ? diff.apply(revState) : revState.addOrReplaceArtifact(nextArtifact));
+            store.write(revState, coordinate.getVersionsFile(build), baselineFiles.get(coordinate.getKey()));
+            new StateIndex(build.getProject()).put(coordinate.getKey(), build.getNumber(), true);
         }
-        
-        // Create a new Revision state with the parameters
-        revState = new ArtifactoryRevisionState(repo, groupID, artifactID, revState.addOrReplaceArtifact(nextArtifact));
-        LOGGER.log(FINE, revState.toJSON().toString());
-        File newBuildFile = getVersionsFile(lastBuild);
-        FileWriter writer = new FileWriter(newBuildFile);
-        revState.toJSON().write(writer);
-        writer.close();
-        
-        FileUtils.touch(changelogFile);
-        
-        return workspace.act(task);
+
+        if (tasks.isEmpty())
+        {
+            return false;
+        }
+
+        // Record what was checked out, for the builds that follow
+        build.addAction(new ArtifactoryCheckoutAction(nextArtifacts, diffs));
+
+        writeChangeLog(changelogFile, diffs);
+
+        // The first artifact is checked out first, as it cleans its local path which may contain the others
+        boolean result = true;
+        for (CheckoutTask task : tasks)
+        {
+            result &= workspace.act(task);
+        }
+        return result;
+    }
+
+    /**
+     * Function to check out an artifact at the version that the build before it checked out
+     * @param coordinate The artifact
+     * @param build The build
+     * @param nextArtifacts The artifacts to check out, to which the previous version is added
+     * @return Whether or not a build before it recorded what it checked out
+     */
+    private static boolean checkoutPrevious(ArtifactCoordinate coordinate, AbstractBuild<?,?> build, Map<String, Artifact> nextArtifacts)
+    {
+        AbstractBuild<?,?> previousBuild = findStateBuild(coordinate, build);
+        ArtifactoryCheckoutAction previous = previousBuild == null ? null : previousBuild.getAction(ArtifactoryCheckoutAction.class);
+        if (previous == null || previous.getArtifact(coordinate) == null)
+        {
+            return false;
+        }
+        nextArtifacts.put(coordinate.getKey(), previous.getArtifact(coordinate));
+        return true;
     }
 
     /**
@@ -208,37 +321,87 @@ public class ArtifactoryRepository extends SCM {
         throws IOException, InterruptedException
     {
         LOGGER.log(FINE, "Calculating revisions from build");
-        // First find the last build that had a version file
-        for (AbstractBuild<?,?> b=build; b!=null; b=b.getPreviousBuild())
+        Map<String, ArtifactoryRevisionState> states = new LinkedHashMap<String, ArtifactoryRevisionState>();
+        StateStore store = StateStore.forProject(build.getProject());
+
+        for (ArtifactCoordinate coordinate : getCoordinates())
         {
-            if (getVersionsFile(b).exists())
+            // First find the last build that had a version file
+            File file = findVersionsFile(coordinate, build);
+            if (file == null)
             {
-                build = b;
-                break;
+                // The file doesn't exist for the first build, the state stays unknown
+                LOGGER.log(WARNING, "No previous build contained a versions file for " + coordinate);
+                continue;
             }
+            states.put(coordinate.getKey(), ArtifactoryRevisionState.fromFile(file, store));
         }
 
-        File file = getVersionsFile(build);
-        ArtifactoryRevisionState revState = ArtifactoryRevisionState.BASE;
-        
-        if (!file.exists())
+        return new CombinedRevisionState(states);
+    }
+
+    /**
+     * Function to find the versions file of an artifact in a build or the last build before it that has one
+     * @param coordinate The artifact
+     * @param build The build to start looking at
+     * @return The versions file, or null if no build has one
+     */
+    private static File findVersionsFile(ArtifactCoordinate coordinate, AbstractBuild<?,?> build)
+    {
+        AbstractBuild<?,?> stateBuild = findStateBuild(coordinate, build);
+        return stateBuild == null ? null : coordinate.findVersionsFile(stateBuild);
+    }
+
+    /**
+     * Function to find the build that holds the newest versions file of an artifact, at or before a build.
+     * The build is looked up in the {@link StateIndex} of the job. Only jobs that have no index yet, or whose
+     * indexed build was deleted, walk back through the builds, and the index is repaired afterwards.
+     * @param coordinate The artifact
+     * @param build The build to start looking at
+     * @return The build, or null if no build has a versions file
+     */
+    private static AbstractBuild<?,?> findStateBuild(ArtifactCoordinate coordinate, AbstractBuild<?,?> build)
+    {
+        AbstractProject<?,?> project = build.getProject();
+        StateIndex index = new StateIndex(project);
+        int number = index.get(coordinate.getKey());
+        if (number > 0 && number <= build.getNumber())
         {
-            // The file doesn't exist for the first build, return the base value
-            LOGGER.log(WARNING, "No previous build contained a versions file");
-            return revState;
+            AbstractBuild<?,?> indexed = project.getBuildByNumber(number);
+            if (indexed != null && coordinate.findVersionsFile(indexed) != null)
+            {
+                return indexed;
+            }
         }
-        else
+
+        for (AbstractBuild<?,?> b=build; b!=null; b=b.getPreviousBuild())
         {
-            revState = ArtifactoryRevisionState.fromFile(file);
+            if (coordinate.findVersionsFile(b) != null)
+            {
+                // Only a walk from the newest build finds the newest versions file of the job
+                if (build == project.getLastBuild())
+                {
+                    try
+                    {
+                        index.put(coordinate.getKey(), b.getNumber(), false);
+                    }
+                    catch (IOException e)
+                    {
+                        LOGGER.log(WARNING, "Could not update the state index of " + project.getName() + ": " + e.getMessage());
+                    }
+                }
+                return b;
+            }
         }
-
-        return revState;
+        return null;
     }
 
     /**
      * See documentation top of class
      * This function will determine the state of the artifactory server and compare it with the
-     * local state. If there is a condition where a build needs to be triggered, trigger a build
+     * local state. If there is a condition where a build needs to be triggered, report a significant change
+     * so that the SCM trigger queues the build. Every artifact is compared, but the job is only triggered once for all of them.
+     * The workspace and launcher are not used and are null, see {@link #requiresWorkspaceForPolling()}
      */
     @Override
     public PollingResult compareRemoteRevisionWith(AbstractProject<?,?> project,
@@ -247,29 +410,314 @@ public class ArtifactoryRepository extends SCM {
     {
         LOGGER.log(FINE, "Comparing remote revisions with baseline");
         
-        ArtifactoryRevisionState localState = (ArtifactoryRevisionState) baseline;
+        // Builds from before several artifacts could be polled hold the state of a single artifact
+        CombinedRevisionState localStates = CombinedRevisionState.fromBaseline(baseline, getCoordinates());
 
-        ArtifactoryAPI api = new ArtifactoryAPI(getDescriptor().getArtifactoryServer());
+        ArtifactoryConnection connection = getDescriptor().getConnection();
+        if (connection.getCircuitBreaker().isOpen())
+        {
+            // The server keeps failing, so don't add to its load until the breaker lets a probe through
+            LOGGER.log(FINE, "Skipping poll of " + groupID + ":" + artifactID + ", the circuit breaker for " 
+                + connection.getArtifactoryURL() + " is open");
+            listener.getLogger().println("Artifactory is unavailable, skipping poll");
+            return new PollingResult(baseline, baseline, PollingResult.Change.NONE);
+        }
 
-        ArtifactoryRevisionState serverState = ArtifactoryRevisionState.fromServer(repo, groupID, artifactID, versionFilter, api);
+        // Polls of artifacts that have been quiet for a while are spread out
+        PollBackoff backoff = getDescriptor().getPollBackoff();
+        Map<String, ArtifactoryRevisionState> serverStates = new LinkedHashMap<String, ArtifactoryRevisionState>();
+        List<ArtifactCoordinate> coordinates = new ArrayList<ArtifactCoordinate>();
+        for (ArtifactCoordinate coordinate : getCoordinates())
+        {
+            if (backoff != null && backoff.shouldSkip(project.getFullName(), coordinate.getKey(), System.currentTimeMillis()))
+            {
+                LOGGER.log(FINE, "Skipping poll of " + coordinate + ", it has not been published recently");
+                serverStates.put(coordinate.getKey(), localStates.getState(coordinate));
+            }
+            else
+            {
+                coordinates.add(coordinate);
+            }
+        }
+        if (coordinates.isEmpty())
+        {
+            return new PollingResult(baseline, baseline, PollingResult.Change.NONE);
+        }
 
-        //Compare server state to local state
-        nextArtifact = ArtifactoryRevisionState.compareRevisionStates(serverState, localState);
-        if (nextArtifact != null)
+        PollScheduler.Permit permit = getDescriptor().getPollScheduler().acquire(connection.getArtifactoryURL());
+        try
         {
-            LOGGER.log(FINE, "Found new data for version: " + nextArtifact);
-            return PollingResult.BUILD_NOW;
+            return pollServer(project.getFullName(), localStates, coordinates, serverStates, new ArtifactoryAPI(connection), backoff);
         }
+        finally
+        {
+            permit.release();
+        }
+    }
+
+    /**
+     * Function to read the state of the server and compare it with the baseline. The changes that were found 
+     * are kept by the descriptor until the build is queued, see {@link DescriptorImpl#getPolledChanges(String)}.
+     * @param job The full name of the job that is polled
+     * @param localStates The baseline
+     * @param coordinates The artifacts to poll
+     * @param serverStates The states of the artifacts that are not polled, to which the states read from the server are added
+     * @param api The API object to read the server with
+     * @param backoff The publish histories, null if polls are never skipped
+     * @return The result of the poll
+     * @throws IOException If the state could not be read from the server
+     * @throws InterruptedException If the poll was interrupted
+     */
+    private PollingResult pollServer(String job, CombinedRevisionState localStates, List<ArtifactCoordinate> coordinates, 
+        Map<String, ArtifactoryRevisionState> serverStates, ArtifactoryAPI api, PollBackoff backoff) 
+        throws IOException, InterruptedException
+    {
+        CrawlMode crawlMode = getDescriptor().getCrawlMode();
+        long fullCrawlInterval = getDescriptor().getFullCrawlInterval() * 60L * 1000L;
+
+        // A state read through the crawl cache may be as old as the cache TTL
+        long pollStart = System.currentTimeMillis();
+        long watermark = pollStart - (getDescriptor().getCrawlCache() != null ? getDescriptor().getCrawlCacheTTL() * 1000L : 0);
 
-        // Compare local state to server state
-        nextArtifact = ArtifactoryRevisionState.compareRevisionStates(localState, serverState);
-        if (nextArtifact != null)
+        Map<String, Artifact> changes = new LinkedHashMap<String, Artifact>();
+        Map<String, RevisionStateDiff> diffs = new HashMap<String, RevisionStateDiff>();
+        Map<String, ArtifactoryRevisionState> knownStates = new HashMap<String, ArtifactoryRevisionState>();
+        List<ArtifactCoordinate> crawl = new ArrayList<ArtifactCoordinate>();
+        for (ArtifactCoordinate coordinate : coordinates)
         {
-            LOGGER.log(FINE, "Found new data for version: " + nextArtifact);
-            return PollingResult.BUILD_NOW;
+            ArtifactoryRevisionState localState = localStates.getState(coordinate);
+
+            // Versions that have not been modified since the baseline was read from the server are reused,
+            // until it is time to read everything again
+            ArtifactoryRevisionState knownState = null;
+            if (localState.getFullCrawlTime() > 0 && pollStart - localState.getFullCrawlTime() < fullCrawlInterval)
+            {
+                knownState = localState;
+            }
+
+            if (knownState != null && knownState.getWatermark() > 0 && getDescriptor().getPollModifiedSince())
+            {
+                // Only ask for files published since the last poll. Deletions don't show up in the search, 
+                // they are found by the full crawl once the full crawl interval has passed.
+                List<RemoteFile> modified = api.searchModifiedFiles(coordinate.getRepo(), coordinate.getGroupID(), 
+                    coordinate.getArtifactID(), knownState.getWatermark() - WATERMARK_OVERLAP);
+                if (modified != null && ArtifactoryRevisionState.containsFiles(knownState, modified, coordinate.getVersionFilter()))
+                {
+                    LOGGER.log(FINE, modified.size() + " files of " + coordinate + " modified since the last poll are known");
+                    recordPoll(backoff, job, coordinate, knownState);
+                    serverStates.put(coordinate.getKey(), knownState.withWatermark(watermark));
+                    continue;
+                }
+            }
+
+            // A crawl that another job shared is free, otherwise the server is only read as far as needed to 
+            // find the first change
+            SharedCrawlCache crawlCache = getDescriptor().getCrawlCache();
+            String crawlKey = SharedCrawlCache.key(crawlMode, coordinate.getRepo(), coordinate.getGroupID(), 
+                coordinate.getArtifactID(), coordinate.getVersionFilter());
+            if (crawlMode == CrawlMode.STORAGE && (crawlCache == null || crawlCache.peek(crawlKey) == null))
+            {
+                LazyServerState lazyState = new LazyServerState(coordinate.getRepo(), coordinate.getGroupID(), 
+                    coordinate.getArtifactID(), coordinate.getVersionFilter(), api);
+                Artifact change = lazyState.findChange(localState, knownState);
+                if (change != null)
+                {
+                    // Without the differences the build reads the server again, so that it records all of them
+                    LOGGER.log(FINE, "Found new data for version: " + change);
+                    recordPoll(backoff, job, coordinate, null);
+                    changes.put(coordinate.getKey(), change);
+                }
+                else
+                {
+                    // Every version was read, so the other jobs can share the state
+                    ArtifactoryRevisionState serverState = lazyState.toRevisionState(knownState);
+                    if (crawlCache != null)
+                    {
+                        crawlCache.put(crawlKey, serverState);
+                    }
+                    recordPoll(backoff, job, coordinate, serverState);
+                    serverStates.put(coordinate.getKey(), serverState.withWatermark(watermark));
+                }
+                continue;
+            }
+
+            knownStates.put(coordinate.getKey(), knownState);
+            crawl.add(coordinate);
+        }
+
+        Map<String, ArtifactoryRevisionState> crawledStates = readServerStates(api, crawlMode, crawl, knownStates, true);
+        for (ArtifactCoordinate coordinate : crawl)
+        {
+            ArtifactoryRevisionState localState = localStates.getState(coordinate);
+            ArtifactoryRevisionState serverState = crawledStates.get(coordinate.getKey());
+
+            // Find every difference at once, so a single build picks up all versions published since the baseline
+            RevisionStateDiff diff = RevisionStateDiff.compute(localState, serverState);
+            Artifact change = diff.getCheckoutArtifact();
+            if (change != null)
+            {
+                LOGGER.log(FINE, "Found changes in " + coordinate + ": " + diff.getChanges());
+                recordPoll(backoff, job, coordinate, null);
+                changes.put(coordinate.getKey(), change);
+                diffs.put(coordinate.getKey(), diff);
+            }
+            else
+            {
+                // Versions that were only removed can not be built, they just leave the baseline
+                if (!diff.isEmpty())
+                {
+                    LOGGER.log(FINE, "Found removed versions of " + coordinate + ": " + diff.getChanges());
+                }
+
+                // The server state becomes the baseline of the next poll so that it can reuse the 
+                // modification dates of the version folders, and search for files modified after the watermark
+                recordPoll(backoff, job, coordinate, serverState);
+                serverStates.put(coordinate.getKey(), serverState.withWatermark(watermark));
+            }
+        }
+
+        if (!changes.isEmpty())
+        {
+            // The coordinates that were not polled are unchanged against their baseline as well
+            Map<String, String> baselines = new HashMap<String, String>();
+            for (ArtifactCoordinate coordinate : getCoordinates())
+            {
+                baselines.put(coordinate.getKey(), localStates.getState(coordinate).getDigest());
+            }
+            getDescriptor().putPolledChanges(job, new ArtifactoryCheckoutAction(changes, diffs, baselines));
+
+            // A single build checks out every changed artifact. The changed artifacts keep their baseline, 
+            // so later polls find them again until the build has checked them out.
+            Map<String, ArtifactoryRevisionState> remoteStates = new LinkedHashMap<String, ArtifactoryRevisionState>(serverStates);
+            for (ArtifactCoordinate coordinate : coordinates)
+            {
+                if (changes.containsKey(coordinate.getKey()))
+                {
+                    remoteStates.put(coordinate.getKey(), localStates.getState(coordinate));
+                }
+            }
+            return new PollingResult(localStates, new CombinedRevisionState(remoteStates), PollingResult.Change.SIGNIFICANT);
         }
 
-        return PollingResult.NO_CHANGES;
+        getDescriptor().putPolledChanges(job, null);
+        return new PollingResult(localStates, new CombinedRevisionState(serverStates), PollingResult.Change.NONE);
+    }
+
+    /**
+     * Function to write the changelog of a build, which is read by {@link ArtifactoryChangeLogParser}
+     * @param changelogFile The file to write
+     * @param diffs The differences found by the poll that triggered the build, by the key of the coordinate
+     * @throws IOException If the file could not be written
+     */
+    private void writeChangeLog(File changelogFile, Map<String, RevisionStateDiff> diffs) throws IOException
+    {
+        JSONArray changeLog = new JSONArray();
+        for (ArtifactCoordinate coordinate : getCoordinates())
+        {
+            RevisionStateDiff diff = diffs.get(coordinate.getKey());
+            if (diff != null && !diff.isEmpty())
+            {
+                JSONObject entry = diff.toJSON();
+                entry.element(ArtifactoryRevisionState.REPO_TAG, coordinate.getRepo());
+                entry.element(ArtifactoryRevisionState.GROUP_TAG, coordinate.getGroupID());
+                entry.element(ArtifactoryRevisionState.ARTIFACT_ID_TAG, coordinate.getArtifactID());
+                changeLog.add(entry);
+            }
+        }
+
+        Writer writer = new OutputStreamWriter(new FileOutputStream(changelogFile), "UTF-8");
+        try
+        {
+            changeLog.write(writer);
+        }
+        finally
+        {
+            writer.close();
+        }
+    }
+
+    /**
+     * Function to record the result of a poll in the publish history of the artifact
+     * @param backoff The publish histories, null if polls are never skipped
+     * @param job The full name of the job that polled the artifact
+     * @param coordinate The artifact
+     * @param serverState The state on the server if the poll found no change, null if it found a change
+     */
+    private void recordPoll(PollBackoff backoff, String job, ArtifactCoordinate coordinate, ArtifactoryRevisionState serverState)
+    {
+        if (backoff != null)
+        {
+            long lastPublished = serverState != null ? serverState.getLastPublished() : 0;
+            backoff.recordPoll(job, coordinate.getKey(), System.currentTimeMillis(), lastPublished, serverState == null);
+        }
+    }
+
+    /**
+     * Function to read the states of several artifacts on the server. In AQL crawl mode they are read
+     * with a single query, otherwise each is read on its own.
+     * @param api The API object to read the server with
+     * @param crawlMode How the server is crawled
+     * @param coordinates The artifacts to read
+     * @param knownStates Previously read states whose unmodified versions are reused, by the key of their coordinate
+     * @param shared Whether or not crawls may be shared with other jobs through the crawl cache
+     * @return The states on the server by the key of their coordinate
+     * @throws IOException If a state could not be read from the server
+     * @throws InterruptedException If the crawl was interrupted
+     */
+    private Map<String, ArtifactoryRevisionState> readServerStates(ArtifactoryAPI api, CrawlMode crawlMode, 
+        List<ArtifactCoordinate> coordinates, Map<String, ArtifactoryRevisionState> knownStates, boolean shared) 
+        throws IOException, InterruptedException
+    {
+        if (crawlMode == CrawlMode.AQL && coordinates.size() > 1)
+        {
+            return ArtifactoryRevisionState.fromServer(coordinates, api);
+        }
+
+        Map<String, ArtifactoryRevisionState> states = new LinkedHashMap<String, ArtifactoryRevisionState>();
+        for (ArtifactCoordinate coordinate : coordinates)
+        {
+            states.put(coordinate.getKey(), readServerState(api, crawlMode, coordinate, knownStates.get(coordinate.getKey()), shared));
+        }
+        return states;
+    }
+
+    /**
+     * Function to read the state of an artifact on the server. Jobs that poll the same coordinates 
+     * share the crawl through the crawl cache of the descriptor, if it is enabled.
+     * @param api The API object to read the server with
+     * @param crawlMode How the server is crawled
+     * @param coordinate The artifact to read
+     * @param known A previously read state whose unmodified versions are reused, may be null
+     * @param shared Whether or not a crawl of another job may be used. A state that is read anyway is still shared.
+     * @return The state on the server
+     * @throws IOException If the state could not be read from the server
+     * @throws InterruptedException If the crawl was interrupted
+     */
+    private ArtifactoryRevisionState readServerState(final ArtifactoryAPI api, final CrawlMode crawlMode, 
+        final ArtifactCoordinate coordinate, final ArtifactoryRevisionState known, boolean shared) throws IOException, InterruptedException
+    {
+        SharedCrawlCache cache = getDescriptor().getCrawlCache();
+        String key = SharedCrawlCache.key(crawlMode, coordinate.getRepo(), coordinate.getGroupID(), coordinate.getArtifactID(), 
+            coordinate.getVersionFilter());
+        if (cache == null || !shared)
+        {
+            ArtifactoryRevisionState state = ArtifactoryRevisionState.fromServer(coordinate.getRepo(), coordinate.getGroupID(), 
+                coordinate.getArtifactID(), coordinate.getVersionFilter(), api, crawlMode, known);
+            if (cache != null)
+            {
+                cache.put(key, state);
+            }
+            return state;
+        }
+
+        return cache.get(key, 
+            new Callable<ArtifactoryRevisionState>() {
+                public ArtifactoryRevisionState call() throws Exception
+                {
+                    return ArtifactoryRevisionState.fromServer(coordinate.getRepo(), coordinate.getGroupID(), coordinate.getArtifactID(), 
+                        coordinate.getVersionFilter(), api, crawlMode, known);
+                }
+            });
     }
 
     @Override
@@ -294,10 +742,15 @@ public class ArtifactoryRepository extends SCM {
         return true;
     }
 
+    /**
+     * Polling only compares the server with the baseline that Jenkins keeps for the job, 
+     * so it runs on the controller without locking a workspace or contacting an agent
+     * @return false
+     */
     @Override
     public boolean requiresWorkspaceForPolling()
     {
-        return true;
+        return false;
     }
 
     @Override
@@ -361,14 +814,35 @@ public class ArtifactoryRepository extends SCM {
 
 
 
+    /**
+     * Getter function for the additional artifacts
+     * @return the artifacts that are polled and checked out together with the first one
+     */
+    public List<ArtifactCoordinate> getAdditionalArtifacts()
+    {
+        return additionalArtifacts != null ? Collections.unmodifiableList(additionalArtifacts) : Collections.<ArtifactCoordinate>emptyList();
+    }
+
+    /**
+     * Function to get every artifact that this object polls for
+     * @return The coordinates of the first artifact and of the additional ones
+     */
+    public List<ArtifactCoordinate> getCoordinates()
+    {
+        List<ArtifactCoordinate> coordinates = new ArrayList<ArtifactCoordinate>();
+        coordinates.add(new ArtifactCoordinate(repo, groupID, artifactID, versionFilter, localPath));
+        coordinates.addAll(getAdditionalArtifacts());
+        return coordinates;
+    }
+
     /**
      * Getter function for the file containing the local state of the build
      * @param build The build which contains the file
-     * @return The file containing the state
+     * @return The file containing the state of the first artifact, or null if the build has none
      */
     public File getVersionsFile(AbstractBuild<?,?> build)
     {
-        return new File(build.getRootDir(), "artifactoryVersions" +"-"+ repo +"-"+ groupID +"-"+ artifactID +"-"+ versionFilter + ".json" );
+        return getCoordinates().get(0).findVersionsFile(build);
     }
 
     /**
@@ -380,9 +854,81 @@ public class ArtifactoryRepository extends SCM {
     @Extension // This indicates to Jenkins that this is an implementation of an extension point.
     public static final class DescriptorImpl extends SCMDescriptor<SCM>
     {
+        /** Default number of minutes after which a poll reads every version again */
+        public static final int DEFAULT_FULL_CRAWL_INTERVAL = 60;
+
     	/** The artifactory server. Guaranteed to end in '/' */
         private String artifactoryServer;
 
+        /** The maximum number of pooled connections to a single route of the server */
+        private int maxConnectionsPerRoute = ArtifactoryConnection.DEFAULT_MAX_CONNECTIONS_PER_ROUTE;
+
+        /** The maximum number of pooled connections to the server */
+        private int maxConnectionsTotal = ArtifactoryConnection.DEFAULT_MAX_CONNECTIONS_TOTAL;
+
+        /** The number of seconds before an idle pooled connection is closed */
+        private int idleConnectionTimeout = ArtifactoryConnection.DEFAULT_IDLE_CONNECTION_TIMEOUT;
+
+        /** The maximum number of cached server responses */
+        private int responseCacheSize = ResponseCache.DEFAULT_SIZE;
+
+        /** The number of connections that storage crawl requests are sent over */
+        private int crawlParallelism = ArtifactoryConnection.DEFAULT_CRAWL_PARALLELISM;
+
+        /** The number of minutes after which a poll reads every version again, 0 to always read everything */
+        private int fullCrawlInterval = DEFAULT_FULL_CRAWL_INTERVAL;
+
+        /** Whether or not compressed responses are requested from the server */
+        private Boolean compressResponses = true;
+
+        /** The number of times a failed request is retried */
+        private Integer maxRetries = ArtifactoryConnection.DEFAULT_MAX_RETRIES;
+
+        /** The number of consecutive failed requests after which requests to the server are skipped, 0 to never skip */
+        private Integer circuitBreakerThreshold = CircuitBreaker.DEFAULT_FAILURE_THRESHOLD;
+
+        /** The number of seconds requests are skipped before the server is probed again */
+        private Integer circuitBreakerOpenDuration = CircuitBreaker.DEFAULT_OPEN_DURATION;
+
+        /** The number of seconds a crawled state is shared by the jobs that poll the same artifact, 0 to not share */
+        private Integer crawlCacheTTL = SharedCrawlCache.DEFAULT_TTL;
+
+        /** The maximum number of minutes polls of a quiet artifact are skipped for, 0 to never skip */
+        private Integer maxPollBackoff = PollBackoff.DEFAULT_MAX_BACKOFF;
+
+        /** The number of polls that may crawl at the same time */
+        private Integer maxConcurrentPolls = PollScheduler.DEFAULT_MAX_CONCURRENT_POLLS;
+
+        /** The number of polls that may crawl the server at the same time */
+        private Integer maxConcurrentPollsPerServer = PollScheduler.DEFAULT_MAX_CONCURRENT_POLLS_PER_SERVER;
+
+        /** The maximum number of seconds a poll is delayed before it queues */
+        private Integer pollJitter = PollScheduler.DEFAULT_JITTER;
+
+        /** Whether or not polls only search for files modified since the previous poll */
+        private Boolean pollModifiedSince = false;
+
+        /** How the state of an artifact is read from the server */
+        private CrawlMode crawlMode = CrawlMode.STORAGE;
+
+        /** The token that webhook payloads have to present, empty to accept every payload */
+        private Secret webhookToken;
+
+        /** The connection pool shared by every call to the server, created on first use */
+        private transient ArtifactoryConnection connection;
+
+        /** The crawled states shared by the jobs, created on first use */
+        private transient SharedCrawlCache crawlCache;
+
+        /** The publish histories of the polled artifacts, created on first use */
+        private transient PollBackoff pollBackoff;
+
+        /** The queue of polls, created on first use */
+        private transient PollScheduler pollScheduler;
+
+        /** The changes found by the last poll of each job that found any, by the full name of the job */
+        private transient Map<String, ArtifactoryCheckoutAction> polledChanges;
+
         /** 
          * Constructor
          */
@@ -414,6 +960,25 @@ public class ArtifactoryRepository extends SCM {
             {
                 artifactoryServer += "/";
             }
+            maxConnectionsPerRoute = json.optInt("maxConnectionsPerRoute", ArtifactoryConnection.DEFAULT_MAX_CONNECTIONS_PER_ROUTE);
+            maxConnectionsTotal = json.optInt("maxConnectionsTotal", ArtifactoryConnection.DEFAULT_MAX_CONNECTIONS_TOTAL);
+            idleConnectionTimeout = json.optInt("idleConnectionTimeout", ArtifactoryConnection.DEFAULT_IDLE_CONNECTION_TIMEOUT);
+            responseCacheSize = json.optInt("responseCacheSize", ResponseCache.DEFAULT_SIZE);
+            crawlParallelism = json.optInt("crawlParallelism", ArtifactoryConnection.DEFAULT_CRAWL_PARALLELISM);
+            fullCrawlInterval = json.optInt("fullCrawlInterval", DEFAULT_FULL_CRAWL_INTERVAL);
+            compressResponses = json.optBoolean("compressResponses", true);
+            maxRetries = json.optInt("maxRetries", ArtifactoryConnection.DEFAULT_MAX_RETRIES);
+            circuitBreakerThreshold = json.optInt("circuitBreakerThreshold", CircuitBreaker.DEFAULT_FAILURE_THRESHOLD);
+            circuitBreakerOpenDuration = json.optInt("circuitBreakerOpenDuration", CircuitBreaker.DEFAULT_OPEN_DURATION);
+            crawlCacheTTL = json.optInt("crawlCacheTTL", SharedCrawlCache.DEFAULT_TTL);
+            maxPollBackoff = json.optInt("maxPollBackoff", PollBackoff.DEFAULT_MAX_BACKOFF);
+            maxConcurrentPolls = json.optInt("maxConcurrentPolls", PollScheduler.DEFAULT_MAX_CONCURRENT_POLLS);
+            maxConcurrentPollsPerServer = json.optInt("maxConcurrentPollsPerServer", PollScheduler.DEFAULT_MAX_CONCURRENT_POLLS_PER_SERVER);
+            pollJitter = json.optInt("pollJitter", PollScheduler.DEFAULT_JITTER);
+            pollModifiedSince = json.optBoolean("pollModifiedSince", false);
+            crawlMode = CrawlMode.valueOf(json.optString("crawlMode", CrawlMode.STORAGE.name()));
+            webhookToken = Secret.fromString(json.optString("webhookToken", ""));
+            resetConnection();
             save();
             return super.configure(req, json);
         }
@@ -429,6 +994,7 @@ public class ArtifactoryRepository extends SCM {
             {
                 artifactoryServer += "/";
             }
+            resetConnection();
             save();
         }
 
@@ -441,6 +1007,442 @@ public class ArtifactoryRepository extends SCM {
             return artifactoryServer;
         }
 
+        /**
+         * Getter function for the per route connection limit
+         * @return The maximum number of pooled connections to a single route
+         */
+        public int getMaxConnectionsPerRoute()
+        {
+            return maxConnectionsPerRoute > 0 ? maxConnectionsPerRoute : ArtifactoryConnection.DEFAULT_MAX_CONNECTIONS_PER_ROUTE;
+        }
+
+        /**
+         * Getter function for the total connection limit
+         * @return The maximum number of pooled connections to the server
+         */
+        public int getMaxConnectionsTotal()
+        {
+            return maxConnectionsTotal > 0 ? maxConnectionsTotal : ArtifactoryConnection.DEFAULT_MAX_CONNECTIONS_TOTAL;
+        }
+
+        /**
+         * Getter function for the idle connection timeout
+         * @return The number of seconds before an idle pooled connection is closed
+         */
+        public int getIdleConnectionTimeout()
+        {
+            return idleConnectionTimeout;
+        }
+
+        /**
+         * Getter function for the response cache size
+         * @return The maximum number of cached server responses, 0 if caching is disabled
+         */
+        public int getResponseCacheSize()
+        {
+            return responseCacheSize;
+        }
+
+        /**
+         * Getter function for the response cache hits
+         * @return The number of requests answered from the response cache since it was created
+         */
+        public long getResponseCacheHits()
+        {
+            ResponseCache cache = getResponseCache();
+            return cache != null ? cache.getHits() : 0;
+        }
+
+        /**
+         * Getter function for the response cache misses
+         * @return The number of requests that had to be downloaded since the response cache was created
+         */
+        public long getResponseCacheMisses()
+        {
+            ResponseCache cache = getResponseCache();
+            return cache != null ? cache.getMisses() : 0;
+        }
+
+        /**
+         * Getter function for the cache of the current connection pool, without creating the pool
+         * @return The response cache, or null if there is none
+         */
+        private synchronized ResponseCache getResponseCache()
+        {
+            return connection != null ? connection.getResponseCache() : null;
+        }
+
+        /**
+         * Getter function for the crawl parallelism
+         * @return The number of connections that storage crawl requests are sent over
+         */
+        public int getCrawlParallelism()
+        {
+            return crawlParallelism > 0 ? crawlParallelism : ArtifactoryConnection.DEFAULT_CRAWL_PARALLELISM;
+        }
+
+        /**
+         * Getter function for the full crawl interval
+         * @return The number of minutes after which a poll reads every version again, 0 to always read everything
+         */
+        public int getFullCrawlInterval()
+        {
+            return fullCrawlInterval;
+        }
+
+        /**
+         * Getter function for the date search setting
+         * @return Whether or not polls only search for files created or modified since the previous poll
+         */
+        public boolean getPollModifiedSince()
+        {
+            return pollModifiedSince != null && pollModifiedSince;
+        }
+
+        /**
+         * Getter function for the compression setting
+         * @return Whether or not gzip/deflate compressed responses are requested from the server
+         */
+        public boolean getCompressResponses()
+        {
+            return compressResponses == null || compressResponses;
+        }
+
+        /**
+         * Getter function for the bytes received
+         * @return The number of response bytes received on the wire since the connection pool was created
+         */
+        public synchronized long getBytesReceived()
+        {
+            return connection != null ? connection.getBytesReceived() : 0;
+        }
+
+        /**
+         * Getter function for the bytes decoded
+         * @return The number of response bytes after decompression since the connection pool was created
+         */
+        public synchronized long getBytesDecoded()
+        {
+            return connection != null ? connection.getBytesDecoded() : 0;
+        }
+
+        /**
+         * Getter function for the retry limit
+         * @return The number of times a failed request is retried
+         */
+        public int getMaxRetries()
+        {
+            return maxRetries != null && maxRetries >= 0 ? maxRetries : ArtifactoryConnection.DEFAULT_MAX_RETRIES;
+        }
+
+        /**
+         * Getter function for the circuit breaker threshold
+         * @return The number of consecutive failed requests after which requests to the server are skipped, 0 to never skip
+         */
+        public int getCircuitBreakerThreshold()
+        {
+            return circuitBreakerThreshold != null ? circuitBreakerThreshold : CircuitBreaker.DEFAULT_FAILURE_THRESHOLD;
+        }
+
+        /**
+         * Getter function for the circuit breaker open duration
+         * @return The number of seconds requests are skipped before the server is probed again
+         */
+        public int getCircuitBreakerOpenDuration()
+        {
+            return circuitBreakerOpenDuration != null ? circuitBreakerOpenDuration : CircuitBreaker.DEFAULT_OPEN_DURATION;
+        }
+
+        /**
+         * Getter function for the state of the circuit breaker, without creating the connection pool
+         * @return A description of the state of the circuit breaker
+         */
+        public synchronized String getCircuitBreakerStatus()
+        {
+            if (connection == null)
+            {
+                return CircuitBreaker.State.CLOSED.name();
+            }
+            CircuitBreaker breaker = connection.getCircuitBreaker();
+            return breaker.getState().name() + " (" + breaker.getFailures() + " consecutive failures)";
+        }
+
+        /**
+         * Getter function for the crawl cache time to live
+         * @return The number of seconds a crawled state is shared by the jobs that poll the same artifact, 0 to not share
+         */
+        public int getCrawlCacheTTL()
+        {
+            return crawlCacheTTL != null ? crawlCacheTTL : SharedCrawlCache.DEFAULT_TTL;
+        }
+
+        /**
+         * Getter function for the crawl cache, which is created on first use
+         * @return The crawled states shared by the jobs, or null if crawls are not shared
+         */
+        public synchronized SharedCrawlCache getCrawlCache()
+        {
+            if (crawlCache == null && getCrawlCacheTTL() > 0)
+            {
+                crawlCache = new SharedCrawlCache(getCrawlCacheTTL());
+            }
+            return crawlCache;
+        }
+
+        /**
+         * Getter function for the crawl cache hits
+         * @return The number of polls that shared the crawl of another job
+         */
+        public synchronized long getCrawlCacheHits()
+        {
+            return crawlCache != null ? crawlCache.getHits() : 0;
+        }
+
+        /**
+         * Getter function for the crawl cache misses
+         * @return The number of polls that crawled the server
+         */
+        public synchronized long getCrawlCacheMisses()
+        {
+            return crawlCache != null ? crawlCache.getMisses() : 0;
+        }
+
+        /**
+         * Getter function for the maximum poll backoff
+         * @return The maximum number of minutes polls of a quiet artifact are skipped for, 0 to never skip
+         */
+        public int getMaxPollBackoff()
+        {
+            return maxPollBackoff != null ? maxPollBackoff : PollBackoff.DEFAULT_MAX_BACKOFF;
+        }
+
+        /**
+         * Getter function for the publish histories, which are created on first use
+         * @return The publish histories of the polled artifacts, or null if polls are never skipped
+         */
+        public synchronized PollBackoff getPollBackoff()
+        {
+            if (pollBackoff == null && getMaxPollBackoff() > 0)
+            {
+                pollBackoff = new PollBackoff(getMaxPollBackoff());
+            }
+            return pollBackoff;
+        }
+
+        /**
+         * Function to drop what is kept about a job between its polls, for the artifacts that it no longer polls
+         * @param job The full name of the job
+         * @param keys The keys of the artifacts that the job still polls, empty if it was deleted or renamed
+         */
+        public synchronized void retainJob(String job, Collection<String> keys)
+        {
+            if (pollBackoff != null)
+            {
+                pollBackoff.retain(job, keys);
+            }
+            if (polledChanges != null && keys.isEmpty())
+            {
+                polledChanges.remove(job);
+            }
+        }
+
+        /**
+         * Function to keep the changes that the last poll of a job found, until the build that the poll 
+         * triggers is queued. They replace the changes of the poll before.
+         * @param job The full name of the job
+         * @param changes The changes, null if the poll found none
+         */
+        public synchronized void putPolledChanges(String job, ArtifactoryCheckoutAction changes)
+        {
+            if (polledChanges == null)
+            {
+                polledChanges = new HashMap<String, ArtifactoryCheckoutAction>();
+            }
+            if (changes == null)
+            {
+                polledChanges.remove(job);
+            }
+            else
+            {
+                polledChanges.put(job, changes);
+            }
+        }
+
+        /**
+         * Function to get the changes that the last poll of a job found, see {@link ArtifactoryQueueDecisionHandler}. 
+         * They are kept until the next poll, so a build that is not queued after all does not lose them. 
+         * A build only uses them if they were found against its baseline.
+         * @param job The full name of the job
+         * @return The changes, or null if the last poll found none
+         */
+        public synchronized ArtifactoryCheckoutAction getPolledChanges(String job)
+        {
+            return polledChanges == null ? null : polledChanges.get(job);
+        }
+
+        /**
+         * Getter function for the concurrent poll limit
+         * @return The number of polls that may crawl at the same time
+         */
+        public int getMaxConcurrentPolls()
+        {
+            return maxConcurrentPolls != null && maxConcurrentPolls > 0 ? maxConcurrentPolls : PollScheduler.DEFAULT_MAX_CONCURRENT_POLLS;
+        }
+
+        /**
+         * Getter function for the concurrent poll limit of the server
+         * @return The number of polls that may crawl the server at the same time
+         */
+        public int getMaxConcurrentPollsPerServer()
+        {
+            return maxConcurrentPollsPerServer != null && maxConcurrentPollsPerServer > 0 
+                ? maxConcurrentPollsPerServer : PollScheduler.DEFAULT_MAX_CONCURRENT_POLLS_PER_SERVER;
+        }
+
+        /**
+         * Getter function for the poll jitter
+         * @return The maximum number of seconds a poll is delayed before it queues
+         */
+        public int getPollJitter()
+        {
+            return pollJitter != null ? pollJitter : PollScheduler.DEFAULT_JITTER;
+        }
+
+        /**
+         * Getter function for the poll queue, which is created on first use
+         * @return The queue that limits how many polls crawl at the same time
+         */
+        public synchronized PollScheduler getPollScheduler()
+        {
+            if (pollScheduler == null)
+            {
+                pollScheduler = new PollScheduler(getMaxConcurrentPolls(), getMaxConcurrentPollsPerServer(), getPollJitter());
+            }
+            return pollScheduler;
+        }
+
+        /**
+         * Getter function for the state of the poll queue, without creating the queue
+         * @return A description of the polls that are queued and running and how long they waited
+         */
+        public synchronized String getPollQueueStatus()
+        {
+            if (pollScheduler == null)
+            {
+                return "0 queued, 0 running";
+            }
+            return pollScheduler.getQueued() + " queued, " + pollScheduler.getRunning() + " running, waited " 
+                + pollScheduler.getAverageWait() + " ms on average and " + pollScheduler.getMaxWait() + " ms at most";
+        }
+
+        /**
+         * Getter function for the crawl mode
+         * @return How the state of an artifact is read from the server
+         */
+        public CrawlMode getCrawlMode()
+        {
+            return crawlMode != null ? crawlMode : CrawlMode.STORAGE;
+        }
+
+        /**
+         * Getter function for the webhook token
+         * @return The token that webhook payloads have to present, empty to accept every payload
+         */
+        public Secret getWebhookToken()
+        {
+            return webhookToken != null ? webhookToken : Secret.fromString("");
+        }
+
+        /**
+         * Function to populate the crawl mode drop down menu in the global configuration
+         * @return Every supported crawl mode
+         */
+        public ListBoxModel doFillCrawlModeItems()
+        {
+            ListBoxModel items = new ListBoxModel();
+            for (CrawlMode mode : CrawlMode.values())
+            {
+                items.add(mode.getDisplayName(), mode.name());
+            }
+            return items;
+        }
+
+        /**
+         * Getter function for the connection pool of the server. The pool is created on first use
+         * and shared by every job that polls the server.
+         * @return The pooled connection to the server
+         */
+        public synchronized ArtifactoryConnection getConnection()
+        {
+            if (connection == null)
+            {
+                connection = new ArtifactoryConnection(artifactoryServer, getMaxConnectionsPerRoute(), 
+                                                       getMaxConnectionsTotal(), getIdleConnectionTimeout(), getResponseCacheSize(),
+                                                       getCrawlParallelism(), getCompressResponses(), getMaxRetries(),
+                                                       new CircuitBreaker(artifactoryServer, getCircuitBreakerThreshold(), 
+                                                                          getCircuitBreakerOpenDuration()));
+            }
+            return connection;
+        }
+
+        /**
+         * Function to close the connection pool and drop the shared crawls, poll histories and poll queue so that they are recreated with the current 
+         * configuration the next time it is used
+         */
+        private synchronized void resetConnection()
+        {
+            crawlCache = null;
+            pollBackoff = null;
+            pollScheduler = null;
+            if (connection != null)
+            {
+                connection.close();
+                connection = null;
+            }
+        }
+
+        /**
+         * Function to drop the cached responses and shared crawls of an artifact and reset its poll 
+         * backoff, so that the next poll reads its state from the server
+         * @param repo The repository that contains the artifact
+         * @param groupID The group that the artifact belongs to
+         * @param artifactID The name of the artifact
+         */
+        public synchronized void invalidate(String repo, String groupID, String artifactID)
+        {
+            if (connection != null && connection.getResponseCache() != null)
+            {
+                String artifactURL = connection.getArtifactoryURL() + "api/storage/" + repo + '/' 
+                    + groupID.replace('.', '/') + '/' + artifactID + '/';
+                connection.getResponseCache().invalidate(artifactURL);
+            }
+            if (crawlCache != null)
+            {
+                crawlCache.invalidate(repo, groupID, artifactID);
+            }
+            if (pollBackoff != null)
+            {
+                pollBackoff.reset(repo, groupID, artifactID);
+            }
+        }
+
+        /**
+         * Function to close the pooled connections when Jenkins shuts down
+         */
+        @Terminator
+        public static void closeConnections()
+        {
+            Jenkins jenkins = Jenkins.getInstance();
+            if (jenkins != null)
+            {
+                DescriptorImpl descriptor = jenkins.getDescriptorByType(DescriptorImpl.class);
+                if (descriptor != null)
+                {
+                    descriptor.resetConnection();
+                }
+            }
+        }
+
         /** 
          * Function that does form validation for the artifactID field in the UI
          * @param value The value of the field
@@ -515,9 +1517,9 @@ public class ArtifactoryRepository extends SCM {
                 try {
                     LOGGER.log(FINE, "GET " + url);
 
-                    HttpClient client = HttpClientBuilder.create().build();
                     HttpGet request = new HttpGet(url);
-                    HttpResponse response = client.execute(request);
+                    HttpResponse response = getConnection().getClient().execute(request);
+                    EntityUtils.consume(response.getEntity());
 
                     if (200 <= response.getStatusLine().getStatusCode()  && 300 > response.getStatusLine().getStatusCode())
                     {
@@ -541,16 +1543,18 @@ public class ArtifactoryRepository extends SCM {
         public ListBoxModel doFillRepoItems() 
         {
         	ListBoxModel items = new ListBoxModel();
-        	ArtifactoryAPI api = new ArtifactoryAPI(artifactoryServer);
-        	JSONArray json = api.getRepositories();
+        	ArtifactoryAPI api = new ArtifactoryAPI(getConnection());
         	
-        	for (int i = 0; i < json.size(); i++)
+        	try
+        	{
+        	    for (String key : api.getRepositories())
+        	    {
+        	        items.add(key, key);
+        	    }
+        	}
+        	catch (IOException e)
         	{
-        		JSONObject jsonRepo = json.getJSONObject(i);
-        		if(jsonRepo.getString("type").equals("LOCAL"))
-        		{
-        			items.add(jsonRepo.getString("key"), jsonRepo.getString("key"));
-        		}
+        	    LOGGER.log(WARNING, "Could not list the repositories of " + artifactoryServer + " " + e.getMessage());
         	}
         		
         	return items;
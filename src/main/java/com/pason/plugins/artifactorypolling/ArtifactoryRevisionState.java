@@ -25,10 +25,22 @@ import hudson.scm.SCMRevisionState;
 import java.io.File;
 import java.io.IOException;
 
+import java.security.MessageDigest;
+
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.logging.Logger;
 
+import com.google.common.base.Function;
+import com.google.common.util.concurrent.AsyncFunction;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
 import net.sf.json.JSONObject;
 import net.sf.json.JSONArray;
 import net.sf.json.groovy.JsonSlurper;
@@ -59,26 +71,63 @@ public final class ArtifactoryRevisionState extends SCMRevisionState{
     public static final ArtifactoryRevisionState BASE = new ArtifactoryRevisionState();
 
     /** The repo that contains the artifact */
-    private String repo;
+    private final String repo;
     
     /** The group that the artifact belongs to */
-    private String groupID;
+    private final String groupID;
     
     /** The name of the artifact */
-    private String artifactID;
+    private final String artifactID;
     
     /** The individual artifacts and their versions that have been published */
-    private ArrayList<Artifact> artifacts;
+    private final ArrayList<Artifact> artifacts;
+
+    /** When every version of this state was last read from the server, 0 if it was not read from the server */
+    private final long fullCrawlTime;
+
+    /** When a poll last confirmed this state on the server, 0 if it was never confirmed */
+    private final long watermark;
+
+    /** The root digest over the digests of the artifacts, see {@link #getDigest()}. Null until it is computed. */
+    private String digest;
+
+    /** Read only view of the artifacts, handed out instead of copies */
+    private transient List<Artifact> artifactsView;
+
+    /** The artifacts by their version, so looking up a version does not scan the artifacts */
+    private transient Map<String, Artifact> versions;
     
     /** 
      * Private constructor for the {@link ArtifactoryRevisionState#BASE} object
      */
     private ArtifactoryRevisionState()
     {  
-        artifacts = new ArrayList<Artifact>();
-        this.repo = "";
-        this.groupID = "";
-        this.artifactID = "";
+        this("", "", "", new ArrayList<Artifact>(), 0, 0);
+    }
+
+    /**
+     * Constructor
+     * @param repo The repository that contains the artifact
+     * @param groupID The group that the artifact belongs to 
+     * @param artifactID The name of the artifact
+     * @param artifacts Individual artifacts and their versions that have been published
+     */
+    public ArtifactoryRevisionState(String repo, String groupID, String artifactID, List<Artifact> artifacts)
+    {
+        this(repo, groupID, artifactID, artifacts, 0);
+    }
+
+    /**
+     * Constructor
+     * @param repo The repository that contains the artifact
+     * @param groupID The group that the artifact belongs to 
+     * @param artifactID The name of the artifact
+     * @param artifacts Individual artifacts and their versions that have been published
+     * @param fullCrawlTime When every version was last read from the server, 0 if never
+     */
+    public ArtifactoryRevisionState(String repo, String groupID, String artifactID, List<Artifact> artifacts, long fullCrawlTime)
+    {
+        this(repo, groupID, artifactID, artifacts, fullCrawlTime, 0);
     }
 
     /**
@@ -87,13 +136,63 @@ public final class ArtifactoryRevisionState extends SCMRevisionState{
      * @param groupID The group that the artifact belongs to 
      * @param artifactID The name of the artifact
      * @param artifacts Individual artifacts and their versions that have been published
+     * @param fullCrawlTime When every version was last read from the server, 0 if never
+     * @param watermark When a poll last confirmed the state on the server, 0 if never
+     */
+    public ArtifactoryRevisionState(String repo, String groupID, String artifactID, List<Artifact> artifacts, long fullCrawlTime,
+        long watermark)
+    {
+        this(repo, groupID, artifactID, artifacts, fullCrawlTime, watermark, null);
+    }
+
+    /**
+     * Constructor for states whose digest was stored with them
+     * @param repo The repository that contains the artifact
+     * @param groupID The group that the artifact belongs to 
+     * @param artifactID The name of the artifact
+     * @param artifacts Individual artifacts and their versions that have been published
+     * @param fullCrawlTime When every version was last read from the server, 0 if never
+     * @param watermark When a poll last confirmed the state on the server, 0 if never
+     * @param digest The digest as returned by {@link #getDigest()}, null to compute it when needed
      */
-    public ArtifactoryRevisionState(String repo, String groupID, String artifactID, ArrayList<Artifact> artifacts)
+    ArtifactoryRevisionState(String repo, String groupID, String artifactID, List<Artifact> artifacts, long fullCrawlTime,
+        long watermark, String digest)
     {
+        this.digest = digest;
         this.repo = repo;
         this.groupID = groupID;
         this.artifactID = artifactID;
         this.artifacts = new ArrayList<Artifact>(artifacts);
+        this.fullCrawlTime = fullCrawlTime;
+        this.watermark = watermark;
+        index();
+    }
+
+    /**
+     * Function to build the read only view and the index of the artifacts
+     */
+    private void index()
+    {
+        artifactsView = Collections.unmodifiableList(artifacts);
+        versions = new HashMap<String, Artifact>(artifacts.size() * 2);
+        for (Artifact artifact : artifacts)
+        {
+            // The first artifact of a version wins, as with a scan of the artifacts
+            if (!versions.containsKey(artifact.getVersion()))
+            {
+                versions.put(artifact.getVersion(), artifact);
+            }
+        }
+    }
+
+    /**
+     * Function to rebuild the view and the index after the state was deserialized
+     * @return The state to use
+     */
+    private Object readResolve()
+    {
+        index();
+        return this;
     }
 
     /**
@@ -125,11 +224,61 @@ public final class ArtifactoryRevisionState extends SCMRevisionState{
     
     /**
      * Getter function 
-     * @return The individual published artifacts
+     * @return The individual published artifacts, which can not be modified
      */
-    public ArrayList<Artifact> getArtifacts()
+    public List<Artifact> getArtifacts()
     {
-        return new ArrayList<Artifact>(artifacts);
+        return artifactsView;
+    }
+
+    /**
+     * Getter function
+     * @return When every version of this state was last read from the server, 0 if never
+     */
+    public long getFullCrawlTime()
+    {
+        return fullCrawlTime;
+    }
+
+    /**
+     * Getter function
+     * @return When a poll last confirmed this state on the server, 0 if never
+     */
+    public long getWatermark()
+    {
+        return watermark;
+    }
+
+    /**
+     * Function to copy the state with a new watermark
+     * @param watermark When a poll confirmed the state on the server
+     * @return A state with the same artifacts and the given watermark
+     */
+    public ArtifactoryRevisionState withWatermark(long watermark)
+    {
+        return new ArtifactoryRevisionState(repo, groupID, artifactID, artifacts, fullCrawlTime, watermark, digest);
+    }
+
+    /**
+     * Function to get the root digest of the state. It is the SHA-1 over the digests of the artifacts in 
+     * version order, see {@link Artifact#getDigest()}, so states with equal digests have the same versions 
+     * with files of the same content.
+     * @return The digest as lower case hex
+     */
+    public String getDigest()
+    {
+        String digest = this.digest;
+        if (digest == null)
+        {
+            MessageDigest sha1 = ArtifactoryUtils.newSHA1();
+            for (Artifact artifact : new TreeMap<String, Artifact>(versions).values())
+            {
+                ArtifactoryUtils.update(sha1, artifact.getDigest());
+            }
+            digest = ArtifactoryUtils.toHex(sha1.digest());
+            this.digest = digest;
+        }
+        return digest;
     }
 
     /**
@@ -139,27 +288,33 @@ public final class ArtifactoryRevisionState extends SCMRevisionState{
      */
     public Artifact getVersion(String version)
     {
-        Artifact retVal = null;
-
+        return versions.get(version);
+    }
+    
+    /**
+     * Function to find when the newest file of the state was published
+     * @return The publish time in milliseconds since the epoch, 0 if no file has a known publish time
+     */
+    public long getLastPublished()
+    {
+        long lastPublished = 0;
         for (Artifact artifact : artifacts)
         {
-            if (version.equals(artifact.getVersion()))
+            for (FileMetadata metadata : artifact.getFileMetadata().values())
             {
-                retVal = artifact;
-                break;
+                lastPublished = Math.max(lastPublished, metadata.getCreatedTime());
             }
         }
-
-        return retVal;
+        return lastPublished;
     }
-    
+
     /**
      * Function to add or replace an artifact in the revision state object
      * @param artifact The artifact to add or replace
      */
     public ArrayList<Artifact> addOrReplaceArtifact(Artifact artifact)
     {
-    	ArrayList<Artifact> artifacts = getArtifacts();
+    	ArrayList<Artifact> artifacts = new ArrayList<Artifact>(this.artifacts);
         Artifact oldArtifact = getVersion(artifact.getVersion());
         
         // Check if the version already exists
@@ -174,7 +329,9 @@ public final class ArtifactoryRevisionState extends SCMRevisionState{
     }
 
     /**
-     * Function to parse the local file which contains the revision state
+     * Function to read the local file which contains the revision state. The file is either in the
+     * binary format of {@link RevisionStateFile}, or in the JSON format used by older versions of
+     * the plugin which looks like:
      * {
      *   "artifactID": "aID",
      *   "groupID": "gID",
@@ -199,9 +356,43 @@ public final class ArtifactoryRevisionState extends SCMRevisionState{
      * }
      */
     public static ArtifactoryRevisionState fromFile(File file)
+    {
+        return fromFile(file, null);
+    }
+
+    /**
+     * Function to read the local file which contains the revision state, which may also be a manifest 
+     * of a {@link StateStore}. See {@link #fromFile(File)} for the other formats.
+     * @param file The file to read
+     * @param store The store that manifests refer to, may be null if there is none
+     * @return The state in the file, or {@link #BASE} if it does not exist or could not be read
+     */
+    public static ArtifactoryRevisionState fromFile(File file, StateStore store)
     {
         if (file.exists())
         {
+            try
+            {
+                int magic = RevisionStateFile.readMagic(file);
+                if (magic == RevisionStateFile.MAGIC)
+                {
+                    return RevisionStateFile.read(file);
+                }
+                if (magic == StateStore.MANIFEST_MAGIC)
+                {
+                    if (store == null)
+                    {
+                        throw new IOException("No state store to read the manifest from");
+                    }
+                    return store.read(file);
+                }
+            }
+            catch (IOException e)
+            {
+                LOGGER.log(WARNING, "Caught IOException reading: " + file + " " + e.getMessage());
+                return BASE;
+            }
+
             JsonSlurper slurper = new JsonSlurper();
             JSONObject json = new JSONObject();
             try 
@@ -235,38 +426,370 @@ public final class ArtifactoryRevisionState extends SCMRevisionState{
     }
 
     /**
-     * Function to create the state from a remote server
+     * Function to create the state from a remote server by walking the storage API
      * @param repo The repository that contains the artifact
      * @param groupID The group that the artifact belongs to
      * @param artifactID The name of the artifact
      * @param api The API object to use to create the state
      * @return The state on the server
+     * @throws IOException If the state could not be read from the server
+     * @throws InterruptedException If the crawl was interrupted
      */
     public static ArtifactoryRevisionState fromServer(String repo, String groupID, String artifactID, String versionFilter, ArtifactoryAPI api)
+        throws IOException, InterruptedException
+    {
+        return fromServer(repo, groupID, artifactID, versionFilter, api, CrawlMode.STORAGE);
+    }
+
+    /**
+     * Function to create the state from a remote server
+     * @param repo The repository that contains the artifact
+     * @param groupID The group that the artifact belongs to
+     * @param artifactID The name of the artifact
+     * @param versionFilter The filter that versions have to match
+     * @param api The API object to use to create the state
+     * @param mode How the server is to be read
+     * @return The state on the server
+     * @throws IOException If the state could not be read from the server
+     * @throws InterruptedException If the crawl was interrupted
+     */
+    public static ArtifactoryRevisionState fromServer(String repo, String groupID, String artifactID, String versionFilter, 
+        ArtifactoryAPI api, CrawlMode mode) throws IOException, InterruptedException
+    {
+        return fromServer(repo, groupID, artifactID, versionFilter, api, mode, null);
+    }
+
+    /**
+     * Function to create the state from a remote server, reusing what is already known about versions 
+     * that have not changed. A storage crawl only fetches the file metadata of versions that are not 
+     * known or whose folder was modified since the known state was read. The other crawl modes read 
+     * everything with a single request and ignore the known state.
+     * @param repo The repository that contains the artifact
+     * @param groupID The group that the artifact belongs to
+     * @param artifactID The name of the artifact
+     * @param versionFilter The filter that versions have to match
+     * @param api The API object to use to create the state
+     * @param mode How the server is to be read
+     * @param known A previously read state of the artifact, or null to read every version
+     * @return The state on the server
+     * @throws IOException If the state could not be read from the server
+     * @throws InterruptedException If the crawl was interrupted
+     */
+    public static ArtifactoryRevisionState fromServer(String repo, String groupID, String artifactID, String versionFilter, 
+        ArtifactoryAPI api, CrawlMode mode, ArtifactoryRevisionState known) throws IOException, InterruptedException
+    {
+        switch (mode)
+        {
+            case AQL:
+                return fromAQL(repo, groupID, artifactID, versionFilter, api);
+            case DEEP_LIST:
+                return fromDeepList(repo, groupID, artifactID, versionFilter, api);
+            default:
+                return fromStorage(repo, groupID, artifactID, versionFilter, api, known);
+        }
+    }
+
+    /**
+     * Function to create the states of several artifacts from a single AQL query, see 
+     * {@link ArtifactoryAPI#searchArtifactFiles(List)}
+     * @param coordinates The artifacts to read
+     * @param api The API object to use to create the states
+     * @return The states on the server by the key of their coordinate
+     * @throws IOException If the states could not be read from the server
+     */
+    public static Map<String, ArtifactoryRevisionState> fromServer(List<ArtifactCoordinate> coordinates, ArtifactoryAPI api) 
+        throws IOException
+    {
+        Map<String, List<RemoteFile>> files = api.searchArtifactFiles(coordinates);
+        Map<String, ArtifactoryRevisionState> states = new LinkedHashMap<String, ArtifactoryRevisionState>();
+        for (ArtifactCoordinate coordinate : coordinates)
+        {
+            states.put(coordinate.getKey(), fromRemoteFiles(coordinate.getRepo(), coordinate.getGroupID(), 
+                coordinate.getArtifactID(), coordinate.getVersionFilter(), files.get(coordinate.getKey())));
+        }
+        return states;
+    }
+
+    /**
+     * Function to create the state from a single AQL query. Files in sub folders of a version
+     * are named by their path relative to the version folder.
+     * @param repo The repository that contains the artifact
+     * @param groupID The group that the artifact belongs to
+     * @param artifactID The name of the artifact
+     * @param versionFilter The filter that versions have to match
+     * @param api The API object to use to create the state
+     * @return The state on the server
+     * @throws IOException If the state could not be read from the server
+     */
+    private static ArtifactoryRevisionState fromAQL(String repo, String groupID, String artifactID, String versionFilter, ArtifactoryAPI api)
+        throws IOException
+    {
+        List<RemoteFile> files = api.searchArtifactFiles(repo, groupID, artifactID);
+        return fromRemoteFiles(repo, groupID, artifactID, versionFilter, files);
+    }
+
+    /**
+     * Function to create the state from a single recursive storage listing. The listing does not contain
+     * MD5 sums so the files are described by their SHA-1 sums and sizes.
+     * @param repo The repository that contains the artifact
+     * @param groupID The group that the artifact belongs to
+     * @param artifactID The name of the artifact
+     * @param versionFilter The filter that versions have to match
+     * @param api The API object to use to create the state
+     * @return The state on the server
+     * @throws IOException If the state could not be read from the server
+     */
+    private static ArtifactoryRevisionState fromDeepList(String repo, String groupID, String artifactID, String versionFilter, ArtifactoryAPI api)
+        throws IOException
+    {
+        List<RemoteFile> files = api.listArtifactFiles(repo, groupID, artifactID);
+        return fromRemoteFiles(repo, groupID, artifactID, versionFilter, files);
+    }
+
+    /**
+     * Function to group files found below an artifact folder into versions
+     * @param repo The repository that contains the artifact
+     * @param groupID The group that the artifact belongs to
+     * @param artifactID The name of the artifact
+     * @param versionFilter The filter that versions have to match
+     * @param files The files with paths relative to the artifact folder
+     * @return The state on the server
+     */
+    private static ArtifactoryRevisionState fromRemoteFiles(String repo, String groupID, String artifactID, String versionFilter, List<RemoteFile> files)
     {
+        Map<String, HashMap<String, FileMetadata>> versionFiles = new LinkedHashMap<String, HashMap<String, FileMetadata>>();
+
+        for (RemoteFile file : files)
+        {
+            // The first folder below the artifact is the version, anything below that is part of the file name.
+            // Files directly below the artifact do not belong to a version.
+            String path = file.getPath();
+            int separator = path.indexOf('/');
+            if (separator < 0)
+            {
+                continue;
+            }
+            String version = path.substring(0, separator);
+            String fileName = path.substring(separator + 1);
+
+            if (!ArtifactoryUtils.matchesVersionFilter(version, versionFilter))
+            {
+                continue;
+            }
+
+            HashMap<String, FileMetadata> metadataMap = versionFiles.get(version);
+            if (metadataMap == null)
+            {
+                LOGGER.log(FINE, "Version " + version + " matched filter: " + versionFilter);
+                metadataMap = new HashMap<String, FileMetadata>();
+                versionFiles.put(version, metadataMap);
+            }
+            metadataMap.put(fileName, file.getMetadata());
+        }
+
         ArrayList<Artifact> versions = new ArrayList<Artifact>();
+        for (Map.Entry<String, HashMap<String, FileMetadata>> entry : versionFiles.entrySet())
+        {
+            versions.add(new Artifact(entry.getKey(), entry.getValue()));
+        }
+        return new ArtifactoryRevisionState(repo, groupID, artifactID, versions, System.currentTimeMillis());
+    }
+
+    /**
+     * Function to create the state by walking the storage API, one request per version and one per file.
+     * Every request is sent asynchronously as soon as the response it depends on arrives, so the calling
+     * thread only waits for the finished state.
+     * @param repo The repository that contains the artifact
+     * @param groupID The group that the artifact belongs to
+     * @param artifactID The name of the artifact
+     * @param versionFilter The filter that versions have to match
+     * @param api The API object to use to create the state
+     * @param known A previously read state whose unmodified versions are reused, or null to read every version
+     * @return The state on the server
+     * @throws IOException If the state could not be read from the server
+     * @throws InterruptedException If the crawl was interrupted
+     */
+    private static ArtifactoryRevisionState fromStorage(final String repo, final String groupID, final String artifactID, String versionFilter, 
+        final ArtifactoryAPI api, final ArtifactoryRevisionState known) throws IOException, InterruptedException
+    {
+        long crawlTime = System.currentTimeMillis();
+        ListenableFuture<List<Artifact>> crawl = Futures.transform(api.getArtifactVersionsAsync(repo, groupID, artifactID, versionFilter), 
+            new AsyncFunction<List<String>, List<Artifact>>() {
+                public ListenableFuture<List<Artifact>> apply(final List<String> versions)
+                {
+                    return Futures.transform(readFoldersAsync(repo, groupID, artifactID, versions, api), 
+                        new AsyncFunction<List<FolderInfo>, List<Artifact>>() {
+                            public ListenableFuture<List<Artifact>> apply(List<FolderInfo> folders)
+                            {
+                                return readArtifactsAsync(repo, groupID, artifactID, versions, folders, api, known);
+                            }
+                        });
+                }
+            });
+        List<Artifact> artifacts = ArtifactoryAPI.await(crawl);
 
-        JSONArray jsonVersions = api.getArtifactVersions(repo, groupID, artifactID, versionFilter);
+        return new ArtifactoryRevisionState(repo, groupID, artifactID, new ArrayList<Artifact>(artifacts), 
+                                            fullCrawlTime(artifacts, known, crawlTime));
+    }
 
-        for(int i = 0; i < jsonVersions.size(); i++)
+    /**
+     * Function to read the folders of versions of an artifact in parallel
+     * @param repo The repository that contains the artifact
+     * @param groupID The group that the artifact belongs to
+     * @param artifactID The name of the artifact
+     * @param versions The versions to read
+     * @param api The API object to read the folders with
+     * @return The version folders, in the order of the versions
+     * @throws IOException If the folders could not be read from the server
+     * @throws InterruptedException If the crawl was interrupted
+     */
+    static List<FolderInfo> readFolders(String repo, String groupID, String artifactID, List<String> versions, 
+        ArtifactoryAPI api) throws IOException, InterruptedException
+    {
+        return ArtifactoryAPI.await(readFoldersAsync(repo, groupID, artifactID, versions, api));
+    }
+
+    /**
+     * Function to request the folders of versions of an artifact without waiting for them
+     * @param repo The repository that contains the artifact
+     * @param groupID The group that the artifact belongs to
+     * @param artifactID The name of the artifact
+     * @param versions The versions to read
+     * @param api The API object to read the folders with
+     * @return The future version folders, in the order of the versions
+     */
+    static ListenableFuture<List<FolderInfo>> readFoldersAsync(String repo, String groupID, String artifactID, List<String> versions, 
+        ArtifactoryAPI api)
+    {
+        List<ListenableFuture<FolderInfo>> listings = new ArrayList<ListenableFuture<FolderInfo>>(versions.size());
+        for (String version : versions)
         {
-            String version = (String) jsonVersions.get(i);
-            HashMap<String, FileMetadata> metadataMap = new HashMap<String, FileMetadata>();
+            listings.add(api.getVersionFolderAsync(repo, groupID, artifactID, version));
+        }
+        return Futures.allAsList(listings);
+    }
 
-            JSONArray jsonFiles = api.getArtifactFiles(repo, groupID, artifactID, version);
+    /**
+     * Function to read the file metadata of versions of an artifact in parallel. Versions whose folder 
+     * has not been modified since the known state was read are reused from the known state.
+     * @param repo The repository that contains the artifact
+     * @param groupID The group that the artifact belongs to
+     * @param artifactID The name of the artifact
+     * @param versions The versions to read
+     * @param folders The folders of the versions, see {@link #readFolders(String, String, String, List, ArtifactoryAPI)}
+     * @param api The API object to read the metadata with
+     * @param known A previously read state whose unmodified versions are reused, or null to read every version
+     * @return The artifacts, in the order of the versions
+     * @throws IOException If the metadata could not be read from the server
+     * @throws InterruptedException If the crawl was interrupted
+     */
+    static List<Artifact> readArtifacts(String repo, String groupID, String artifactID, List<String> versions, 
+        List<FolderInfo> folders, ArtifactoryAPI api, ArtifactoryRevisionState known) throws IOException, InterruptedException
+    {
+        return ArtifactoryAPI.await(readArtifactsAsync(repo, groupID, artifactID, versions, folders, api, known));
+    }
 
-            for (int j = 0; j < jsonFiles.size(); j++)
+    /**
+     * Function to request the file metadata of versions of an artifact without waiting for them, 
+     * see {@link #readArtifacts(String, String, String, List, List, ArtifactoryAPI, ArtifactoryRevisionState)}
+     * @param repo The repository that contains the artifact
+     * @param groupID The group that the artifact belongs to
+     * @param artifactID The name of the artifact
+     * @param versions The versions to read
+     * @param folders The folders of the versions
+     * @param api The API object to read the metadata with
+     * @param known A previously read state whose unmodified versions are reused, or null to read every version
+     * @return The future artifacts, in the order of the versions
+     */
+    static ListenableFuture<List<Artifact>> readArtifactsAsync(String repo, String groupID, final String artifactID, final List<String> versions, 
+        final List<FolderInfo> folders, final ArtifactoryAPI api, ArtifactoryRevisionState known)
+    {
+        final Artifact [] unchanged = new Artifact[versions.size()];
+        List<ListenableFuture<FileMetadata>> lookups = new ArrayList<ListenableFuture<FileMetadata>>();
+        for (int i = 0; i < versions.size(); i++)
+        {
+            String version = versions.get(i);
+            String lastModified = folders.get(i).getLastModified();
+            Artifact knownArtifact = known != null ? known.getVersion(version) : null;
+            if (knownArtifact != null && lastModified != null && lastModified.equals(knownArtifact.getLastModified()))
             {
-                String fileName = (String) jsonFiles.get(j);
-                JSONObject fileMetadataObject = api.getFileMetadata(repo, groupID, artifactID, version, fileName); 
-                FileMetadata metadata = FileMetadata.fromJSON(fileMetadataObject);
+                LOGGER.log(FINE, "Version " + version + " is unchanged since " + lastModified);
+                unchanged[i] = knownArtifact;
+                continue;
+            }
 
-                metadataMap.put(fileName, metadata);
+            for (String fileName : api.getFileNames(folders.get(i)))
+            {
+                lookups.add(api.getFileMetadataAsync(repo, groupID, artifactID, version, fileName));
             }
+        }
 
-            versions.add(new Artifact(version, metadataMap));
+        return Futures.transform(Futures.allAsList(lookups), new Function<List<FileMetadata>, List<Artifact>>() {
+            public List<Artifact> apply(List<FileMetadata> fileMetadata)
+            {
+                List<Artifact> artifacts = new ArrayList<Artifact>(versions.size());
+                int lookup = 0;
+                for (int i = 0; i < versions.size(); i++)
+                {
+                    if (unchanged[i] != null)
+                    {
+                        artifacts.add(unchanged[i]);
+                        continue;
+                    }
+
+                    String version = versions.get(i);
+                    HashMap<String, FileMetadata> metadataMap = new HashMap<String, FileMetadata>();
+
+                    for (String fileName : api.getFileNames(folders.get(i)))
+                    {
+                        FileMetadata metadata = fileMetadata.get(lookup++);
+                        if (metadata == null)
+                        {
+                            LOGGER.log(WARNING, "Could not retrieve metadata for " + artifactID + ":" + version + "/" + fileName);
+                            continue;
+                        }
+
+                        metadataMap.put(fileName, metadata);
+                    }
+
+                    artifacts.add(new Artifact(version, metadataMap, folders.get(i).getLastModified()));
+                }
+                return artifacts;
+            }
+        });
+    }
+
+    /**
+     * Function to determine when every version of a crawled state was last read from the server. 
+     * A crawl that reused known versions is only as fresh as the crawl that read the known state.
+     * @param artifacts The artifacts of the crawled state
+     * @param known The state that versions were reused from, may be null
+     * @param crawlTime When the crawl started
+     * @return The full crawl time of the crawled state
+     */
+    static long fullCrawlTime(List<Artifact> artifacts, ArtifactoryRevisionState known, long crawlTime)
+    {
+        if (known != null)
+        {
+            for (Artifact artifact : artifacts)
+            {
+                if (artifact == known.getVersion(artifact.getVersion()))
+                {
+                    return known.getFullCrawlTime();
+                }
+            }
         }
-        return new ArtifactoryRevisionState(repo, groupID, artifactID, versions);
+        return crawlTime;
+    }
+
+    /**
+     * Function to write the state to a local file in the binary format of {@link RevisionStateFile}
+     * @param file The file to write, replaced if it exists
+     * @throws IOException If the file could not be written
+     */
+    public void toFile(File file) throws IOException
+    {
+        RevisionStateFile.write(this, file);
     }
 
     /**
@@ -301,7 +824,11 @@ public final class ArtifactoryRevisionState extends SCMRevisionState{
      */
     public static Artifact compareRevisionStates(ArtifactoryRevisionState stateA, ArtifactoryRevisionState stateB)
     {
-        Artifact nextArtifact = null;
+        // Equal roots mean every version has files with the same content
+        if (stateA.getDigest().equals(stateB.getDigest()))
+        {
+            return null;
+        }
 
         for (Artifact artifactA : stateA.getArtifacts())
         {
@@ -311,39 +838,76 @@ public final class ArtifactoryRevisionState extends SCMRevisionState{
             {
             	// There is a new version in stateB
                 LOGGER.log(FINE, "Found new version of artifact: " + stateA.artifactID+":"+artifactA.getVersion());
-                nextArtifact = artifactA;
-                return nextArtifact;
+                return artifactA;
             }
-            else
+            else if (!artifactA.getDigest().equals(artifactB.getDigest()) && !isContainedIn(artifactA, artifactB))
             {
-                // Double check that the files are all the same between states
-                HashMap<String, FileMetadata> filesA = artifactA.getFileMetadata();
-                HashMap<String, FileMetadata> filesB = artifactB.getFileMetadata();
+                LOGGER.log(FINE, "Found new or changed file in artifact: " + stateA.artifactID+":"+artifactA.getVersion());
+                return artifactA;
+            }
+        }
 
-                for (String fileName : filesA.keySet())
-                {
-                    FileMetadata metadataA = filesA.get(fileName);
-                    FileMetadata metadataB = filesB.get(fileName);
+        return null;
+    }
 
-                    // metadataB may not exist
-                    if (metadataB == null)
-                    {
-                        // if the file doesn't exist in B, but it exists in A
-                    	LOGGER.log(FINE, "Found new file in artifact: " + stateA.artifactID+":"+artifactA.getVersion());
-                        nextArtifact = artifactA;
-                        return nextArtifact;
-                    }
-                    else if (! metadataA.getMD5Sum().equals(metadataB.getMD5Sum()) )
-                    {
-                        // if the file exists in both A and B but has a different md5 sum
-                    	LOGGER.log(FINE, "Found changed file in artifact: " + stateA.artifactID+":"+artifactA.getVersion());
-                        nextArtifact = artifactA;
-                        return nextArtifact;
-                    }
-                }
+    /**
+     * Function to check that every file of an artifact exists in another artifact with the same content
+     * @param artifactA The artifact whose files are checked
+     * @param artifactB The artifact to look for the files in
+     * @return false if a file of A does not exist in B or has a different checksum
+     */
+    static boolean isContainedIn(Artifact artifactA, Artifact artifactB)
+    {
+        Map<String, FileMetadata> filesB = artifactB.getFileMetadata();
+
+        for (Map.Entry<String, FileMetadata> fileA : artifactA.getFileMetadata().entrySet())
+        {
+            FileMetadata metadataA = fileA.getValue();
+            FileMetadata metadataB = filesB.get(fileA.getKey());
+
+            // metadataB may not exist, or the file exists in both A and B but has a different checksum
+            if (metadataB == null || !metadataA.hasSameContent(metadataB))
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Function to check if files that were created or modified on the server are already part of a state,
+     * as happens when the search window of a poll overlaps the previous one
+     * @param state The state to look for the files in
+     * @param files The modified files with paths relative to the artifact folder
+     * @param versionFilter The filter that versions have to match
+     * @return true if every file of a matching version exists in the state with the same content
+     */
+    public static boolean containsFiles(ArtifactoryRevisionState state, List<RemoteFile> files, String versionFilter)
+    {
+        for (RemoteFile file : files)
+        {
+            String path = file.getPath();
+            int separator = path.indexOf('/');
+            if (separator < 0)
+            {
+                continue;
+            }
+            String version = path.substring(0, separator);
+            if (!ArtifactoryUtils.matchesVersionFilter(version, versionFilter))
+            {
+                continue;
+            }
+
+            Artifact artifact = state.getVersion(version);
+            FileMetadata metadata = artifact != null ? artifact.getFileMetadata().get(path.substring(separator + 1)) : null;
+            if (metadata == null || !metadata.hasSameContent(file.getMetadata()))
+            {
+                LOGGER.log(FINE, "Found modified file: " + path);
+                return false;
             }
         }
 
-        return nextArtifact;
+        return true;
     }
-}
\ No newline at end of file
+}
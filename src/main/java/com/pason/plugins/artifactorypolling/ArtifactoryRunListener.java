@@ -0,0 +1,86 @@
+// Copyright (c) 2014 Pason Systems, Inc.
+
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+package com.pason.plugins.artifactorypolling;
+
+import hudson.Extension;
+import hudson.model.AbstractBuild;
+import hudson.model.listeners.RunListener;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.util.logging.Logger;
+
+import static java.util.logging.Level.WARNING;
+
+/**
+ * Listener that releases the states that a build refers to in the {@link StateStore} of its job
+ * when the build is deleted, so versions that no remaining build refers to are removed
+ */
+@Extension
+public class ArtifactoryRunListener extends RunListener<AbstractBuild>
+{
+    /** A Logger for this class */
+    private static final Logger LOGGER = Logger.getLogger(ArtifactoryRunListener.class.getName());
+
+    /** Matches the versions files of a build, see {@link ArtifactCoordinate#getVersionsFile(AbstractBuild)} */
+    private static final FileFilter VERSIONS_FILES = new FileFilter() {
+        public boolean accept(File file)
+        {
+            return file.isFile() && file.getName().startsWith("artifactoryVersions-");
+        }
+    };
+
+    /**
+     * Constructor
+     */
+    public ArtifactoryRunListener()
+    {
+        super(AbstractBuild.class);
+    }
+
+    @Override
+    public void onDeleted(AbstractBuild build)
+    {
+        File[] files = build.getRootDir().listFiles(VERSIONS_FILES);
+        if (files == null)
+        {
+            return;
+        }
+
+        StateStore store = StateStore.forProject(build.getProject());
+        for (File file : files)
+        {
+            try
+            {
+                // Versions files written before the store was used hold the whole state themselves
+                if (StateStore.isManifest(file))
+                {
+                    store.release(file);
+                }
+            }
+            catch (IOException e)
+            {
+                LOGGER.log(WARNING, "Could not release the state in " + file + ": " + e.getMessage());
+            }
+        }
+    }
+}
@@ -20,11 +20,84 @@
 
 package com.pason.plugins.artifactorypolling;
 
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import javax.xml.bind.DatatypeConverter;
+
 public class ArtifactoryUtils {
 
+    /** The encoding of strings that are digested */
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
    public static Boolean isVersionDynamic(String version)
     {
         return version.matches(".*[\\[\\]\\+\\(\\)]+");
     }
 
-}
\ No newline at end of file
+    /**
+     * Function to check a version against a version filter such as "3.20.+"
+     * @param version The version to check
+     * @param versionFilter The filter to check the version against
+     * @return Whether or not the version is accepted by the filter
+     */
+    public static boolean matchesVersionFilter(String version, String versionFilter)
+    {
+        String [] filterElements = versionFilter.split("\\.");
+        String [] numbers = version.split("\\.");
+
+        for (int j = 0; j < numbers.length; j++)
+        {
+            if (isVersionDynamic(filterElements[j]))
+            {
+                break;
+            }
+            else if (!numbers[j].equals(filterElements[j]))
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Function to create a SHA-1 digest
+     * @return A new digest
+     */
+    public static MessageDigest newSHA1()
+    {
+        try
+        {
+            return MessageDigest.getInstance("SHA-1");
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new IllegalStateException("SHA-1 is not available", e);
+        }
+    }
+
+    /**
+     * Function to add a string to a digest, followed by a separator so that consecutive strings 
+     * can not run into each other
+     * @param digest The digest to update
+     * @param value The string to add
+     */
+    public static void update(MessageDigest digest, String value)
+    {
+        digest.update(value.getBytes(UTF8));
+        digest.update((byte)0);
+    }
+
+    /**
+     * Function to convert bytes to lower case hex
+     * @param bytes The bytes to convert
+     * @return The hex string
+     */
+    public static String toHex(byte[] bytes)
+    {
+        return DatatypeConverter.printHexBinary(bytes).toLowerCase();
+    }
+
+}
@@ -0,0 +1,377 @@
+// Copyright (c) 2014 Pason Systems, Inc.
+
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+package com.pason.plugins.artifactorypolling;
+
+import hudson.Extension;
+import hudson.model.AbstractProject;
+import hudson.model.UnprotectedRootAction;
+import hudson.scm.SCM;
+import hudson.security.ACL;
+import hudson.security.csrf.CrumbExclusion;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import jenkins.model.Jenkins;
+
+import org.acegisecurity.context.SecurityContext;
+import org.acegisecurity.context.SecurityContextHolder;
+
+import org.apache.commons.io.IOUtils;
+
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+import static java.util.logging.Level.FINE;
+import static java.util.logging.Level.INFO;
+import static java.util.logging.Level.WARNING;
+
+/**
+ * Endpoint for the webhooks of an artifactory server, at JENKINS_URL/artifactory-webhook/
+ * 
+ * Every event names a changed path. The jobs that poll an artifact containing the path are looked up in 
+ * the index of {@link ArtifactoryJobListener}, the cached state of the artifact is dropped and the jobs 
+ * are polled right away. A webhook never triggers a build directly, the poll still has to find the change 
+ * on the server, so the endpoint is exempt from CSRF protection. Polls are not free though, so payloads 
+ * have to present the configured token, and the endpoint is disabled until a token is configured. 
+ * 
+ * Every payload drops the cached state, but a job is polled at most once every {@link #POLL_INTERVAL} 
+ * milliseconds. Payloads that arrive within the interval arm a single poll at its end, so the last 
+ * change of a burst is always polled for.
+ */
+@Extension
+public class ArtifactoryWebhook implements UnprotectedRootAction
+{
+    /** The URL of the endpoint, relative to the root of Jenkins */
+    public static final String URL_NAME = "artifactory-webhook";
+
+    /** The header that carries the webhook token */
+    public static final String TOKEN_HEADER = "X-Artifactory-Webhook-Token";
+
+    /** The request parameter that carries the webhook token, for servers that can not set headers */
+    public static final String TOKEN_PARAMETER = "token";
+
+    /** The minimum number of milliseconds between two polls of a job that webhook payloads schedule */
+    public static final long POLL_INTERVAL = 10 * 1000L;
+
+    /** A Logger for this class */
+    private static final Logger LOGGER = Logger.getLogger(ArtifactoryWebhook.class.getName());
+
+    /** Runs the polls that were held back until the end of the poll interval */
+    private static final ScheduledExecutorService DELAYED_POLLS = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        public Thread newThread(Runnable r)
+        {
+            Thread thread = new Thread(r, "Artifactory webhook delayed polls");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    /** When polling of each job was last scheduled, by full name */
+    private final Map<String, Long> polled = new HashMap<String, Long>();
+
+    /** The full names of the jobs that have a poll armed for the end of the poll interval */
+    private final Set<String> delayed = new HashSet<String>();
+
+    public String getIconFileName()
+    {
+        return null;
+    }
+
+    public String getDisplayName()
+    {
+        return "Artifactory Webhook";
+    }
+
+    public String getUrlName()
+    {
+        return URL_NAME;
+    }
+
+    /**
+     * Function that handles the POST of a webhook payload, see {@link WebhookEvent} for the payloads
+     * @param req The request
+     * @param rsp The response, which lists the jobs that were scheduled for polling
+     * @throws IOException If the request could not be read or the response could not be written
+     */
+    public void doIndex(StaplerRequest req, StaplerResponse rsp) throws IOException
+    {
+        if (!"POST".equals(req.getMethod()))
+        {
+            rsp.sendError(HttpServletResponse.SC_METHOD_NOT_ALLOWED, "Webhook payloads have to be POSTed");
+            return;
+        }
+
+        Jenkins jenkins = Jenkins.getInstance();
+        ArtifactoryRepository.DescriptorImpl descriptor = jenkins != null 
+            ? jenkins.getDescriptorByType(ArtifactoryRepository.DescriptorImpl.class) : null;
+        String expected = descriptor != null ? descriptor.getWebhookToken().getPlainText() : "";
+        if (expected.length() == 0)
+        {
+            LOGGER.log(WARNING, "Rejected an artifactory webhook payload, no webhook token is configured");
+            rsp.sendError(HttpServletResponse.SC_FORBIDDEN, "No webhook token is configured");
+            return;
+        }
+
+        String token = req.getHeader(TOKEN_HEADER);
+        if (token == null)
+        {
+            token = req.getParameter(TOKEN_PARAMETER);
+        }
+        if (!isValidToken(expected, token))
+        {
+            rsp.sendError(HttpServletResponse.SC_FORBIDDEN, "Webhook token is missing or wrong");
+            return;
+        }
+
+        WebhookEvent event = WebhookEvent.fromJSON(IOUtils.toString(req.getInputStream(), "UTF-8"));
+        if (event == null)
+        {
+            rsp.sendError(HttpServletResponse.SC_BAD_REQUEST, "Payload does not describe a changed path");
+            return;
+        }
+
+        List<String> scheduled = trigger(event);
+
+        rsp.setContentType("text/plain;charset=UTF-8");
+        PrintWriter writer = rsp.getWriter();
+        writer.println("Scheduled polling of " + scheduled.size() + " jobs for " + event);
+        for (String job : scheduled)
+        {
+            writer.println(job);
+        }
+    }
+
+    /**
+     * Function to drop the cached state of the artifacts a changed path belongs to and poll their jobs
+     * @param event The change
+     * @return The full names of the jobs that were scheduled for polling
+     */
+    List<String> trigger(WebhookEvent event)
+    {
+        List<String> scheduled = new ArrayList<String>();
+        ArtifactoryJobListener listener = ArtifactoryJobListener.get();
+        Jenkins jenkins = Jenkins.getInstance();
+        if (listener == null || jenkins == null)
+        {
+            return scheduled;
+        }
+
+        // The jobs have to be found no matter who is allowed to see them
+        SecurityContext previous = ACL.impersonate(ACL.SYSTEM);
+        try
+        {
+            ArtifactoryRepository.DescriptorImpl descriptor = jenkins.getDescriptorByType(ArtifactoryRepository.DescriptorImpl.class);
+            for (String name : listener.findJobs(event.getRepo(), event.getPath()))
+            {
+                AbstractProject<?,?> project = jenkins.getItemByFullName(name, AbstractProject.class);
+                SCM scm = project != null ? project.getScm() : null;
+                if (!(scm instanceof ArtifactoryRepository))
+                {
+                    continue;
+                }
+
+                // Dropping the cached state is only a map removal, so it is done for every payload
+                for (ArtifactCoordinate coordinate : ((ArtifactoryRepository) scm).getCoordinates())
+                {
+                    if (descriptor != null && event.getRepo().equals(coordinate.getRepo()))
+                    {
+                        descriptor.invalidate(coordinate.getRepo(), coordinate.getGroupID(), coordinate.getArtifactID());
+                    }
+                }
+
+                long delay = getPollDelay(name, System.currentTimeMillis());
+                if (delay == 0)
+                {
+                    if (schedulePolling(project))
+                    {
+                        scheduled.add(name);
+                    }
+                }
+                else
+                {
+                    if (delay > 0)
+                    {
+                        LOGGER.log(FINE, "Polling " + name + " for " + event + " in " + delay + " ms");
+                        pollLater(name, delay);
+                    }
+                    scheduled.add(name);
+                }
+            }
+        }
+        finally
+        {
+            SecurityContextHolder.setContext(previous);
+        }
+
+        LOGGER.log(INFO, "Artifactory webhook " + event + " scheduled polling of " + scheduled.size() + " jobs");
+        return scheduled;
+    }
+
+    /**
+     * Function to schedule polling of a job
+     * @param project The job
+     * @return Whether or not polling was scheduled
+     */
+    private static boolean schedulePolling(AbstractProject<?,?> project)
+    {
+        if (project.schedulePolling())
+        {
+            LOGGER.log(FINE, "Scheduled polling of " + project.getFullName());
+            return true;
+        }
+        LOGGER.log(FINE, "Could not schedule polling of " + project.getFullName() + ", it has no SCM trigger or is disabled");
+        return false;
+    }
+
+    /**
+     * Function to schedule polling of a job at the end of its poll interval
+     * @param name The full name of the job
+     * @param delay The number of milliseconds until the end of the poll interval
+     */
+    private void pollLater(final String name, long delay)
+    {
+        DELAYED_POLLS.schedule(new Runnable() {
+            public void run()
+            {
+                delayedPollStarted(name, System.currentTimeMillis());
+
+                Jenkins jenkins = Jenkins.getInstance();
+                if (jenkins == null)
+                {
+                    return;
+                }
+                SecurityContext previous = ACL.impersonate(ACL.SYSTEM);
+                try
+                {
+                    AbstractProject<?,?> project = jenkins.getItemByFullName(name, AbstractProject.class);
+                    if (project != null)
+                    {
+                        schedulePolling(project);
+                    }
+                }
+                finally
+                {
+                    SecurityContextHolder.setContext(previous);
+                }
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Function to decide when a job is polled for a payload. It is polled right away unless it was polled 
+     * less than {@link #POLL_INTERVAL} milliseconds ago, then a single poll is armed for the end of the interval.
+     * @param job The full name of the job
+     * @param now The current time in milliseconds
+     * @return 0 to poll right away, the number of milliseconds until the poll that has to be armed, 
+     *         or -1 if a poll is already armed
+     */
+    synchronized long getPollDelay(String job, long now)
+    {
+        if (delayed.contains(job))
+        {
+            return -1;
+        }
+
+        Long last = polled.get(job);
+        if (last == null || now - last >= POLL_INTERVAL)
+        {
+            polled.put(job, now);
+            return 0;
+        }
+
+        delayed.add(job);
+        return last + POLL_INTERVAL - now;
+    }
+
+    /**
+     * Function to record that the poll armed for a job is scheduled
+     * @param job The full name of the job
+     * @param now The current time in milliseconds
+     */
+    synchronized void delayedPollStarted(String job, long now)
+    {
+        delayed.remove(job);
+        polled.put(job, now);
+    }
+
+    /**
+     * Function to check the token that a payload presented
+     * @param expected The configured token, a payload is never valid while it is empty
+     * @param token The token that the payload presented, may be null
+     * @return Whether or not the payload may be handled
+     */
+    static boolean isValidToken(String expected, String token)
+    {
+        if (expected == null || expected.length() == 0 || token == null)
+        {
+            return false;
+        }
+
+        try
+        {
+            // Compare in constant time, so the token can not be guessed from the response times
+            return MessageDigest.isEqual(expected.getBytes("UTF-8"), token.getBytes("UTF-8"));
+        }
+        catch (UnsupportedEncodingException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Exempts the webhook from CSRF protection, an artifactory server can not send a crumb
+     */
+    @Extension
+    public static class CrumbExclusionImpl extends CrumbExclusion
+    {
+        @Override
+        public boolean process(HttpServletRequest req, HttpServletResponse resp, FilterChain chain) 
+            throws IOException, ServletException
+        {
+            String path = req.getPathInfo();
+            if (path != null && (path.equals("/" + URL_NAME) || path.startsWith("/" + URL_NAME + "/")))
+            {
+                chain.doFilter(req, resp);
+                return true;
+            }
+            return false;
+        }
+    }
+}
@@ -32,10 +32,9 @@ import java.lang.Boolean;
 
 import java.net.URL;
 
+import java.util.Collection;
 import java.util.logging.Logger;
 
-import net.sf.json.JSONArray;
-
 import org.apache.commons.io.FileUtils;
 
 import static java.util.logging.Level.FINE;
@@ -83,9 +82,9 @@ public class CheckoutTask implements FileCallable<Boolean> {
     }
 
     /**
-     * Function that does the heavy lifting of the checkout. First it gets the metadata about
-     * an artifact which includes all the files that are included in that artifact. Then it 
-     * proceeds to download each of those files.
+     * Function that does the heavy lifting of the checkout. It takes the files that are included 
+     * in the artifact from the metadata found while polling, then proceeds to download each of 
+     * those files.
      * @param workspace The file where the downloads will go to
      * @param channel The channel back to the job
      * @return True if successful, false otherwise
@@ -101,13 +100,25 @@ public class CheckoutTask implements FileCallable<Boolean> {
             checkoutDir.mkdirs();
             FileUtils.cleanDirectory(checkoutDir);   
 
-            ArtifactoryAPI api = new ArtifactoryAPI(artifactoryURL);
-            JSONArray json = api.getArtifactFiles(repo, groupID, artifactID, artifact.getVersion());
+            // The poll already listed the files of the artifact. Only artifacts recorded without 
+            // their files need to be listed again.
+            Collection<String> files = artifact.getFileMetadata().keySet();
+            if (files.isEmpty())
+            {
+                ArtifactoryAPI api = new ArtifactoryAPI(artifactoryURL);
+                try
+                {
+                    files = api.getArtifactFiles(repo, groupID, artifactID, artifact.getVersion());
+                }
+                finally
+                {
+                    api.close();
+                }
+            }
 
             String groupURLPart = groupID.replace('.', '/');
-            for (int i = 0; i < json.size(); i++)
+            for (String uri : files)
             {
-                String uri = json.getString(i);
                 LOGGER.log(FINE, "Found child URI: " + uri);
                 String resourceURL = artifactoryURL + repo + '/' + groupURLPart + '/' + artifactID + '/' + artifact.getVersion() + '/' + uri;
                 LOGGER.log(FINE, "Starting download of " + uri);
@@ -0,0 +1,214 @@
+// Copyright (c) 2014 Pason Systems, Inc.
+
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+package com.pason.plugins.artifactorypolling;
+
+import java.util.logging.Logger;
+
+import static java.util.logging.Level.WARNING;
+
+/**
+ * Class that stops requests to a server that keeps failing.
+ * 
+ * The breaker starts closed and lets every request through. After a number of consecutive failed 
+ * requests it opens and rejects every request until a cool down period has passed. It then lets a 
+ * single probe request through: if the probe succeeds the breaker closes again, otherwise it opens 
+ * for another cool down period. A probe that does not report back within the probe timeout 
+ * counts as lost, so the next request after that becomes a new probe.
+ */
+public class CircuitBreaker
+{
+    /** Default number of consecutive failures that open the breaker */
+    public static final int DEFAULT_FAILURE_THRESHOLD = 5;
+
+    /** Default number of seconds the breaker stays open before a probe is let through */
+    public static final int DEFAULT_OPEN_DURATION = 60;
+
+    /** Default milliseconds a probe may take before another request is let through in its place */
+    public static final long PROBE_TIMEOUT = 60 * 1000L;
+
+    /** A Logger for this class */
+    private static final Logger LOGGER = Logger.getLogger(CircuitBreaker.class.getName());
+
+    /** The states of the breaker */
+    public enum State
+    {
+        /** Requests are let through */
+        CLOSED,
+        /** Requests are rejected */
+        OPEN,
+        /** A single probe request is in flight */
+        HALF_OPEN
+    }
+
+    /** The name of the server that the breaker protects, for logging */
+    private final String name;
+
+    /** The number of consecutive failures that open the breaker */
+    private final int failureThreshold;
+
+    /** The number of milliseconds the breaker stays open */
+    private final long openDuration;
+
+    /** The number of milliseconds a probe may take before another one is let through */
+    private final long probeTimeout;
+
+    /** The current state */
+    private State state = State.CLOSED;
+
+    /** The number of consecutive failures */
+    private int failures = 0;
+
+    /** When the breaker was last opened */
+    private long openedAt = 0;
+
+    /** When the current probe was let through */
+    private long probeStartedAt = 0;
+
+    /**
+     * Constructor
+     * @param name The name of the server that the breaker protects
+     * @param failureThreshold The number of consecutive failures that open the breaker, 0 to never open it
+     * @param openDuration The number of seconds the breaker stays open before a probe is let through
+     */
+    public CircuitBreaker(String name, int failureThreshold, int openDuration)
+    {
+        this(name, failureThreshold, openDuration, PROBE_TIMEOUT);
+    }
+
+    /**
+     * Constructor
+     * @param name The name of the server that the breaker protects
+     * @param failureThreshold The number of consecutive failures that open the breaker, 0 to never open it
+     * @param openDuration The number of seconds the breaker stays open before a probe is let through
+     * @param probeTimeout The number of milliseconds a probe may take before another one is let through
+     */
+    CircuitBreaker(String name, int failureThreshold, int openDuration, long probeTimeout)
+    {
+        this.name = name;
+        this.failureThreshold = failureThreshold;
+        this.openDuration = openDuration * 1000L;
+        this.probeTimeout = probeTimeout;
+    }
+
+    /**
+     * Function to check if a request may be sent. Once the breaker has been open for long enough 
+     * the first caller is let through as a probe.
+     * @return Whether or not the request may be sent
+     */
+    public synchronized boolean allowRequest()
+    {
+        long now = System.currentTimeMillis();
+        switch (state)
+        {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (now - openedAt >= openDuration)
+                {
+                    state = State.HALF_OPEN;
+                    probeStartedAt = now;
+                    return true;
+                }
+                return false;
+            default:
+                if (now - probeStartedAt >= probeTimeout)
+                {
+                    LOGGER.log(WARNING, "Probe request to " + name + " did not report back, letting another one through");
+                    probeStartedAt = now;
+                    return true;
+                }
+                return false;
+        }
+    }
+
+    /**
+     * Function to check if requests are being rejected, without letting a probe through
+     * @return Whether or not the breaker is open and still cooling down, or waiting for a probe
+     */
+    public synchronized boolean isOpen()
+    {
+        long now = System.currentTimeMillis();
+        if (state == State.HALF_OPEN)
+        {
+            return now - probeStartedAt < probeTimeout;
+        }
+        return state == State.OPEN && now - openedAt < openDuration;
+    }
+
+    /**
+     * Function to record a successful request, which closes the breaker
+     */
+    public synchronized void recordSuccess()
+    {
+        if (state != State.CLOSED)
+        {
+            LOGGER.log(WARNING, "Requests to " + name + " succeed again, closing circuit breaker");
+        }
+        state = State.CLOSED;
+        failures = 0;
+    }
+
+    /**
+     * Function to record a request that ended without an answer from the server, e.g. because 
+     * it was cancelled. Nothing is counted against the server, but if the request was the probe 
+     * the next request is let through in its place.
+     */
+    public synchronized void recordAbandoned()
+    {
+        if (state == State.HALF_OPEN)
+        {
+            probeStartedAt = 0;
+        }
+    }
+
+    /**
+     * Function to record a failed request. A failed probe or too many consecutive failures open the breaker.
+     */
+    public synchronized void recordFailure()
+    {
+        failures++;
+        if (state == State.HALF_OPEN || (state == State.CLOSED && failureThreshold > 0 && failures >= failureThreshold))
+        {
+            LOGGER.log(WARNING, failures + " consecutive requests to " + name + " failed, skipping requests for " 
+                + (openDuration / 1000) + " seconds");
+            state = State.OPEN;
+            openedAt = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Getter function for the state
+     * @return The current state of the breaker
+     */
+    public synchronized State getState()
+    {
+        return state;
+    }
+
+    /**
+     * Getter function for the failures
+     * @return The number of consecutive failed requests
+     */
+    public synchronized int getFailures()
+    {
+        return failures;
+    }
+}
@@ -0,0 +1,98 @@
+// Copyright (c) 2014 Pason Systems, Inc.
+
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+package com.pason.plugins.artifactorypolling;
+
+import hudson.scm.SCMRevisionState;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Class that holds the states of every artifact that a job polls, so that a single poll 
+ * compares all of them and makes a single trigger decision
+ */
+public class CombinedRevisionState extends SCMRevisionState
+{
+    /** A state without any artifacts, for jobs that have not been built */
+    public static final CombinedRevisionState EMPTY = new CombinedRevisionState(Collections.<String, ArtifactoryRevisionState>emptyMap());
+
+    /** The states by the key of their coordinate */
+    private final Map<String, ArtifactoryRevisionState> states;
+
+    /**
+     * Constructor
+     * @param states The states by the key of their coordinate, see {@link ArtifactCoordinate#getKey()}
+     */
+    public CombinedRevisionState(Map<String, ArtifactoryRevisionState> states)
+    {
+        this.states = new LinkedHashMap<String, ArtifactoryRevisionState>(states);
+    }
+
+    /**
+     * Function to turn the baseline that Jenkins keeps for a job into the states of its artifacts. Builds made 
+     * before several artifacts could be polled recorded a single {@link ArtifactoryRevisionState}, which 
+     * becomes the state of the coordinate that it describes.
+     * @param baseline The baseline, may be null
+     * @param coordinates The artifacts that the job polls
+     * @return The states of the artifacts, {@link #EMPTY} if the baseline does not describe any of them
+     */
+    public static CombinedRevisionState fromBaseline(SCMRevisionState baseline, List<ArtifactCoordinate> coordinates)
+    {
+        if (baseline instanceof CombinedRevisionState)
+        {
+            return (CombinedRevisionState) baseline;
+        }
+        if (baseline instanceof ArtifactoryRevisionState && baseline != ArtifactoryRevisionState.BASE)
+        {
+            ArtifactoryRevisionState state = (ArtifactoryRevisionState) baseline;
+            for (ArtifactCoordinate coordinate : coordinates)
+            {
+                if (coordinate.isSameArtifact(state))
+                {
+                    return new CombinedRevisionState(Collections.singletonMap(coordinate.getKey(), state));
+                }
+            }
+        }
+        return EMPTY;
+    }
+
+    /**
+     * Function to get the state of an artifact
+     * @param coordinate The coordinate of the artifact
+     * @return The state of the artifact, or {@link ArtifactoryRevisionState#BASE} if it is not known
+     */
+    public ArtifactoryRevisionState getState(ArtifactCoordinate coordinate)
+    {
+        ArtifactoryRevisionState state = states.get(coordinate.getKey());
+        return state != null && coordinate.isSameArtifact(state) ? state : ArtifactoryRevisionState.BASE;
+    }
+
+    /**
+     * Getter function
+     * @return The states by the key of their coordinate
+     */
+    public Map<String, ArtifactoryRevisionState> getStates()
+    {
+        return Collections.unmodifiableMap(states);
+    }
+}
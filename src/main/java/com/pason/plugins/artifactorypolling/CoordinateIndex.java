@@ -0,0 +1,139 @@
+// Copyright (c) 2014 Pason Systems, Inc.
+
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+package com.pason.plugins.artifactorypolling;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * An index of the jobs that poll each artifact, so that the jobs affected by a changed path 
+ * can be found without looking at every job.
+ * 
+ * A path such as "org/acme/lib/1.0/lib-1.0.jar" can only belong to the artifacts "org:acme", 
+ * "org.acme:lib", "org.acme.lib:1.0" and so on, so finding the jobs of a path takes one lookup 
+ * per path segment.
+ */
+public class CoordinateIndex
+{
+    /** The jobs by the key of the artifact they poll */
+    private final Map<String, Set<String>> jobs = new HashMap<String, Set<String>>();
+
+    /** The keys of the artifacts by the job that polls them */
+    private final Map<String, Set<String>> keys = new HashMap<String, Set<String>>();
+
+    /**
+     * Function to record the artifacts that a job polls, replacing any it polled before
+     * @param job The full name of the job
+     * @param coordinates The artifacts as {repo, groupID, artifactID}
+     */
+    public synchronized void put(String job, Collection<String[]> coordinates)
+    {
+        remove(job);
+
+        Set<String> jobKeys = new HashSet<String>();
+        for (String[] coordinate : coordinates)
+        {
+            jobKeys.add(key(coordinate[0], coordinate[1].replace('.', '/'), coordinate[2]));
+        }
+        for (String key : jobKeys)
+        {
+            Set<String> keyJobs = jobs.get(key);
+            if (keyJobs == null)
+            {
+                keyJobs = new HashSet<String>();
+                jobs.put(key, keyJobs);
+            }
+            keyJobs.add(job);
+        }
+        keys.put(job, jobKeys);
+    }
+
+    /**
+     * Function to forget a job
+     * @param job The full name of the job
+     */
+    public synchronized void remove(String job)
+    {
+        Set<String> jobKeys = keys.remove(job);
+        if (jobKeys == null)
+        {
+            return;
+        }
+        for (String key : jobKeys)
+        {
+            Set<String> keyJobs = jobs.get(key);
+            keyJobs.remove(job);
+            if (keyJobs.isEmpty())
+            {
+                jobs.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Function to forget every job
+     */
+    public synchronized void clear()
+    {
+        jobs.clear();
+        keys.clear();
+    }
+
+    /**
+     * Function to find the jobs that poll an artifact containing a path
+     * @param repo The repository that contains the path
+     * @param path The path within the repository, without leading '/'
+     * @return The full names of the jobs, sorted
+     */
+    public synchronized Set<String> find(String repo, String path)
+    {
+        Set<String> found = new TreeSet<String>();
+        String[] segments = path.split("/");
+
+        StringBuilder groupPath = new StringBuilder(segments[0]);
+        for (int i = 1; i < segments.length; i++)
+        {
+            Set<String> keyJobs = jobs.get(key(repo, groupPath.toString(), segments[i]));
+            if (keyJobs != null)
+            {
+                found.addAll(keyJobs);
+            }
+            groupPath.append('/').append(segments[i]);
+        }
+        return found;
+    }
+
+    /**
+     * Function to build the key of an artifact
+     * @param repo The repository that contains the artifact
+     * @param groupPath The group of the artifact, with '/' instead of '.'
+     * @param artifactID The name of the artifact
+     * @return The key
+     */
+    private static String key(String repo, String groupPath, String artifactID)
+    {
+        return repo + ':' + groupPath + ':' + artifactID;
+    }
+}
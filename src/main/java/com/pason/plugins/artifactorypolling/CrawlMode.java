@@ -0,0 +1,57 @@
+// Copyright (c) 2014 Pason Systems, Inc.
+
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+package com.pason.plugins.artifactorypolling;
+
+/**
+ * The ways that the state of an artifact can be read from an artifactory server
+ */
+public enum CrawlMode
+{
+    /** Walk the storage API, one request per version and one request per file */
+    STORAGE("Storage API (one request per file)"),
+
+    /** Read every version and file with a single recursive storage listing */
+    DEEP_LIST("Deep storage listing (single request)"),
+
+    /** Read every version and file with a single AQL query */
+    AQL("AQL search (single request)");
+
+    /** The name shown in the UI */
+    private final String displayName;
+
+    /**
+     * Constructor
+     * @param displayName The name shown in the UI
+     */
+    private CrawlMode(String displayName)
+    {
+        this.displayName = displayName;
+    }
+
+    /**
+     * Getter function
+     * @return The name shown in the UI
+     */
+    public String getDisplayName()
+    {
+        return displayName;
+    }
+}
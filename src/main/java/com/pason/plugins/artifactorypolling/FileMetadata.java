@@ -24,6 +24,8 @@ import java.io.Serializable;
 
 import java.util.logging.Logger;
 
+import javax.xml.bind.DatatypeConverter;
+
 import net.sf.json.JSONObject;
 
 import static java.util.logging.Level.FINE;
@@ -47,28 +49,45 @@ public class FileMetadata implements Serializable{
     /** The size of the file in bytes */
     private final long fileSize;
 
+    /** When the file was published, as ISO8601. Null if the server did not report it */
+    private final String created;
+
     /** JSON Parsing constants */
     public static final String SIZE_TAG = "size";
     public static final String CHECKSUMS_TAG = "checksums";
     public static final String MD5_TAG = "md5";
     public static final String SHA1_TAG = "sha1";
+    public static final String CREATED_TAG = "created";
     
     /**
-     * Constructor
+     * Constructor for a file without a publish date
      * @param md5Sum The MD5 sum of the file
      * @param sha1Sum The SHA-1 sum of the file
      * @param size The size of the file in bytes
      */
     public FileMetadata(String md5Sum, String sha1Sum, long size)
+    {
+        this(md5Sum, sha1Sum, size, null);
+    }
+
+    /**
+     * Constructor
+     * @param md5Sum The MD5 sum of the file
+     * @param sha1Sum The SHA-1 sum of the file
+     * @param size The size of the file in bytes
+     * @param created When the file was published, as ISO8601. May be null
+     */
+    public FileMetadata(String md5Sum, String sha1Sum, long size, String created)
     {
         this.md5Sum = md5Sum;
         this.sha1Sum = sha1Sum;
         this.fileSize = size;
+        this.created = created;
     }
 
     /**
      * Getter function
-     * @return the MD5 sum of the file
+     * @return the MD5 sum of the file, null if the server did not report it
      */
     public String getMD5Sum()
     {
@@ -94,6 +113,51 @@ public class FileMetadata implements Serializable{
     }
 
 
+    /**
+     * Getter function
+     * @return when the file was published, as ISO8601. Null if the server did not report it
+     */
+    public String getCreated()
+    {
+        return created;
+    }
+
+    /**
+     * Function to get when the file was published
+     * @return The publish time in milliseconds since the epoch, 0 if it is unknown
+     */
+    public long getCreatedTime()
+    {
+        if (created == null)
+        {
+            return 0;
+        }
+        try
+        {
+            return DatatypeConverter.parseDateTime(created).getTimeInMillis();
+        }
+        catch (IllegalArgumentException e)
+        {
+            LOGGER.log(FINE, "Could not parse creation date: " + created);
+            return 0;
+        }
+    }
+
+    /**
+     * Function to check if two files have the same content. SHA-1 sums are compared when both 
+     * files have one, otherwise the MD5 sums are compared.
+     * @param other The file to compare with
+     * @return Whether or not the files have the same checksums
+     */
+    public boolean hasSameContent(FileMetadata other)
+    {
+        if (sha1Sum != null && other.sha1Sum != null)
+        {
+            return sha1Sum.equals(other.sha1Sum);
+        }
+        return md5Sum != null && md5Sum.equals(other.md5Sum);
+    }
+
     /**
      * Function to serialize the object to something that looks like:
      * {
@@ -101,8 +165,10 @@ public class FileMetadata implements Serializable{
      *      "checksums": {
      *          "md5": "106cd40a9210249f791afebcd0012fa7",
      *          "sha1": "f4a2f41ea4c23d151cd7a4fde5989b56cc42873e",
-     *      } 
+     *      },
+     *      "created": "2014-01-20T15:21:43.221-07:00"
      * }
+     * The creation date is left out if it is unknown.
      * 
      */
     public JSONObject toJSON()
@@ -114,6 +180,10 @@ public class FileMetadata implements Serializable{
         checksums.element(SHA1_TAG, sha1Sum);
         LOGGER.log(FINE, "Created checksums JSON: " + checksums.toString());
         retVal.element(CHECKSUMS_TAG, checksums);
+        if (created != null)
+        {
+            retVal.element(CREATED_TAG, created);
+        }
 
         LOGGER.log(FINE, "Created FileMetadata JSON: " + retVal.toString());
 
@@ -129,10 +199,11 @@ public class FileMetadata implements Serializable{
     public static FileMetadata fromJSON(JSONObject json)
     {
         JSONObject checksums = (JSONObject) json.get(CHECKSUMS_TAG);
-        String md5Sum = checksums.getString(MD5_TAG);
-        String sha1Sum = checksums.getString(SHA1_TAG);
+        String md5Sum = checksums.has(MD5_TAG) ? checksums.getString(MD5_TAG) : null;
+        String sha1Sum = checksums.has(SHA1_TAG) ? checksums.getString(SHA1_TAG) : null;
         long filesize = json.getLong(SIZE_TAG);
+        String created = json.has(CREATED_TAG) ? json.getString(CREATED_TAG) : null;
 
-        return new FileMetadata(md5Sum, sha1Sum, filesize);
+        return new FileMetadata(md5Sum, sha1Sum, filesize, created);
     }
 }
\ No newline at end of file
@@ -0,0 +1,62 @@
+// Copyright (c) 2014 Pason Systems, Inc.
+
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+package com.pason.plugins.artifactorypolling;
+
+/**
+ * Class that describes an entry of an artifactory folder listing
+ */
+public final class FolderChild
+{
+    /** The name of the entry relative to the folder */
+    private final String name;
+
+    /** Whether or not the entry is a folder */
+    private final boolean folder;
+
+    /**
+     * Constructor
+     * @param name The name of the entry relative to the folder
+     * @param folder Whether or not the entry is a folder
+     */
+    public FolderChild(String name, boolean folder)
+    {
+        this.name = name;
+        this.folder = folder;
+    }
+
+    /**
+     * Getter function
+     * @return The name of the entry relative to the folder
+     */
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * Getter function
+     * @return Whether or not the entry is a folder
+     */
+    public boolean isFolder()
+    {
+        return folder;
+    }
+}
@@ -0,0 +1,68 @@
+// Copyright (c) 2014 Pason Systems, Inc.
+
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+package com.pason.plugins.artifactorypolling;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Class that describes an artifactory folder: when it was last modified and what it contains
+ */
+public final class FolderInfo
+{
+    /** A folder that could not be read */
+    public static final FolderInfo EMPTY = new FolderInfo(null, Collections.<FolderChild>emptyList());
+
+    /** When the folder was last modified, as reported by the server */
+    private final String lastModified;
+
+    /** The entries of the folder */
+    private final List<FolderChild> children;
+
+    /**
+     * Constructor
+     * @param lastModified When the folder was last modified, may be null
+     * @param children The entries of the folder
+     */
+    public FolderInfo(String lastModified, List<FolderChild> children)
+    {
+        this.lastModified = lastModified;
+        this.children = Collections.unmodifiableList(children);
+    }
+
+    /**
+     * Getter function
+     * @return When the folder was last modified as an ISO8601 string, or null if unknown
+     */
+    public String getLastModified()
+    {
+        return lastModified;
+    }
+
+    /**
+     * Getter function
+     * @return The entries of the folder
+     */
+    public List<FolderChild> getChildren()
+    {
+        return children;
+    }
+}
@@ -0,0 +1,168 @@
+// Copyright (c) 2014 Pason Systems, Inc.
+
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+package com.pason.plugins.artifactorypolling;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import static java.util.logging.Level.FINE;
+
+/**
+ * Class that reads the state of an artifact from the storage API only as far as needed to find
+ * the first difference with a baseline.
+ * 
+ * The versions are listed first. A version that the baseline does not know about is a change on its 
+ * own, so only that version's files are read before the search stops. Only when every version is known
+ * are the file metadata of the known versions read and compared, one version at a time.
+ * 
+ * Like {@link RevisionStateDiff}, versions that were removed from the server are not a change. They 
+ * can not be built, so they only leave the baseline through the state returned by {@link #toRevisionState(ArtifactoryRevisionState)}.
+ */
+public class LazyServerState
+{
+    /** A logger for this class */
+    private static final Logger LOGGER = Logger.getLogger(LazyServerState.class.getName());
+
+    /** The repo that contains the artifact */
+    private final String repo;
+
+    /** The group that the artifact belongs to */
+    private final String groupID;
+
+    /** The name of the artifact */
+    private final String artifactID;
+
+    /** The API object to read the server with */
+    private final ArtifactoryAPI api;
+
+    /** When the search started */
+    private final long crawlTime;
+
+    /** The versions on the server, in the server's order */
+    private final List<String> versions;
+
+    /** The artifacts read so far, in the order of the versions. Complete once a search found no change */
+    private final List<Artifact> artifacts = new ArrayList<Artifact>();
+
+    /**
+     * Constructor. Lists the versions of the artifact on the server.
+     * @param repo The repository that contains the artifact
+     * @param groupID The group that the artifact belongs to
+     * @param artifactID The name of the artifact
+     * @param versionFilter The filter that versions have to match
+     * @param api The API object to read the server with
+     * @throws IOException If the versions could not be read from the server
+     */
+    public LazyServerState(String repo, String groupID, String artifactID, String versionFilter, ArtifactoryAPI api) throws IOException
+    {
+        this.repo = repo;
+        this.groupID = groupID;
+        this.artifactID = artifactID;
+        this.api = api;
+        this.crawlTime = System.currentTimeMillis();
+        this.versions = api.getArtifactVersions(repo, groupID, artifactID, versionFilter);
+    }
+
+    /**
+     * Function to find the first version on the server that was added or modified since a baseline. Only the 
+     * trigger decision is made from it, the build that it triggers reads every version and records them all 
+     * like {@link RevisionStateDiff}.
+     * @param baseline The state to compare the server with
+     * @param known A previously read state whose unmodified versions are reused, or null to read every known version
+     * @return The server's artifact of the first changed version, or null if no version on the server has changed
+     * @throws IOException If the state could not be read from the server
+     * @throws InterruptedException If the search was interrupted
+     */
+    public Artifact findChange(ArtifactoryRevisionState baseline, ArtifactoryRevisionState known) throws IOException, InterruptedException
+    {
+        // A version that is not in the baseline is a change, no matter what its files are
+        for (String version : versions)
+        {
+            if (baseline.getVersion(version) == null)
+            {
+                LOGGER.log(FINE, "Found new version of artifact: " + artifactID + ":" + version);
+                return readArtifacts(Collections.singletonList(version), known).get(0);
+            }
+        }
+
+        // Every version is known, so compare the files of each one. The folders are cheap and read up front.
+        List<FolderInfo> folders = ArtifactoryRevisionState.readFolders(repo, groupID, artifactID, versions, api);
+        for (int i = 0; i < versions.size(); i++)
+        {
+            List<Artifact> read = ArtifactoryRevisionState.readArtifacts(repo, groupID, artifactID, 
+                versions.subList(i, i + 1), folders.subList(i, i + 1), api, known);
+            Artifact serverArtifact = read.get(0);
+            artifacts.add(serverArtifact);
+
+            // A version that lost files still exists, so the server's artifact is what gets built
+            Artifact baselineArtifact = baseline.getVersion(serverArtifact.getVersion());
+            if (!ArtifactoryRevisionState.isContainedIn(serverArtifact, baselineArtifact) 
+                || !ArtifactoryRevisionState.isContainedIn(baselineArtifact, serverArtifact))
+            {
+                LOGGER.log(FINE, "Found new, changed or deleted file in artifact: " + artifactID + ":" + serverArtifact.getVersion());
+                return serverArtifact;
+            }
+        }
+
+        // Versions that are no longer on the server only update the baseline
+        Set<String> serverVersions = new HashSet<String>(versions);
+        for (Artifact baselineArtifact : baseline.getArtifacts())
+        {
+            if (!serverVersions.contains(baselineArtifact.getVersion()))
+            {
+                LOGGER.log(FINE, "Found removed version of artifact: " + artifactID + ":" + baselineArtifact.getVersion());
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Function to create the server state after {@link #findChange(ArtifactoryRevisionState, ArtifactoryRevisionState)}
+     * found no change, at which point every version has been read
+     * @param known The state that was passed to the search
+     * @return The state on the server
+     */
+    public ArtifactoryRevisionState toRevisionState(ArtifactoryRevisionState known)
+    {
+        return new ArtifactoryRevisionState(repo, groupID, artifactID, new ArrayList<Artifact>(artifacts), 
+                                            ArtifactoryRevisionState.fullCrawlTime(artifacts, known, crawlTime));
+    }
+
+    /**
+     * Function to read the folders and files of some versions
+     * @param selected The versions to read
+     * @param known A previously read state whose unmodified versions are reused, may be null
+     * @return The artifacts in the order of the versions
+     * @throws IOException If the state could not be read from the server
+     * @throws InterruptedException If the search was interrupted
+     */
+    private List<Artifact> readArtifacts(List<String> selected, ArtifactoryRevisionState known) throws IOException, InterruptedException
+    {
+        List<FolderInfo> folders = ArtifactoryRevisionState.readFolders(repo, groupID, artifactID, selected, api);
+        return ArtifactoryRevisionState.readArtifacts(repo, groupID, artifactID, selected, folders, api, known);
+    }
+}
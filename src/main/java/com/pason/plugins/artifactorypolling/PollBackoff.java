@@ -0,0 +1,218 @@
+// Copyright (c) 2014 Pason Systems, Inc.
+
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+package com.pason.plugins.artifactorypolling;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import static java.util.logging.Level.FINE;
+
+/**
+ * Class that decides which polls can be skipped because the artifact is unlikely to have changed.
+ * 
+ * The publish history of every polled artifact is tracked. Each poll that finds nothing new doubles the
+ * time until the next poll, up to a maximum. The time is also kept below half of the time since the artifact 
+ * was last published, so an artifact that is published often keeps being polled often while one that 
+ * is published once a quarter backs off quickly. A change drops the backoff so polling is fast again.
+ * 
+ * Every job compares the server with its own baseline, so the history is kept per job. A job whose 
+ * baseline is behind still finds the change after another job polling the same artifact saw it.
+ */
+public class PollBackoff
+{
+    /** Default maximum number of minutes a poll can be skipped for, polls are never skipped unless it is configured */
+    public static final int DEFAULT_MAX_BACKOFF = 0;
+
+    /** Milliseconds polls are skipped for after the first quiet poll */
+    private static final long MIN_BACKOFF = 60 * 1000L;
+
+    /** A Logger for this class */
+    private static final Logger LOGGER = Logger.getLogger(PollBackoff.class.getName());
+
+    /** The maximum number of milliseconds a poll can be skipped for */
+    private final long maxBackoff;
+
+    /** The history of each artifact by its key, and then by the full name of the job that polls it */
+    private final Map<String, Map<String, History>> histories = new HashMap<String, Map<String, History>>();
+
+    /**
+     * Constructor
+     * @param maxBackoff The maximum number of minutes a poll can be skipped for
+     */
+    public PollBackoff(int maxBackoff)
+    {
+        this.maxBackoff = maxBackoff * 60L * 1000L;
+    }
+
+    /**
+     * Function to check if a poll of an artifact can be skipped
+     * @param job The full name of the job that polls the artifact
+     * @param key The key of the artifact, see {@link ArtifactCoordinate#getKey()}
+     * @param now The current time
+     * @return Whether or not the poll can be skipped
+     */
+    public synchronized boolean shouldSkip(String job, String key, long now)
+    {
+        History history = getHistory(job, key, false);
+        return history != null && now < history.nextPoll;
+    }
+
+    /**
+     * Function to record the result of a poll
+     * @param job The full name of the job that polled the artifact
+     * @param key The key of the artifact
+     * @param now When the poll finished
+     * @param lastPublished When the newest file of the artifact was published, 0 if unknown
+     * @param changed Whether or not the poll found a change
+     */
+    public synchronized void recordPoll(String job, String key, long now, long lastPublished, boolean changed)
+    {
+        History history = getHistory(job, key, false);
+        if (history == null)
+        {
+            history = getHistory(job, key, true);
+            history.lastPublished = lastPublished;
+        }
+
+        if (changed || lastPublished > history.lastPublished)
+        {
+            history.backoff = 0;
+        }
+        else
+        {
+            history.backoff = history.backoff == 0 ? MIN_BACKOFF : history.backoff * 2;
+            history.backoff = Math.min(history.backoff, maxBackoff);
+            if (lastPublished > 0)
+            {
+                history.backoff = Math.min(history.backoff, Math.max(0, (now - lastPublished) / 2));
+            }
+        }
+
+        history.lastPublished = Math.max(history.lastPublished, lastPublished);
+        history.nextPoll = now + history.backoff;
+        LOGGER.log(FINE, "Next poll of " + key + " by " + job + " in " + (history.backoff / 1000) + " seconds");
+    }
+
+    /**
+     * Function to poll an artifact at the next opportunity, for every version filter and every job
+     * @param repo The repository that contains the artifact
+     * @param groupID The group that the artifact belongs to
+     * @param artifactID The name of the artifact
+     */
+    public synchronized void reset(String repo, String groupID, String artifactID)
+    {
+        String prefix = ArtifactCoordinate.key(repo, groupID, artifactID, "");
+        Iterator<Map.Entry<String, Map<String, History>>> entries = histories.entrySet().iterator();
+        while (entries.hasNext())
+        {
+            Map.Entry<String, Map<String, History>> entry = entries.next();
+            if (entry.getKey().startsWith(prefix))
+            {
+                for (History history : entry.getValue().values())
+                {
+                    history.backoff = 0;
+                    history.nextPoll = 0;
+                }
+            }
+        }
+    }
+
+    /**
+     * Function to drop the histories of a job for the artifacts that it no longer polls
+     * @param job The full name of the job
+     * @param keys The keys of the artifacts that the job still polls, empty if it was deleted or renamed
+     */
+    public synchronized void retain(String job, Collection<String> keys)
+    {
+        Iterator<Map.Entry<String, Map<String, History>>> entries = histories.entrySet().iterator();
+        while (entries.hasNext())
+        {
+            Map.Entry<String, Map<String, History>> entry = entries.next();
+            if (!keys.contains(entry.getKey()))
+            {
+                entry.getValue().remove(job);
+                if (entry.getValue().isEmpty())
+                {
+                    entries.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Getter function for the backoff
+     * @param job The full name of the job that polls the artifact
+     * @param key The key of the artifact
+     * @return The number of milliseconds polls of the artifact by the job are currently skipped for
+     */
+    public synchronized long getBackoff(String job, String key)
+    {
+        History history = getHistory(job, key, false);
+        return history != null ? history.backoff : 0;
+    }
+
+    /**
+     * Function to look up the history of an artifact polled by a job
+     * @param job The full name of the job
+     * @param key The key of the artifact
+     * @param create Whether or not a missing history is created
+     * @return The history, or null if there is none and none was created
+     */
+    private History getHistory(String job, String key, boolean create)
+    {
+        Map<String, History> jobs = histories.get(key);
+        if (jobs == null)
+        {
+            if (!create)
+            {
+                return null;
+            }
+            jobs = new HashMap<String, History>();
+            histories.put(key, jobs);
+        }
+
+        History history = jobs.get(job);
+        if (history == null && create)
+        {
+            history = new History();
+            jobs.put(job, history);
+        }
+        return history;
+    }
+
+    /**
+     * The publish history of an artifact
+     */
+    private static final class History
+    {
+        /** When the newest file of the artifact was published */
+        long lastPublished = 0;
+
+        /** The number of milliseconds polls are skipped for */
+        long backoff = 0;
+
+        /** The earliest time of the next poll */
+        long nextPoll = 0;
+    }
+}
@@ -0,0 +1,235 @@
+// Copyright (c) 2014 Pason Systems, Inc.
+
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+package com.pason.plugins.artifactorypolling;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import static java.util.logging.Level.FINE;
+
+/**
+ * Class that limits how many polls crawl the artifactory servers at the same time.
+ * 
+ * Jenkins starts the polls of every job with the same cron schedule at the same moment. Each poll first 
+ * waits for a random delay, then queues for a permit of its server and a permit of the controller. 
+ * The queues are fair, so the jobs are served in the order they arrived.
+ */
+public class PollScheduler
+{
+    /** Default number of polls that may crawl at the same time */
+    public static final int DEFAULT_MAX_CONCURRENT_POLLS = 8;
+
+    /** Default number of polls that may crawl a single server at the same time */
+    public static final int DEFAULT_MAX_CONCURRENT_POLLS_PER_SERVER = 4;
+
+    /** Default maximum number of seconds a poll is delayed before it queues */
+    public static final int DEFAULT_JITTER = 5;
+
+    /** A Logger for this class */
+    private static final Logger LOGGER = Logger.getLogger(PollScheduler.class.getName());
+
+    /** Source of the start delays */
+    private static final Random RANDOM = new Random();
+
+    /** The permits of the controller */
+    private final Semaphore global;
+
+    /** The permits of each server by its URL */
+    private final Map<String, Semaphore> servers = new HashMap<String, Semaphore>();
+
+    /** The number of polls that may crawl a single server at the same time */
+    private final int maxPerServer;
+
+    /** The maximum number of milliseconds a poll is delayed before it queues */
+    private final long jitter;
+
+    /** The number of polls waiting for a permit */
+    private final AtomicInteger queued = new AtomicInteger();
+
+    /** The number of polls holding a permit */
+    private final AtomicInteger running = new AtomicInteger();
+
+    /** The number of polls that got a permit */
+    private final AtomicLong polls = new AtomicLong();
+
+    /** The total number of milliseconds polls waited for a permit */
+    private final AtomicLong totalWait = new AtomicLong();
+
+    /** The longest number of milliseconds a poll waited for a permit */
+    private final AtomicLong maxWait = new AtomicLong();
+
+    /**
+     * Constructor
+     * @param maxConcurrent The number of polls that may crawl at the same time
+     * @param maxPerServer The number of polls that may crawl a single server at the same time
+     * @param jitter The maximum number of seconds a poll is delayed before it queues
+     */
+    public PollScheduler(int maxConcurrent, int maxPerServer, int jitter)
+    {
+        this.global = new Semaphore(Math.max(1, maxConcurrent), true);
+        this.maxPerServer = Math.max(1, maxPerServer);
+        this.jitter = Math.max(0, jitter) * 1000L;
+    }
+
+    /**
+     * Function to wait until a poll may crawl a server. The returned permit has to be released 
+     * once the crawl is done.
+     * @param server The URL of the server
+     * @return The permit
+     * @throws InterruptedException If the poll was interrupted while waiting
+     */
+    public Permit acquire(String server) throws InterruptedException
+    {
+        if (jitter > 0)
+        {
+            Thread.sleep((long) (RANDOM.nextDouble() * jitter));
+        }
+
+        Semaphore serverPermits = getServer(server);
+        long start = System.currentTimeMillis();
+        queued.incrementAndGet();
+        try
+        {
+            // Polls of a busy server queue for it without holding a permit of the controller
+            serverPermits.acquire();
+            try
+            {
+                global.acquire();
+            }
+            catch (InterruptedException e)
+            {
+                serverPermits.release();
+                throw e;
+            }
+        }
+        finally
+        {
+            queued.decrementAndGet();
+        }
+
+        long wait = System.currentTimeMillis() - start;
+        running.incrementAndGet();
+        polls.incrementAndGet();
+        totalWait.addAndGet(wait);
+        long previousMax;
+        do
+        {
+            previousMax = maxWait.get();
+        }
+        while (wait > previousMax && !maxWait.compareAndSet(previousMax, wait));
+
+        LOGGER.log(FINE, "Poll of " + server + " waited " + wait + " ms for a permit");
+        return new Permit(serverPermits);
+    }
+
+    /**
+     * Getter function for the queue depth
+     * @return The number of polls waiting for a permit
+     */
+    public int getQueued()
+    {
+        return queued.get();
+    }
+
+    /**
+     * Getter function for the running polls
+     * @return The number of polls holding a permit
+     */
+    public int getRunning()
+    {
+        return running.get();
+    }
+
+    /**
+     * Getter function for the average wait
+     * @return The average number of milliseconds polls waited for a permit
+     */
+    public long getAverageWait()
+    {
+        long count = polls.get();
+        return count > 0 ? totalWait.get() / count : 0;
+    }
+
+    /**
+     * Getter function for the longest wait
+     * @return The longest number of milliseconds a poll waited for a permit
+     */
+    public long getMaxWait()
+    {
+        return maxWait.get();
+    }
+
+    /**
+     * Function to get the permits of a server, which are created on first use
+     * @param server The URL of the server
+     * @return The permits
+     */
+    private synchronized Semaphore getServer(String server)
+    {
+        Semaphore permits = servers.get(server);
+        if (permits == null)
+        {
+            permits = new Semaphore(maxPerServer, true);
+            servers.put(server, permits);
+        }
+        return permits;
+    }
+
+    /**
+     * The right of a poll to crawl a server
+     */
+    public final class Permit
+    {
+        /** The permits of the server */
+        private final Semaphore server;
+
+        /** Whether or not the permit has been released */
+        private boolean released = false;
+
+        /**
+         * Constructor
+         * @param server The permits of the server
+         */
+        private Permit(Semaphore server)
+        {
+            this.server = server;
+        }
+
+        /**
+         * Function to hand the permit back so that the next poll in the queue can crawl
+         */
+        public synchronized void release()
+        {
+            if (!released)
+            {
+                released = true;
+                running.decrementAndGet();
+                global.release();
+                server.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,86 @@
+// Copyright (c) 2014 Pason Systems, Inc.
+
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+package com.pason.plugins.artifactorypolling;
+
+/**
+ * Class that describes a file found on the server by a search or a recursive listing
+ */
+public final class RemoteFile
+{
+    /** The repository of the file, null if it is not known */
+    private final String repo;
+
+    /** The path of the file */
+    private final String path;
+
+    /** The checksums and size of the file */
+    private final FileMetadata metadata;
+
+    /**
+     * Constructor
+     * @param path The path of the file
+     * @param metadata The checksums and size of the file
+     */
+    public RemoteFile(String path, FileMetadata metadata)
+    {
+        this(null, path, metadata);
+    }
+
+    /**
+     * Constructor
+     * @param repo The repository of the file, null if it is not known
+     * @param path The path of the file
+     * @param metadata The checksums and size of the file
+     */
+    public RemoteFile(String repo, String path, FileMetadata metadata)
+    {
+        this.repo = repo;
+        this.path = path;
+        this.metadata = metadata;
+    }
+
+    /**
+     * Getter function
+     * @return The repository of the file, null if it is not known
+     */
+    public String getRepo()
+    {
+        return repo;
+    }
+
+    /**
+     * Getter function
+     * @return The path of the file
+     */
+    public String getPath()
+    {
+        return path;
+    }
+
+    /**
+     * Getter function
+     * @return The checksums and size of the file
+     */
+    public FileMetadata getMetadata()
+    {
+        return metadata;
+    }
+}
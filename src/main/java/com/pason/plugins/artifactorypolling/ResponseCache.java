@@ -0,0 +1,203 @@
+// Copyright (c) 2014 Pason Systems, Inc.
+
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+package com.pason.plugins.artifactorypolling;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded, least recently used cache of decoded artifactory responses keyed by URL.
+ * 
+ * Each entry remembers the validators (ETag and Last-Modified) the server sent with the 
+ * response so that the next request for the URL can be made conditional. When the server
+ * answers 304 Not Modified the cached value is reused and nothing has to be downloaded or decoded.
+ */
+public class ResponseCache
+{
+    /** Default maximum number of cached responses */
+    public static final int DEFAULT_SIZE = 1000;
+
+    /** The cached entries in least recently used order */
+    private final LinkedHashMap<String, Entry> entries;
+
+    /** Number of requests answered from the cache */
+    private final AtomicLong hits = new AtomicLong();
+
+    /** Number of requests that had to download and decode the response */
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Constructor
+     * @param maxEntries The maximum number of cached responses
+     */
+    public ResponseCache(final int maxEntries)
+    {
+        entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest)
+            {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Function to look up the cached response of a URL
+     * @param url The URL of the request
+     * @return The cached response, or null if there is none
+     */
+    public synchronized Entry get(String url)
+    {
+        return entries.get(url);
+    }
+
+    /**
+     * Function to cache a response. Responses without validators are not cached 
+     * because they cannot be revalidated.
+     * @param url The URL of the request
+     * @param eTag The ETag header of the response, may be null
+     * @param lastModified The Last-Modified header of the response, may be null
+     * @param value The decoded response, must not be modified afterwards
+     */
+    public synchronized void put(String url, String eTag, String lastModified, Object value)
+    {
+        if (eTag == null && lastModified == null)
+        {
+            entries.remove(url);
+        }
+        else
+        {
+            entries.put(url, new Entry(eTag, lastModified, value));
+        }
+    }
+
+    /**
+     * Function to drop every cached response whose URL starts with a prefix, so that
+     * the next request for it is not made conditional
+     * @param urlPrefix The start of the URLs to drop
+     * @return The number of dropped responses
+     */
+    public synchronized int invalidate(String urlPrefix)
+    {
+        int removed = 0;
+        Iterator<String> urls = entries.keySet().iterator();
+        while (urls.hasNext())
+        {
+            if (urls.next().startsWith(urlPrefix))
+            {
+                urls.remove();
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Function to record a request that was answered from the cache
+     */
+    void recordHit()
+    {
+        hits.incrementAndGet();
+    }
+
+    /**
+     * Function to record a request that had to be downloaded
+     */
+    void recordMiss()
+    {
+        misses.incrementAndGet();
+    }
+
+    /**
+     * Getter function
+     * @return The number of requests answered from the cache
+     */
+    public long getHits()
+    {
+        return hits.get();
+    }
+
+    /**
+     * Getter function
+     * @return The number of requests that had to download and decode the response
+     */
+    public long getMisses()
+    {
+        return misses.get();
+    }
+
+    /**
+     * Getter function
+     * @return The number of cached responses
+     */
+    public synchronized int size()
+    {
+        return entries.size();
+    }
+
+    /**
+     * A cached response and its validators
+     */
+    public static final class Entry
+    {
+        private final String eTag;
+        private final String lastModified;
+        private final Object value;
+
+        private Entry(String eTag, String lastModified, Object value)
+        {
+            this.eTag = eTag;
+            this.lastModified = lastModified;
+            this.value = value;
+        }
+
+        /**
+         * Getter function
+         * @return The ETag of the cached response, may be null
+         */
+        public String getETag()
+        {
+            return eTag;
+        }
+
+        /**
+         * Getter function
+         * @return The Last-Modified date of the cached response, may be null
+         */
+        public String getLastModified()
+        {
+            return lastModified;
+        }
+
+        /**
+         * Getter function
+         * @return The decoded response
+         */
+        public Object getValue()
+        {
+            return value;
+        }
+    }
+}
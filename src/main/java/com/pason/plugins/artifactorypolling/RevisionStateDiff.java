@@ -0,0 +1,433 @@
+// Copyright (c) 2014 Pason Systems, Inc.
+
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+package com.pason.plugins.artifactorypolling;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+
+/**
+ * The differences between a baseline and a newer state of an artifact: the versions that were added, 
+ * removed or modified, and for modified versions the files that were added, removed or modified.
+ * 
+ * The diff is computed in one pass over both states. Versions with equal digests are skipped without 
+ * looking at their files, and states with equal root digests are not looked at at all. The same diff 
+ * decides whether a poll triggers a build, which versions the build records, and what its changelog shows.
+ */
+public final class RevisionStateDiff
+{
+    /** How a version or a file changed */
+    public enum ChangeType
+    {
+        ADDED,
+        REMOVED,
+        MODIFIED
+    }
+
+    /** JSON tags for the changelog */
+    public static final String CHANGES_TAG = "changes";
+    public static final String TYPE_TAG = "type";
+    public static final String VERSION_TAG = "version";
+    public static final String FILES_TAG = "files";
+    public static final String NAME_TAG = "name";
+    public static final String REASON_TAG = "reason";
+
+    /** A diff without changes */
+    public static final RevisionStateDiff EMPTY = new RevisionStateDiff(new ArrayList<VersionChange>());
+
+    /** The changed versions, in the order of the newer state followed by the removed versions */
+    private final ArrayList<VersionChange> changes;
+
+    /**
+     * Constructor
+     * @param changes The changed versions
+     */
+    private RevisionStateDiff(List<VersionChange> changes)
+    {
+        this.changes = new ArrayList<VersionChange>(changes);
+    }
+
+    /**
+     * Function to compute the differences between two states
+     * @param baseline The older state
+     * @param state The newer state
+     * @return The differences, which are empty if every version of both states has files with the same content
+     */
+    public static RevisionStateDiff compute(ArtifactoryRevisionState baseline, ArtifactoryRevisionState state)
+    {
+        if (baseline.getDigest().equals(state.getDigest()))
+        {
+            return EMPTY;
+        }
+
+        List<VersionChange> changes = new ArrayList<VersionChange>();
+        Set<String> versions = new HashSet<String>();
+        for (Artifact artifact : state.getArtifacts())
+        {
+            if (!versions.add(artifact.getVersion()))
+            {
+                continue;
+            }
+
+            Artifact baselineArtifact = baseline.getVersion(artifact.getVersion());
+            if (baselineArtifact == null)
+            {
+                changes.add(new VersionChange(ChangeType.ADDED, artifact, Collections.<FileChange>emptyList()));
+            }
+            else if (!baselineArtifact.getDigest().equals(artifact.getDigest()))
+            {
+                List<FileChange> files = compareFiles(baselineArtifact, artifact);
+                if (!files.isEmpty())
+                {
+                    changes.add(new VersionChange(ChangeType.MODIFIED, artifact, files));
+                }
+            }
+        }
+
+        for (Artifact baselineArtifact : baseline.getArtifacts())
+        {
+            if (state.getVersion(baselineArtifact.getVersion()) == null && versions.add(baselineArtifact.getVersion()))
+            {
+                changes.add(new VersionChange(ChangeType.REMOVED, baselineArtifact, Collections.<FileChange>emptyList()));
+            }
+        }
+
+        return changes.isEmpty() ? EMPTY : new RevisionStateDiff(changes);
+    }
+
+    /**
+     * Function to compare the files of two artifacts of the same version
+     * @param baseline The older artifact
+     * @param artifact The newer artifact
+     * @return The changed files, empty if every file exists in both with the same content
+     */
+    private static List<FileChange> compareFiles(Artifact baseline, Artifact artifact)
+    {
+        List<FileChange> files = new ArrayList<FileChange>();
+        Map<String, FileMetadata> baselineFiles = baseline.getFileMetadata();
+        Map<String, FileMetadata> artifactFiles = artifact.getFileMetadata();
+
+        for (Map.Entry<String, FileMetadata> file : artifactFiles.entrySet())
+        {
+            FileMetadata baselineFile = baselineFiles.get(file.getKey());
+            if (baselineFile == null)
+            {
+                files.add(new FileChange(ChangeType.ADDED, file.getKey(), "new file"));
+            }
+            else if (!baselineFile.hasSameContent(file.getValue()))
+            {
+                files.add(new FileChange(ChangeType.MODIFIED, file.getKey(), describeChange(baselineFile, file.getValue())));
+            }
+        }
+        for (String name : baselineFiles.keySet())
+        {
+            if (!artifactFiles.containsKey(name))
+            {
+                files.add(new FileChange(ChangeType.REMOVED, name, "file deleted"));
+            }
+        }
+
+        return files;
+    }
+
+    /**
+     * Function to describe why the content of a file changed
+     * @param before The file in the older artifact
+     * @param after The file in the newer artifact
+     * @return The reason, naming the checksum that differs
+     */
+    private static String describeChange(FileMetadata before, FileMetadata after)
+    {
+        if (before.getSHA1Sum() != null && after.getSHA1Sum() != null)
+        {
+            return "sha1 changed from " + before.getSHA1Sum() + " to " + after.getSHA1Sum();
+        }
+        return "md5 changed from " + before.getMD5Sum() + " to " + after.getMD5Sum();
+    }
+
+    /**
+     * Getter function
+     * @return The changed versions, in the order of the newer state followed by the removed versions
+     */
+    public List<VersionChange> getChanges()
+    {
+        return Collections.unmodifiableList(changes);
+    }
+
+    /**
+     * Function to check if there are any differences
+     * @return Whether or not the states have the same content
+     */
+    public boolean isEmpty()
+    {
+        return changes.isEmpty();
+    }
+
+    /**
+     * Function to get the version that a build should check out, which is the newest version that was added 
+     * or modified, by {@link Artifact#getPublishedTime()}. The server lists versions by name, so the first 
+     * changed version is not necessarily the newest. When the publish times are equal or unknown the first 
+     * of the newest versions in the order of the newer state is checked out. Versions that were only removed 
+     * can not be checked out.
+     * @return The artifact of the version, or null if no version was added or modified
+     */
+    public Artifact getCheckoutArtifact()
+    {
+        Artifact newest = null;
+        long newestPublished = 0;
+        for (VersionChange change : changes)
+        {
+            if (change.getType() == ChangeType.REMOVED)
+            {
+                continue;
+            }
+
+            long published = change.getArtifact().getPublishedTime();
+            if (newest == null || published > newestPublished)
+            {
+                newest = change.getArtifact();
+                newestPublished = published;
+            }
+        }
+        return newest;
+    }
+
+    /**
+     * Function to apply the differences to a state. Every changed version is recorded, not just the one 
+     * that is checked out: the versions published together with the newest one are superseded by it, 
+     * so a build that only checks out the newest version must not be followed by a build for each of them.
+     * @param state The state to apply the differences to, usually the baseline
+     * @return The artifacts of the state with added and modified versions replaced and removed versions left out
+     */
+    public ArrayList<Artifact> apply(ArtifactoryRevisionState state)
+    {
+        Set<String> removed = new HashSet<String>();
+        Map<String, Artifact> replaced = new LinkedHashMap<String, Artifact>();
+        for (VersionChange change : changes)
+        {
+            if (change.getType() == ChangeType.REMOVED)
+            {
+                removed.add(change.getVersion());
+            }
+            else
+            {
+                replaced.put(change.getVersion(), change.getArtifact());
+            }
+        }
+
+        ArrayList<Artifact> artifacts = new ArrayList<Artifact>();
+        for (Artifact artifact : state.getArtifacts())
+        {
+            if (replaced.containsKey(artifact.getVersion()))
+            {
+                artifacts.add(replaced.remove(artifact.getVersion()));
+            }
+            else if (!removed.contains(artifact.getVersion()))
+            {
+                artifacts.add(artifact);
+            }
+        }
+
+        // Versions that the state does not have yet are added at the end
+        artifacts.addAll(replaced.values());
+        return artifacts;
+    }
+
+    /**
+     * Function to serialize the differences for the changelog, into something that looks like:
+     * {
+     *   "changes": [
+     *     {
+     *       "type": "MODIFIED",
+     *       "version": "1.0",
+     *       "files": [
+     *         { "type": "ADDED", "name": "lib-1.0.pom", "reason": "new file" }
+     *       ]
+     *     }
+     *   ]
+     * }
+     * @return The serialized differences
+     */
+    public JSONObject toJSON()
+    {
+        JSONArray jsonChanges = new JSONArray();
+        for (VersionChange change : changes)
+        {
+            JSONArray jsonFiles = new JSONArray();
+            for (FileChange file : change.getFiles())
+            {
+                JSONObject jsonFile = new JSONObject();
+                jsonFile.element(TYPE_TAG, file.getType().name());
+                jsonFile.element(NAME_TAG, file.getName());
+                jsonFile.element(REASON_TAG, file.getReason());
+                jsonFiles.add(jsonFile);
+            }
+
+            JSONObject jsonChange = new JSONObject();
+            jsonChange.element(TYPE_TAG, change.getType().name());
+            jsonChange.element(VERSION_TAG, change.getVersion());
+            jsonChange.element(FILES_TAG, jsonFiles);
+            jsonChanges.add(jsonChange);
+        }
+
+        JSONObject json = new JSONObject();
+        json.element(CHANGES_TAG, jsonChanges);
+        return json;
+    }
+
+    /**
+     * Class that describes a changed version
+     */
+    public static final class VersionChange
+    {
+        /** How the version changed */
+        private final ChangeType type;
+
+        /** The artifact of the version in the newer state, or in the baseline if it was removed */
+        private final Artifact artifact;
+
+        /** The changed files of a modified version */
+        private final ArrayList<FileChange> files;
+
+        /**
+         * Constructor
+         * @param type How the version changed
+         * @param artifact The artifact of the version in the newer state, or in the baseline if it was removed
+         * @param files The changed files of a modified version, empty otherwise
+         */
+        VersionChange(ChangeType type, Artifact artifact, List<FileChange> files)
+        {
+            this.type = type;
+            this.artifact = artifact;
+            this.files = new ArrayList<FileChange>(files);
+        }
+
+        /**
+         * Getter function
+         * @return How the version changed
+         */
+        public ChangeType getType()
+        {
+            return type;
+        }
+
+        /**
+         * Getter function
+         * @return The version
+         */
+        public String getVersion()
+        {
+            return artifact.getVersion();
+        }
+
+        /**
+         * Getter function
+         * @return The artifact of the version in the newer state, or in the baseline if it was removed
+         */
+        public Artifact getArtifact()
+        {
+            return artifact;
+        }
+
+        /**
+         * Getter function
+         * @return The changed files of a modified version, empty for added and removed versions
+         */
+        public List<FileChange> getFiles()
+        {
+            return Collections.unmodifiableList(files);
+        }
+
+        @Override
+        public String toString()
+        {
+            return type + " " + getVersion() + (files.isEmpty() ? "" : " " + files);
+        }
+    }
+
+    /**
+     * Class that describes a changed file of a modified version
+     */
+    public static final class FileChange
+    {
+        /** How the file changed */
+        private final ChangeType type;
+
+        /** The name of the file, relative to the version folder */
+        private final String name;
+
+        /** Why the file counts as changed */
+        private final String reason;
+
+        /**
+         * Constructor
+         * @param type How the file changed
+         * @param name The name of the file, relative to the version folder
+         * @param reason Why the file counts as changed
+         */
+        FileChange(ChangeType type, String name, String reason)
+        {
+            this.type = type;
+            this.name = name;
+            this.reason = reason;
+        }
+
+        /**
+         * Getter function
+         * @return How the file changed
+         */
+        public ChangeType getType()
+        {
+            return type;
+        }
+
+        /**
+         * Getter function
+         * @return The name of the file, relative to the version folder
+         */
+        public String getName()
+        {
+            return name;
+        }
+
+        /**
+         * Getter function
+         * @return Why the file counts as changed
+         */
+        public String getReason()
+        {
+            return reason;
+        }
+
+        @Override
+        public String toString()
+        {
+            return name + ": " + reason;
+        }
+    }
+}
@@ -0,0 +1,545 @@
+// Copyright (c) 2014 Pason Systems, Inc.
+
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+package com.pason.plugins.artifactorypolling;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.xml.bind.DatatypeConverter;
+
+/**
+ * Compact binary encoding of the state files that are kept with every build.
+ * 
+ * A file starts with {@link #MAGIC} and the format version, followed by a table of every distinct 
+ * string in the state (repo, group, versions, file names and dates) and then the artifacts. Strings 
+ * are referenced by their index in the table, and checksums are stored as raw bytes when they are 
+ * lower case hex of the expected length. The digests of the state and of each artifact are stored too, 
+ * so they are not computed again when the state is compared. Numbers are written as variable length integers.
+ * 
+ * Files are ordered by name, so equal states are always written as the same bytes. Files that do not 
+ * start with {@link #MAGIC} are older JSON files, see {@link #isBinary(File)}.
+ */
+public final class RevisionStateFile
+{
+    /** The first bytes of a binary state file, "APSF" */
+    public static final int MAGIC = 0x41505346;
+
+    /** 
+     * The version of the format that is written. Version 2 added the digests of the state and its artifacts. 
+     * Version 3 digests cover both checksums of each file, so the digests of version 2 are computed again.
+     */
+    public static final int FORMAT_VERSION = 3;
+
+    /** The length of a digest in bytes */
+    private static final int DIGEST_LENGTH = 20;
+
+    /** The size of the buffer used to read and write the files */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /** Lengths of the raw checksums in bytes */
+    private static final int MD5_LENGTH = 16;
+    private static final int SHA1_LENGTH = 20;
+
+    /** Flags describing how the optional fields of a file are stored */
+    private static final int MD5_RAW = 0x01;
+    private static final int MD5_STRING = 0x02;
+    private static final int SHA1_RAW = 0x04;
+    private static final int SHA1_STRING = 0x08;
+    private static final int HAS_CREATED = 0x10;
+
+    /** The encoding of the strings in the table */
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /** Digits for converting raw checksums back to hex */
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    /**
+     * Constructor, not used
+     */
+    private RevisionStateFile()
+    {
+    }
+
+    /**
+     * Function to check whether a file is in the binary format
+     * @param file The file to check
+     * @return True if the file starts with {@link #MAGIC}, false if it is a JSON file or too short
+     * @throws IOException If the file could not be read
+     */
+    public static boolean isBinary(File file) throws IOException
+    {
+        return readMagic(file) == MAGIC;
+    }
+
+    /**
+     * Function to read the first four bytes of a file, which tell the binary formats apart from JSON
+     * @param file The file to read
+     * @return The first four bytes as a big endian number, or 0 if the file is shorter
+     * @throws IOException If the file could not be read
+     */
+    public static int readMagic(File file) throws IOException
+    {
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try
+        {
+            return in.readInt();
+        }
+        catch (EOFException e)
+        {
+            return 0;
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    /**
+     * Function to write a state to a file
+     * @param state The state to write
+     * @param file The file to write to, replaced if it exists
+     * @throws IOException If the file could not be written
+     */
+    public static void write(ArtifactoryRevisionState state, File file) throws IOException
+    {
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE);
+        try
+        {
+            write(state, out);
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    /**
+     * Function to write a state to a stream
+     * @param state The state to write
+     * @param stream The stream to write to, which is flushed but not closed
+     * @throws IOException If the stream could not be written
+     */
+    public static void write(ArtifactoryRevisionState state, OutputStream stream) throws IOException
+    {
+        // Collect the strings first, so the table can be written before anything that refers to it
+        Map<String, Integer> table = new LinkedHashMap<String, Integer>();
+        addString(table, state.getRepo());
+        addString(table, state.getGroupID());
+        addString(table, state.getArtifactID());
+        for (Artifact artifact : state.getArtifacts())
+        {
+            addString(table, artifact.getVersion());
+            addString(table, artifact.getLastModified());
+            for (Map.Entry<String, FileMetadata> file : sortedFiles(artifact).entrySet())
+            {
+                addString(table, file.getKey());
+                addString(table, file.getValue().getCreated());
+                if (toRaw(file.getValue().getMD5Sum(), MD5_LENGTH) == null)
+                {
+                    addString(table, file.getValue().getMD5Sum());
+                }
+                if (toRaw(file.getValue().getSHA1Sum(), SHA1_LENGTH) == null)
+                {
+                    addString(table, file.getValue().getSHA1Sum());
+                }
+            }
+        }
+
+        DataOutputStream out = new DataOutputStream(stream);
+        out.writeInt(MAGIC);
+        writeVarLong(out, FORMAT_VERSION);
+        writeVarLong(out, table.size());
+        for (String value : table.keySet())
+        {
+            byte[] bytes = value.getBytes(UTF8);
+            writeVarLong(out, bytes.length);
+            out.write(bytes);
+        }
+
+        writeString(out, table, state.getRepo());
+        writeString(out, table, state.getGroupID());
+        writeString(out, table, state.getArtifactID());
+        out.write(DatatypeConverter.parseHexBinary(state.getDigest()));
+        writeVarLong(out, state.getArtifacts().size());
+        for (Artifact artifact : state.getArtifacts())
+        {
+            writeString(out, table, artifact.getVersion());
+            writeString(out, table, artifact.getLastModified());
+            out.write(DatatypeConverter.parseHexBinary(artifact.getDigest()));
+            Map<String, FileMetadata> files = sortedFiles(artifact);
+            writeVarLong(out, files.size());
+            for (Map.Entry<String, FileMetadata> file : files.entrySet())
+            {
+                FileMetadata metadata = file.getValue();
+                byte[] md5 = toRaw(metadata.getMD5Sum(), MD5_LENGTH);
+                byte[] sha1 = toRaw(metadata.getSHA1Sum(), SHA1_LENGTH);
+                int flags = 0;
+                if (md5 != null)
+                {
+                    flags |= MD5_RAW;
+                }
+                else if (metadata.getMD5Sum() != null)
+                {
+                    flags |= MD5_STRING;
+                }
+                if (sha1 != null)
+                {
+                    flags |= SHA1_RAW;
+                }
+                else if (metadata.getSHA1Sum() != null)
+                {
+                    flags |= SHA1_STRING;
+                }
+                if (metadata.getCreated() != null)
+                {
+                    flags |= HAS_CREATED;
+                }
+
+                writeString(out, table, file.getKey());
+                out.writeByte(flags);
+                writeVarLong(out, metadata.getSize());
+                if (md5 != null)
+                {
+                    out.write(md5);
+                }
+                else if (metadata.getMD5Sum() != null)
+                {
+                    writeString(out, table, metadata.getMD5Sum());
+                }
+                if (sha1 != null)
+                {
+                    out.write(sha1);
+                }
+                else if (metadata.getSHA1Sum() != null)
+                {
+                    writeString(out, table, metadata.getSHA1Sum());
+                }
+                if (metadata.getCreated() != null)
+                {
+                    writeString(out, table, metadata.getCreated());
+                }
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * Function to read a state from a binary file
+     * @param file The file to read
+     * @return The state in the file
+     * @throws IOException If the file could not be read or is not a binary state file
+     */
+    public static ArtifactoryRevisionState read(File file) throws IOException
+    {
+        InputStream in = new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE);
+        try
+        {
+            return read(in);
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    /**
+     * Function to read a state from a stream in the binary format
+     * @param stream The stream to read, which is not closed
+     * @return The state in the stream
+     * @throws IOException If the stream could not be read, is not in the binary format or has a newer version
+     */
+    public static ArtifactoryRevisionState read(InputStream stream) throws IOException
+    {
+        DataInputStream in = new DataInputStream(stream);
+        if (in.readInt() != MAGIC)
+        {
+            throw new IOException("Not a binary state file");
+        }
+        long version = readVarLong(in);
+        if (version < 1 || version > FORMAT_VERSION)
+        {
+            throw new IOException("Unsupported state file version: " + version);
+        }
+
+        int tableSize = readCount(in);
+        List<String> table = new ArrayList<String>(tableSize);
+        for (int i = 0; i < tableSize; i++)
+        {
+            byte[] bytes = new byte[readCount(in)];
+            in.readFully(bytes);
+            table.add(new String(bytes, UTF8));
+        }
+
+        String repo = readString(in, table);
+        String groupID = readString(in, table);
+        String artifactID = readString(in, table);
+        String digest = version >= 2 ? readDigest(in) : null;
+        if (version < 3)
+        {
+            digest = null;
+        }
+        int artifactCount = readCount(in);
+        ArrayList<Artifact> artifacts = new ArrayList<Artifact>(artifactCount);
+        for (int i = 0; i < artifactCount; i++)
+        {
+            String artifactVersion = readString(in, table);
+            String lastModified = readString(in, table);
+            String artifactDigest = version >= 2 ? readDigest(in) : null;
+            int fileCount = readCount(in);
+            HashMap<String, FileMetadata> files = new HashMap<String, FileMetadata>();
+            for (int j = 0; j < fileCount; j++)
+            {
+                String name = readString(in, table);
+                int flags = in.readUnsignedByte();
+                long size = readVarLong(in);
+                String md5 = null;
+                String sha1 = null;
+                String created = null;
+                if ((flags & MD5_RAW) != 0)
+                {
+                    md5 = readHex(in, MD5_LENGTH);
+                }
+                else if ((flags & MD5_STRING) != 0)
+                {
+                    md5 = readString(in, table);
+                }
+                if ((flags & SHA1_RAW) != 0)
+                {
+                    sha1 = readHex(in, SHA1_LENGTH);
+                }
+                else if ((flags & SHA1_STRING) != 0)
+                {
+                    sha1 = readString(in, table);
+                }
+                if ((flags & HAS_CREATED) != 0)
+                {
+                    created = readString(in, table);
+                }
+                files.put(name, new FileMetadata(md5, sha1, size, created));
+            }
+            artifacts.add(new Artifact(artifactVersion, files, lastModified, version >= 3 ? artifactDigest : null));
+        }
+
+        return new ArtifactoryRevisionState(repo, groupID, artifactID, artifacts, 0, 0, digest);
+    }
+
+    /**
+     * Function to read a digest
+     * @param in The stream to read from
+     * @return The digest as lower case hex
+     * @throws IOException If the stream could not be read
+     */
+    private static String readDigest(DataInputStream in) throws IOException
+    {
+        byte[] digest = new byte[DIGEST_LENGTH];
+        in.readFully(digest);
+        return ArtifactoryUtils.toHex(digest);
+    }
+
+    /**
+     * Function to get the files of an artifact ordered by name, so equal artifacts are always written 
+     * as the same bytes
+     * @param artifact The artifact
+     * @return The files of the artifact by name
+     */
+    private static Map<String, FileMetadata> sortedFiles(Artifact artifact)
+    {
+        return new TreeMap<String, FileMetadata>(artifact.getFileMetadata());
+    }
+
+    /**
+     * Function to add a string to the string table
+     * @param table The table, mapping each string to its index
+     * @param value The string to add, nothing is added for null
+     */
+    private static void addString(Map<String, Integer> table, String value)
+    {
+        if (value != null && !table.containsKey(value))
+        {
+            table.put(value, table.size());
+        }
+    }
+
+    /**
+     * Function to write a reference to a string in the table. 0 is null, anything else is one more than the index.
+     * @param out The stream to write to
+     * @param table The table, mapping each string to its index
+     * @param value The string to write, may be null
+     * @throws IOException If the stream could not be written
+     */
+    private static void writeString(DataOutputStream out, Map<String, Integer> table, String value) throws IOException
+    {
+        writeVarLong(out, value == null ? 0 : table.get(value) + 1);
+    }
+
+    /**
+     * Function to read a reference to a string in the table, as written by {@link #writeString(DataOutputStream, Map, String)}
+     * @param in The stream to read from
+     * @param table The strings of the table in order
+     * @return The string, may be null
+     * @throws IOException If the stream could not be read or the reference is out of range
+     */
+    private static String readString(DataInputStream in, List<String> table) throws IOException
+    {
+        long reference = readVarLong(in);
+        if (reference == 0)
+        {
+            return null;
+        }
+        if (reference > table.size())
+        {
+            throw new IOException("Invalid string reference: " + reference);
+        }
+        return table.get((int)(reference - 1));
+    }
+
+    /**
+     * Function to write a non negative number in 7 bit groups, least significant first
+     * @param out The stream to write to
+     * @param value The number to write
+     * @throws IOException If the stream could not be written
+     */
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException
+    {
+        while ((value & ~0x7FL) != 0)
+        {
+            out.writeByte((int)((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int)value);
+    }
+
+    /**
+     * Function to read a number written by {@link #writeVarLong(DataOutputStream, long)}
+     * @param in The stream to read from
+     * @return The number
+     * @throws IOException If the stream could not be read or the number is too long
+     */
+    private static long readVarLong(DataInputStream in) throws IOException
+    {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7)
+        {
+            int b = in.readUnsignedByte();
+            value |= (long)(b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+            {
+                return value;
+            }
+        }
+        throw new IOException("Malformed number in state file");
+    }
+
+    /**
+     * Function to read the number of entries that follow
+     * @param in The stream to read from
+     * @return The number of entries
+     * @throws IOException If the stream could not be read or the count is out of range
+     */
+    private static int readCount(DataInputStream in) throws IOException
+    {
+        long count = readVarLong(in);
+        if (count > Integer.MAX_VALUE)
+        {
+            throw new IOException("Invalid count in state file: " + count);
+        }
+        return (int)count;
+    }
+
+    /**
+     * Function to convert a checksum to raw bytes
+     * @param checksum The checksum as hex, may be null
+     * @param length The expected length in bytes
+     * @return The raw bytes, or null if the checksum is not lower case hex of the expected length
+     */
+    private static byte[] toRaw(String checksum, int length)
+    {
+        if (checksum == null || checksum.length() != 2 * length)
+        {
+            return null;
+        }
+        byte[] raw = new byte[length];
+        for (int i = 0; i < length; i++)
+        {
+            int high = hexValue(checksum.charAt(2 * i));
+            int low = hexValue(checksum.charAt(2 * i + 1));
+            if (high < 0 || low < 0)
+            {
+                return null;
+            }
+            raw[i] = (byte)((high << 4) | low);
+        }
+        return raw;
+    }
+
+    /**
+     * Function to get the value of a lower case hex digit
+     * @param c The digit
+     * @return The value of the digit, or -1 if it is not a lower case hex digit
+     */
+    private static int hexValue(char c)
+    {
+        if (c >= '0' && c <= '9')
+        {
+            return c - '0';
+        }
+        if (c >= 'a' && c <= 'f')
+        {
+            return c - 'a' + 10;
+        }
+        return -1;
+    }
+
+    /**
+     * Function to read a raw checksum and convert it back to lower case hex
+     * @param in The stream to read from
+     * @param length The length of the checksum in bytes
+     * @return The checksum as hex
+     * @throws IOException If the stream could not be read
+     */
+    private static String readHex(DataInputStream in, int length) throws IOException
+    {
+        char[] hex = new char[2 * length];
+        for (int i = 0; i < length; i++)
+        {
+            int b = in.readUnsignedByte();
+            hex[2 * i] = HEX_DIGITS[b >> 4];
+            hex[2 * i + 1] = HEX_DIGITS[b & 0x0F];
+        }
+        return new String(hex);
+    }
+}
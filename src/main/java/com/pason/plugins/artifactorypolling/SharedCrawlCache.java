@@ -0,0 +1,339 @@
+// Copyright (c) 2014 Pason Systems, Inc.
+
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+package com.pason.plugins.artifactorypolling;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import static java.util.logging.Level.FINE;
+
+/**
+ * A cache of server states that is shared by every job polling the same artifact.
+ * 
+ * When several jobs poll the same coordinates at once only the first one crawls the server, the 
+ * others wait for its result. The result is then handed to every job that asks for it until it is 
+ * older than the time to live. A crawl that fails is not cached, so the next job crawls again.
+ */
+public class SharedCrawlCache
+{
+    /** Default number of seconds a crawled state is shared */
+    public static final int DEFAULT_TTL = 30;
+
+    /** A Logger for this class */
+    private static final Logger LOGGER = Logger.getLogger(SharedCrawlCache.class.getName());
+
+    /** The number of milliseconds a crawled state is shared */
+    private final long ttl;
+
+    /** The running and finished crawls by their coordinates */
+    private final Map<String, Entry> entries = new HashMap<String, Entry>();
+
+    /** Number of requests answered by a finished or running crawl */
+    private final AtomicLong hits = new AtomicLong();
+
+    /** Number of requests that had to crawl the server */
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Constructor
+     * @param ttl The number of seconds a crawled state is shared
+     */
+    public SharedCrawlCache(int ttl)
+    {
+        this.ttl = ttl * 1000L;
+    }
+
+    /**
+     * Function to build the key of a crawl
+     * @param crawlMode How the server is crawled
+     * @param repo The repository that contains the artifact
+     * @param groupID The group that the artifact belongs to
+     * @param artifactID The name of the artifact
+     * @param versionFilter The filter that versions have to match
+     * @return The key of the crawl
+     */
+    public static String key(CrawlMode crawlMode, String repo, String groupID, String artifactID, String versionFilter)
+    {
+        return crawlMode.name() + "|" + repo + "|" + groupID + "|" + artifactID + "|" + versionFilter;
+    }
+
+    /**
+     * Function to get the state of an artifact on the server. The crawl is only run if there is no 
+     * running crawl for the key and no finished one that is younger than the time to live. If the job that 
+     * runs a shared crawl is interrupted, the jobs waiting for it run the crawl again.
+     * @param key The key of the crawl, see {@link #key(CrawlMode, String, String, String, String)}
+     * @param crawl The crawl to run
+     * @return The state on the server
+     * @throws IOException If the crawl failed
+     * @throws InterruptedException If the calling thread was interrupted
+     */
+    public ArtifactoryRevisionState get(String key, Callable<ArtifactoryRevisionState> crawl) throws IOException, InterruptedException
+    {
+        while (true)
+        {
+            Entry entry;
+            boolean owner = false;
+            synchronized (this)
+            {
+                long now = System.currentTimeMillis();
+                removeExpired(now);
+
+                entry = entries.get(key);
+                if (entry == null)
+                {
+                    entry = new Entry(new FutureTask<ArtifactoryRevisionState>(crawl));
+                    entries.put(key, entry);
+                    owner = true;
+                }
+            }
+
+            if (owner)
+            {
+                misses.incrementAndGet();
+                entry.task.run();
+                entry.finish(System.currentTimeMillis());
+            }
+            else
+            {
+                LOGGER.log(FINE, "Sharing crawl of " + key);
+                hits.incrementAndGet();
+            }
+
+            try
+            {
+                return entry.task.get();
+            }
+            catch (ExecutionException e)
+            {
+                synchronized (this)
+                {
+                    if (entries.get(key) == entry)
+                    {
+                        entries.remove(key);
+                    }
+                }
+
+                Throwable cause = e.getCause();
+                if (isInterruption(cause) && !owner)
+                {
+                    // Only the job that ran the crawl was interrupted, so the others crawl again themselves
+                    LOGGER.log(FINE, "Shared crawl of " + key + " was interrupted, crawling again");
+                    continue;
+                }
+
+                if (cause instanceof IOException)
+                {
+                    throw (IOException) cause;
+                }
+                else if (cause instanceof InterruptedException)
+                {
+                    throw (InterruptedException) cause;
+                }
+                else if (cause instanceof RuntimeException)
+                {
+                    throw (RuntimeException) cause;
+                }
+                else if (cause instanceof Error)
+                {
+                    throw (Error) cause;
+                }
+                throw new IOException("Crawl of " + key + " failed: " + cause, cause);
+            }
+        }
+    }
+
+    /**
+     * Function to get the state of an artifact if a finished crawl that is younger than the time to live 
+     * has it. Nothing is crawled and running crawls are not waited for.
+     * @param key The key of the crawl, see {@link #key(CrawlMode, String, String, String, String)}
+     * @return The state on the server, or null if no finished crawl has it
+     * @throws IOException If the finished crawl failed
+     * @throws InterruptedException If the calling thread was interrupted
+     */
+    public ArtifactoryRevisionState peek(String key) throws IOException, InterruptedException
+    {
+        Entry entry;
+        synchronized (this)
+        {
+            removeExpired(System.currentTimeMillis());
+            entry = entries.get(key);
+            if (entry == null || entry.finishedAt == 0)
+            {
+                return null;
+            }
+        }
+
+        try
+        {
+            ArtifactoryRevisionState state = entry.task.get();
+            hits.incrementAndGet();
+            return state;
+        }
+        catch (ExecutionException e)
+        {
+            // Failed crawls are dropped by the job that waits for them, so this one just does not count
+            return null;
+        }
+    }
+
+    /**
+     * Function to share a state that a job read from the server without the cache, e.g. when it read 
+     * every version without finding a change. A crawl that is still running is not replaced.
+     * @param key The key of the crawl, see {@link #key(CrawlMode, String, String, String, String)}
+     * @param state The state on the server
+     */
+    public synchronized void put(String key, final ArtifactoryRevisionState state)
+    {
+        Entry entry = entries.get(key);
+        if (entry != null && entry.finishedAt == 0)
+        {
+            return;
+        }
+
+        entry = new Entry(new FutureTask<ArtifactoryRevisionState>(new Callable<ArtifactoryRevisionState>() {
+            public ArtifactoryRevisionState call()
+            {
+                return state;
+            }
+        }));
+        entry.task.run();
+        entry.finish(System.currentTimeMillis());
+        entries.put(key, entry);
+    }
+
+    /**
+     * Function to drop the running and finished crawls of an artifact, in every crawl mode and for every
+     * version filter. Jobs waiting for a running crawl still get its result.
+     * @param repo The repository that contains the artifact
+     * @param groupID The group that the artifact belongs to
+     * @param artifactID The name of the artifact
+     */
+    public synchronized void invalidate(String repo, String groupID, String artifactID)
+    {
+        String coordinates = "|" + repo + "|" + groupID + "|" + artifactID + "|";
+        Iterator<String> keys = entries.keySet().iterator();
+        while (keys.hasNext())
+        {
+            if (keys.next().contains(coordinates))
+            {
+                keys.remove();
+            }
+        }
+    }
+
+    /**
+     * Getter function for the hits
+     * @return The number of requests answered by a finished or running crawl
+     */
+    public long getHits()
+    {
+        return hits.get();
+    }
+
+    /**
+     * Getter function for the misses
+     * @return The number of requests that had to crawl the server
+     */
+    public long getMisses()
+    {
+        return misses.get();
+    }
+
+    /**
+     * Function to check if a crawl failed because the job that ran it was interrupted. The API reports an 
+     * interrupted retry pause or an aborted request as an InterruptedIOException, but a socket timeout is a 
+     * failure of the server and is not retried.
+     * @param cause Why the crawl failed
+     * @return Whether or not the crawl was interrupted
+     */
+    private static boolean isInterruption(Throwable cause)
+    {
+        return cause instanceof InterruptedException 
+            || (cause instanceof InterruptedIOException && !(cause instanceof SocketTimeoutException));
+    }
+
+    /**
+     * Function to drop the finished crawls that are older than the time to live
+     * @param now The current time
+     */
+    private void removeExpired(long now)
+    {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext())
+        {
+            Entry entry = iterator.next();
+            if (entry.isExpired(now, ttl))
+            {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * A running or finished crawl
+     */
+    private static final class Entry
+    {
+        /** The crawl */
+        private final FutureTask<ArtifactoryRevisionState> task;
+
+        /** When the crawl finished, 0 while it is running */
+        private volatile long finishedAt = 0;
+
+        /**
+         * Constructor
+         * @param task The crawl
+         */
+        Entry(FutureTask<ArtifactoryRevisionState> task)
+        {
+            this.task = task;
+        }
+
+        /**
+         * Function to record that the crawl finished
+         * @param now When the crawl finished
+         */
+        void finish(long now)
+        {
+            finishedAt = now;
+        }
+
+        /**
+         * Function to check if the crawl finished longer than the time to live ago
+         * @param now The current time
+         * @param ttl The time to live in milliseconds
+         * @return Whether or not the entry can be dropped
+         */
+        boolean isExpired(long now, long ttl)
+        {
+            return finishedAt > 0 && now - finishedAt >= ttl;
+        }
+    }
+}
@@ -0,0 +1,175 @@
+// Copyright (c) 2014 Pason Systems, Inc.
+
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+package com.pason.plugins.artifactorypolling;
+
+import hudson.model.AbstractProject;
+import hudson.util.AtomicFileWriter;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+import static java.util.logging.Level.WARNING;
+
+/**
+ * Index of the build that holds the newest state file of each artifact polled by a job.
+ * 
+ * The index is a small properties file in the directory of the job that maps the key of each 
+ * artifact to a build number, so finding the newest state does not walk back through the builds. 
+ * The file is replaced atomically, so a crash while writing leaves the previous index.
+ */
+public class StateIndex
+{
+    /** The name of the index file in the directory of the job */
+    public static final String FILE_NAME = "artifactoryVersions.index";
+
+    /** A Logger for this class */
+    private static final Logger LOGGER = Logger.getLogger(StateIndex.class.getName());
+
+    /** Lock for reading and replacing index files, so concurrent builds do not lose updates */
+    private static final Object LOCK = new Object();
+
+    /** The index file */
+    private final File file;
+
+    /**
+     * Constructor
+     * @param project The job that the index belongs to
+     */
+    public StateIndex(AbstractProject<?,?> project)
+    {
+        this(new File(project.getRootDir(), FILE_NAME));
+    }
+
+    /**
+     * Constructor
+     * @param file The index file
+     */
+    StateIndex(File file)
+    {
+        this.file = file;
+    }
+
+    /**
+     * Function to get the build that holds the newest state file of an artifact
+     * @param key The key of the artifact
+     * @return The number of the build, or -1 if the index has no build for the artifact
+     */
+    public int get(String key)
+    {
+        synchronized (LOCK)
+        {
+            String number = load().getProperty(key);
+            if (number == null)
+            {
+                return -1;
+            }
+            try
+            {
+                return Integer.parseInt(number);
+            }
+            catch (NumberFormatException e)
+            {
+                LOGGER.log(WARNING, "Invalid build number in " + file + ": " + number);
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * Function to record that a build holds the newest state file of an artifact
+     * @param key The key of the artifact
+     * @param number The number of the build
+     * @param onlyIfNewer Whether to keep the current build when it is newer than this one
+     * @throws IOException If the index could not be written
+     */
+    public void put(String key, int number, boolean onlyIfNewer) throws IOException
+    {
+        synchronized (LOCK)
+        {
+            Properties index = load();
+            String current = index.getProperty(key);
+            if (String.valueOf(number).equals(current))
+            {
+                return;
+            }
+            if (onlyIfNewer && current != null)
+            {
+                try
+                {
+                    if (Integer.parseInt(current) > number)
+                    {
+                        return;
+                    }
+                }
+                catch (NumberFormatException e)
+                {
+                    // Replaced below
+                }
+            }
+            index.setProperty(key, String.valueOf(number));
+
+            AtomicFileWriter writer = new AtomicFileWriter(file);
+            try
+            {
+                index.store(writer, "Builds holding the newest artifactory state of each artifact");
+                writer.commit();
+            }
+            finally
+            {
+                writer.abort();
+            }
+        }
+    }
+
+    /**
+     * Function to read the index file
+     * @return The index, empty if the file does not exist or could not be read
+     */
+    private Properties load()
+    {
+        Properties index = new Properties();
+        if (!file.exists())
+        {
+            return index;
+        }
+        try
+        {
+            InputStream in = new FileInputStream(file);
+            try
+            {
+                index.load(in);
+            }
+            finally
+            {
+                in.close();
+            }
+        }
+        catch (IOException e)
+        {
+            LOGGER.log(WARNING, "Caught IOException reading: " + file + " " + e.getMessage());
+        }
+        return index;
+    }
+}
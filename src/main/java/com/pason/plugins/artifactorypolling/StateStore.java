@@ -0,0 +1,754 @@
+// Copyright (c) 2014 Pason Systems, Inc.
+
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+package com.pason.plugins.artifactorypolling;
+
+import hudson.model.AbstractProject;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Logger;
+
+import javax.xml.bind.DatatypeConverter;
+
+import org.apache.commons.io.FileUtils;
+
+import static java.util.logging.Level.FINE;
+import static java.util.logging.Level.WARNING;
+
+/**
+ * Job level store of the states kept with the builds of the job.
+ * 
+ * Each version of an artifact is stored once as a chunk in the format of {@link RevisionStateFile}, 
+ * named by the SHA-1 of its content. The versions file of a build is a small manifest that lists the 
+ * chunks of its state, so a build only writes the versions that no earlier build wrote. The store 
+ * counts the manifests that refer to each chunk, and deletes a chunk when the last build that refers 
+ * to it is deleted. Versions that a build takes over unchanged from the state of an earlier build reuse 
+ * that build's chunks without being encoded again.
+ * 
+ * The counts are kept in memory. A change of the counts only appends the chunks that it touched to a 
+ * journal, which is folded into the references file once it is longer than the file.
+ */
+public class StateStore
+{
+    /** The name of the store directory in the directory of the job */
+    public static final String DIRECTORY_NAME = "artifactoryStates";
+
+    /** The first bytes of a manifest, "APSM" */
+    public static final int MANIFEST_MAGIC = 0x4150534D;
+
+    /** 
+     * The version of the manifest format that is written. Version 2 added the digest of the state. 
+     * Version 3 digests cover both checksums of each file, so the digests of version 2 are computed again.
+     */
+    public static final int MANIFEST_VERSION = 3;
+
+    /** The name of the file with the number of references to each chunk */
+    private static final String REFERENCES_FILE = "references.properties";
+
+    /** The name of the journal of the reference count changes made since the references file was written */
+    private static final String JOURNAL_FILE = "references.log";
+
+    /** The number of journal entries that are always kept before the journal is folded into the references file */
+    private static final int MIN_JOURNAL_ENTRIES = 1000;
+
+    /** The length of a chunk hash in bytes */
+    private static final int HASH_LENGTH = 20;
+
+    /** The maximum number of chunks kept in memory */
+    private static final int MAX_CACHED_CHUNKS = 10000;
+
+    /** A Logger for this class */
+    private static final Logger LOGGER = Logger.getLogger(StateStore.class.getName());
+
+    /** The reference counts of each store directory, which are also its lock so concurrent builds of a job do not lose references */
+    private static final ConcurrentMap<File, References> REFERENCES = new ConcurrentHashMap<File, References>();
+
+    /** 
+     * Recently read chunks by their hash. A chunk is named by the hash of its content and never changes, 
+     * so every store that has a chunk of that name has the same version in it, and the stores can share 
+     * the cache without a bound of their own. A store whose versions push the chunks of other stores out 
+     * only makes them read the chunks from disk again. Whether a store still has a chunk is always checked 
+     * on disk, so chunks are left in the cache when a store deletes them.
+     */
+    private static final Map<String, Artifact> CHUNKS = Collections.synchronizedMap(
+        new LinkedHashMap<String, Artifact>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Artifact> eldest)
+            {
+                return size() > MAX_CACHED_CHUNKS;
+            }
+        });
+
+    /** The store directory */
+    private final File directory;
+
+    /** The reference counts, shared by every instance for the same directory */
+    private final References references;
+
+    /**
+     * Constructor
+     * @param directory The store directory, created when the first chunk is written
+     */
+    public StateStore(File directory)
+    {
+        this.directory = directory;
+
+        References newReferences = new References(directory);
+        References existing = REFERENCES.putIfAbsent(directory.getAbsoluteFile(), newReferences);
+        this.references = existing != null ? existing : newReferences;
+    }
+
+    /**
+     * Function to get the store of a job
+     * @param project The job
+     * @return The store in the directory of the job
+     */
+    public static StateStore forProject(AbstractProject<?,?> project)
+    {
+        return new StateStore(new File(project.getRootDir(), DIRECTORY_NAME));
+    }
+
+    /**
+     * Getter function
+     * @return The store directory
+     */
+    public File getDirectory()
+    {
+        return directory;
+    }
+
+    /**
+     * Function to check whether a file is a manifest
+     * @param file The file to check
+     * @return True if the file starts with {@link #MANIFEST_MAGIC}
+     * @throws IOException If the file could not be read
+     */
+    public static boolean isManifest(File file) throws IOException
+    {
+        return RevisionStateFile.readMagic(file) == MANIFEST_MAGIC;
+    }
+
+    /**
+     * Function to write a state into the store, with a manifest that refers to it
+     * @param state The state to write
+     * @param manifest The manifest file to write. The references of a manifest that is replaced are released.
+     * @throws IOException If the chunks or the manifest could not be written
+     */
+    public void write(ArtifactoryRevisionState state, File manifest) throws IOException
+    {
+        write(state, manifest, null);
+    }
+
+    /**
+     * Function to write a state into the store, with a manifest that refers to it
+     * @param state The state to write
+     * @param manifest The manifest file to write. The references of a manifest that is replaced are released.
+     * @param previous The manifest of the state that this state was derived from, may be null or a file in another format. 
+     *                 The versions that were taken over from it unchanged reuse its chunks.
+     * @throws IOException If the chunks or the manifest could not be written
+     */
+    public void write(ArtifactoryRevisionState state, File manifest, File previous) throws IOException
+    {
+        // The checkout of the build is being retried
+        List<String> replaced = manifest.exists() && isManifest(manifest) 
+            ? readManifestHashes(manifest) : Collections.<String>emptyList();
+
+        // The artifacts read from the previous manifest are the objects that are cached for its chunks
+        Map<Artifact, String> reusable = new IdentityHashMap<Artifact, String>();
+        if (previous != null && previous.exists() && isManifest(previous))
+        {
+            for (String hash : readManifestHashes(previous))
+            {
+                Artifact artifact = CHUNKS.get(hash);
+                if (artifact != null)
+                {
+                    reusable.put(artifact, hash);
+                }
+            }
+        }
+
+        List<String> hashes = new ArrayList<String>(state.getArtifacts().size());
+        synchronized (references)
+        {
+            // Chunks and references are written before the manifest, so a failure can leave an 
+            // unused chunk behind but never a manifest that refers to a missing chunk
+            for (Artifact artifact : state.getArtifacts())
+            {
+                String hash = reusable.get(artifact);
+                if (hash == null || !getChunkFile(hash).exists())
+                {
+                    byte[] chunk = encode(artifact);
+                    hash = hash(chunk);
+                    File chunkFile = getChunkFile(hash);
+                    if (!chunkFile.exists())
+                    {
+                        LOGGER.log(FINE, "Writing chunk " + hash + " for version " + artifact.getVersion());
+                        writeAtomically(chunkFile, chunk);
+                    }
+                }
+                CHUNKS.put(hash, artifact);
+                hashes.add(hash);
+            }
+
+            deleteChunks(references.update(hashes, replaced));
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MANIFEST_MAGIC);
+        out.writeByte(MANIFEST_VERSION);
+        writeNullableString(out, state.getRepo());
+        writeNullableString(out, state.getGroupID());
+        writeNullableString(out, state.getArtifactID());
+        out.write(DatatypeConverter.parseHexBinary(state.getDigest()));
+        out.writeInt(hashes.size());
+        for (String hash : hashes)
+        {
+            out.write(DatatypeConverter.parseHexBinary(hash));
+        }
+        out.flush();
+        writeAtomically(manifest, bytes.toByteArray());
+    }
+
+    /**
+     * Function to read the state that a manifest refers to
+     * @param manifest The manifest file
+     * @return The state
+     * @throws IOException If the manifest or one of its chunks could not be read
+     */
+    public ArtifactoryRevisionState read(File manifest) throws IOException
+    {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(manifest)));
+        try
+        {
+            int version = readManifestHeader(in);
+            String repo = readNullableString(in);
+            String groupID = readNullableString(in);
+            String artifactID = readNullableString(in);
+            String digest = version >= 2 ? readHash(in) : null;
+            if (version < 3)
+            {
+                digest = null;
+            }
+            List<String> hashes = readHashes(in);
+
+            ArrayList<Artifact> artifacts = new ArrayList<Artifact>(hashes.size());
+            for (String hash : hashes)
+            {
+                artifacts.add(readChunk(hash));
+            }
+            return new ArtifactoryRevisionState(repo, groupID, artifactID, artifacts, 0, 0, digest);
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    /**
+     * Function to drop the references of a manifest, when the build that holds it is deleted. 
+     * Chunks that no other manifest refers to are deleted.
+     * @param manifest The manifest file, which is left in place
+     * @throws IOException If the manifest could not be read or the references could not be written
+     */
+    public void release(File manifest) throws IOException
+    {
+        List<String> hashes = readManifestHashes(manifest);
+        synchronized (references)
+        {
+            deleteChunks(references.update(Collections.<String>emptyList(), hashes));
+        }
+    }
+
+    /**
+     * Function to delete chunks that are no longer referred to
+     * @param hashes The hashes of the chunks
+     */
+    private void deleteChunks(List<String> hashes)
+    {
+        for (String hash : hashes)
+        {
+            LOGGER.log(FINE, "Deleting unreferenced chunk " + hash);
+            getChunkFile(hash).delete();
+        }
+    }
+
+    /**
+     * Function to read the hashes of the chunks that a manifest refers to
+     * @param manifest The manifest file
+     * @return The hashes, in the order of the versions
+     * @throws IOException If the manifest could not be read
+     */
+    private static List<String> readManifestHashes(File manifest) throws IOException
+    {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(manifest)));
+        try
+        {
+            int version = readManifestHeader(in);
+            readNullableString(in);
+            readNullableString(in);
+            readNullableString(in);
+            if (version >= 2)
+            {
+                readHash(in);
+            }
+            return readHashes(in);
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    /**
+     * Function to get the file of a chunk
+     * @param hash The hash of the chunk
+     * @return The file in the store directory
+     */
+    private File getChunkFile(String hash)
+    {
+        return new File(directory, hash);
+    }
+
+    /**
+     * Function to read a chunk, from memory if it was read recently
+     * @param hash The hash of the chunk
+     * @return The version of the artifact in the chunk
+     * @throws IOException If the chunk could not be read
+     */
+    private Artifact readChunk(String hash) throws IOException
+    {
+        Artifact artifact = CHUNKS.get(hash);
+        if (artifact == null)
+        {
+            ArtifactoryRevisionState chunk = RevisionStateFile.read(getChunkFile(hash));
+            if (chunk.getArtifacts().size() != 1)
+            {
+                throw new IOException("Invalid chunk " + hash);
+            }
+            artifact = chunk.getArtifacts().get(0);
+            CHUNKS.put(hash, artifact);
+        }
+        return artifact;
+    }
+
+    /**
+     * Function to encode a version of an artifact as a chunk
+     * @param artifact The version of the artifact
+     * @return The content of the chunk
+     * @throws IOException If the chunk could not be encoded
+     */
+    private static byte[] encode(Artifact artifact) throws IOException
+    {
+        ArrayList<Artifact> artifacts = new ArrayList<Artifact>(1);
+        artifacts.add(artifact);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        RevisionStateFile.write(new ArtifactoryRevisionState(null, null, null, artifacts), bytes);
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Function to compute the name of a chunk
+     * @param chunk The content of the chunk
+     * @return The SHA-1 of the content as lower case hex
+     */
+    private static String hash(byte[] chunk)
+    {
+        return ArtifactoryUtils.toHex(ArtifactoryUtils.newSHA1().digest(chunk));
+    }
+
+    /**
+     * Function to write a file by renaming a temporary file over it, so readers never see part of it
+     * @param file The file to write
+     * @param content The content of the file
+     * @throws IOException If the file could not be written
+     */
+    private static void writeAtomically(File file, byte[] content) throws IOException
+    {
+        File parent = file.getAbsoluteFile().getParentFile();
+        parent.mkdirs();
+        File temp = File.createTempFile("write", ".tmp", parent);
+        try
+        {
+            OutputStream out = new BufferedOutputStream(new FileOutputStream(temp));
+            try
+            {
+                out.write(content);
+            }
+            finally
+            {
+                out.close();
+            }
+            if (!temp.renameTo(file))
+            {
+                // Renaming over an existing file fails on some platforms
+                FileUtils.forceDelete(file);
+                if (!temp.renameTo(file))
+                {
+                    throw new IOException("Could not rename " + temp + " to " + file);
+                }
+            }
+        }
+        finally
+        {
+            temp.delete();
+        }
+    }
+
+    /**
+     * Function to check the start of a manifest
+     * @param in The manifest
+     * @return The version of the manifest
+     * @throws IOException If the stream is not a manifest or has a newer version
+     */
+    private static int readManifestHeader(DataInputStream in) throws IOException
+    {
+        if (in.readInt() != MANIFEST_MAGIC)
+        {
+            throw new IOException("Not a state manifest");
+        }
+        int version = in.readUnsignedByte();
+        if (version < 1 || version > MANIFEST_VERSION)
+        {
+            throw new IOException("Unsupported state manifest version: " + version);
+        }
+        return version;
+    }
+
+    /**
+     * Function to read the chunk hashes of a manifest
+     * @param in The manifest, positioned at the hashes
+     * @return The hashes as lower case hex
+     * @throws IOException If the hashes could not be read
+     */
+    private static List<String> readHashes(DataInputStream in) throws IOException
+    {
+        int count = in.readInt();
+        if (count < 0)
+        {
+            throw new IOException("Invalid chunk count in state manifest: " + count);
+        }
+        List<String> hashes = new ArrayList<String>(count);
+        for (int i = 0; i < count; i++)
+        {
+            hashes.add(readHash(in));
+        }
+        return hashes;
+    }
+
+    /**
+     * Function to read a SHA-1 hash
+     * @param in The stream to read from
+     * @return The hash as lower case hex
+     * @throws IOException If the stream could not be read
+     */
+    private static String readHash(DataInputStream in) throws IOException
+    {
+        byte[] hash = new byte[HASH_LENGTH];
+        in.readFully(hash);
+        return ArtifactoryUtils.toHex(hash);
+    }
+
+    /**
+     * Function to write a string that may be null
+     * @param out The stream to write to
+     * @param value The string
+     * @throws IOException If the stream could not be written
+     */
+    private static void writeNullableString(DataOutputStream out, String value) throws IOException
+    {
+        out.writeBoolean(value != null);
+        if (value != null)
+        {
+            out.writeUTF(value);
+        }
+    }
+
+    /**
+     * Function to read a string written by {@link #writeNullableString(DataOutputStream, String)}
+     * @param in The stream to read from
+     * @return The string, may be null
+     * @throws IOException If the stream could not be read
+     */
+    private static String readNullableString(DataInputStream in) throws IOException
+    {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    /**
+     * The number of manifests that refer to each chunk of a store directory
+     */
+    private static final class References
+    {
+        /** The store directory */
+        private final File directory;
+
+        /** The number of references by the hash of the chunk, null until they are read */
+        private Map<String, Integer> counts;
+
+        /** The number of entries in the journal */
+        private int journalEntries;
+
+        /**
+         * Constructor
+         * @param directory The store directory
+         */
+        References(File directory)
+        {
+            this.directory = directory;
+        }
+
+        /**
+         * Function to add a reference to some chunks and drop one from others. Only the changed counts are 
+         * appended to the journal. Callers have to hold the lock of this object.
+         * @param added The hashes of the chunks that gained a reference
+         * @param removed The hashes of the chunks that lost a reference
+         * @return The hashes of the chunks that are no longer referred to
+         * @throws IOException If the counts could not be read or written
+         */
+        List<String> update(List<String> added, List<String> removed) throws IOException
+        {
+            Map<String, Integer> counts = load();
+
+            // A rewritten manifest mostly refers to the chunks it replaces, which leaves their counts alone
+            Map<String, Integer> changes = new LinkedHashMap<String, Integer>();
+            for (String hash : added)
+            {
+                changes.put(hash, getCount(changes, hash) + 1);
+            }
+            for (String hash : removed)
+            {
+                changes.put(hash, getCount(changes, hash) - 1);
+            }
+
+            StringBuilder journal = new StringBuilder();
+            Map<String, Integer> updated = new HashMap<String, Integer>();
+            List<String> unreferenced = new ArrayList<String>();
+            for (Map.Entry<String, Integer> change : changes.entrySet())
+            {
+                if (change.getValue() == 0)
+                {
+                    continue;
+                }
+                journal.append(change.getKey()).append(' ').append(change.getValue()).append('\n');
+                int count = getCount(counts, change.getKey()) + change.getValue();
+                updated.put(change.getKey(), count);
+                if (count <= 0)
+                {
+                    unreferenced.add(change.getKey());
+                }
+            }
+            if (updated.isEmpty())
+            {
+                return unreferenced;
+            }
+
+            // The journal is written first, so the counts in memory never get ahead of the ones on disk
+            appendJournal(journal.toString());
+            journalEntries += updated.size();
+            for (Map.Entry<String, Integer> count : updated.entrySet())
+            {
+                if (count.getValue() > 0)
+                {
+                    counts.put(count.getKey(), count.getValue());
+                }
+                else
+                {
+                    counts.remove(count.getKey());
+                }
+            }
+
+            if (journalEntries > Math.max(MIN_JOURNAL_ENTRIES, counts.size()))
+            {
+                compact(counts);
+            }
+            return unreferenced;
+        }
+
+        /**
+         * Function to get the counts, which are read from the references file and the journal when they are 
+         * first needed, or when the store directory was deleted since then
+         * @return The number of references by the hash of the chunk
+         * @throws IOException If the counts could not be read
+         */
+        private Map<String, Integer> load() throws IOException
+        {
+            File referencesFile = new File(directory, REFERENCES_FILE);
+            File journalFile = new File(directory, JOURNAL_FILE);
+            if (counts != null && (counts.isEmpty() || referencesFile.exists() || journalFile.exists()))
+            {
+                return counts;
+            }
+
+            Map<String, Integer> loaded = new HashMap<String, Integer>();
+            if (referencesFile.exists())
+            {
+                Properties references = new Properties();
+                InputStream in = new FileInputStream(referencesFile);
+                try
+                {
+                    references.load(in);
+                }
+                finally
+                {
+                    in.close();
+                }
+                for (String hash : references.stringPropertyNames())
+                {
+                    addCount(loaded, hash, references.getProperty(hash));
+                }
+            }
+
+            if (journalFile.exists())
+            {
+                BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(journalFile), "UTF-8"));
+                try
+                {
+                    String line;
+                    while ((line = reader.readLine()) != null)
+                    {
+                        int separator = line.indexOf(' ');
+                        if (separator < 0)
+                        {
+                            // The last entry may have been cut short by a crash
+                            LOGGER.log(WARNING, "Invalid reference journal entry in " + journalFile + ": " + line);
+                            continue;
+                        }
+                        addCount(loaded, line.substring(0, separator), line.substring(separator + 1));
+                    }
+                }
+                finally
+                {
+                    reader.close();
+                }
+
+                // Start from a new journal, so no entry is appended to one that a crash cut short
+                compact(loaded);
+            }
+
+            counts = loaded;
+            return counts;
+        }
+
+        /**
+         * Function to append entries to the journal
+         * @param entries The entries, one per line
+         * @throws IOException If the journal could not be written
+         */
+        private void appendJournal(String entries) throws IOException
+        {
+            directory.mkdirs();
+            OutputStream out = new FileOutputStream(new File(directory, JOURNAL_FILE), true);
+            try
+            {
+                out.write(entries.getBytes("UTF-8"));
+            }
+            finally
+            {
+                out.close();
+            }
+        }
+
+        /**
+         * Function to fold the journal into the references file
+         * @param counts The number of references by the hash of the chunk
+         * @throws IOException If the references file could not be written
+         */
+        private void compact(Map<String, Integer> counts) throws IOException
+        {
+            Properties references = new Properties();
+            for (Map.Entry<String, Integer> count : counts.entrySet())
+            {
+                references.setProperty(count.getKey(), String.valueOf(count.getValue()));
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            references.store(bytes, "Number of build manifests that refer to each chunk");
+            writeAtomically(new File(directory, REFERENCES_FILE), bytes.toByteArray());
+
+            new File(directory, JOURNAL_FILE).delete();
+            journalEntries = 0;
+        }
+
+        /**
+         * Function to add to the count of a chunk
+         * @param counts The number of references by the hash of the chunk
+         * @param hash The hash of the chunk
+         * @param value The number to add, as read from a file
+         */
+        private static void addCount(Map<String, Integer> counts, String hash, String value)
+        {
+            int count;
+            try
+            {
+                count = getCount(counts, hash) + Integer.parseInt(value.trim());
+            }
+            catch (NumberFormatException e)
+            {
+                LOGGER.log(WARNING, "Invalid reference count for chunk " + hash);
+                return;
+            }
+
+            if (count > 0)
+            {
+                counts.put(hash, count);
+            }
+            else
+            {
+                counts.remove(hash);
+            }
+        }
+
+        /**
+         * Function to get the count of a chunk
+         * @param counts The number of references by the hash of the chunk
+         * @param hash The hash of the chunk
+         * @return The count, 0 if it is unknown
+         */
+        private static int getCount(Map<String, Integer> counts, String hash)
+        {
+            Integer count = counts.get(hash);
+            return count != null ? count : 0;
+        }
+    }
+}
@@ -0,0 +1,164 @@
+// Copyright (c) 2014 Pason Systems, Inc.
+
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+package com.pason.plugins.artifactorypolling;
+
+import net.sf.json.JSONException;
+import net.sf.json.JSONObject;
+
+/**
+ * Class that represents a change to a file or folder that artifactory reported through a webhook.
+ * 
+ * Payloads of the built-in webhooks of artifactory look like:
+ *   {
+ *      "domain": "artifact",
+ *      "event_type": "deployed",
+ *      "data": {
+ *          "repo_key": "libs-release-local",
+ *          "path": "org/acme/lib/1.0/lib-1.0.jar",
+ *          "name": "lib-1.0.jar",
+ *          "size": 1024,
+ *          "sha256": string
+ *      }
+ *   }
+ * Payloads of the webhook user plugin look like:
+ *   {
+ *      "artifactory": {
+ *          "webhook": {
+ *              "event": "storage.afterCreate",
+ *              "data": {
+ *                  "repoPath": { "repoKey": "libs-release-local", "path": "org/acme/lib/1.0/lib-1.0.jar" }
+ *              }
+ *          }
+ *      }
+ *   }
+ */
+public final class WebhookEvent
+{
+    /** The type of the event as reported by artifactory */
+    private final String type;
+
+    /** The repository that contains the changed path */
+    private final String repo;
+
+    /** The changed path within the repository, without leading or trailing '/' */
+    private final String path;
+
+    /**
+     * Constructor
+     * @param type The type of the event
+     * @param repo The repository that contains the changed path
+     * @param path The changed path within the repository
+     */
+    public WebhookEvent(String type, String repo, String path)
+    {
+        this.type = type;
+        this.repo = repo;
+        this.path = trimSlashes(path);
+    }
+
+    /**
+     * Function to parse the payload of a webhook
+     * @param payload The JSON payload
+     * @return The event, or null if the payload does not describe a change to a path
+     */
+    public static WebhookEvent fromJSON(String payload)
+    {
+        JSONObject json;
+        try
+        {
+            json = JSONObject.fromObject(payload);
+        }
+        catch (JSONException e)
+        {
+            return null;
+        }
+
+        JSONObject data = json.optJSONObject("data");
+        if (data != null && data.has("repo_key") && data.has("path"))
+        {
+            return new WebhookEvent(json.optString("event_type", "unknown"), data.getString("repo_key"), data.getString("path"));
+        }
+
+        JSONObject artifactory = json.optJSONObject("artifactory");
+        JSONObject webhook = artifactory != null ? artifactory.optJSONObject("webhook") : null;
+        data = webhook != null ? webhook.optJSONObject("data") : null;
+        JSONObject repoPath = data != null ? data.optJSONObject("repoPath") : null;
+        if (repoPath != null && repoPath.has("repoKey") && repoPath.has("path"))
+        {
+            return new WebhookEvent(webhook.optString("event", "unknown"), repoPath.getString("repoKey"), repoPath.getString("path"));
+        }
+
+        return null;
+    }
+
+    /**
+     * Getter function for the type
+     * @return The type of the event as reported by artifactory
+     */
+    public String getType()
+    {
+        return type;
+    }
+
+    /**
+     * Getter function for the repo
+     * @return The repository that contains the changed path
+     */
+    public String getRepo()
+    {
+        return repo;
+    }
+
+    /**
+     * Getter function for the path
+     * @return The changed path within the repository, without leading or trailing '/'
+     */
+    public String getPath()
+    {
+        return path;
+    }
+
+    @Override
+    public String toString()
+    {
+        return type + " " + repo + "/" + path;
+    }
+
+    /**
+     * Function to remove the leading and trailing '/' of a path
+     * @param path The path
+     * @return The path without leading or trailing '/'
+     */
+    private static String trimSlashes(String path)
+    {
+        int start = 0;
+        int end = path.length();
+        while (start < end && path.charAt(start) == '/')
+        {
+            start++;
+        }
+        while (end > start && path.charAt(end - 1) == '/')
+        {
+            end--;
+        }
+        return path.substring(start, end);
+    }
+}
@@ -0,0 +1,201 @@
+package com.pason.plugins.artifactorypolling;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ArtifactoryAPITest {
+
+    private StubArtifactoryServer server;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        server = new StubArtifactoryServer();
+    }
+
+    @After
+    public void tearDown()
+    {
+        server.stop();
+    }
+
+    @Test
+    public void testConditionalGetReusesCachedResponse() throws Exception
+    {
+        ArtifactoryConnection connection = new ArtifactoryConnection(server.getURL(), 2, 2, 0, 10, 1, true);
+        ArtifactoryAPI api = new ArtifactoryAPI(connection);
+        server.respond("api/storage/libs/org/acme/lib/1.0/lib-1.0.jar", 
+            "{\"size\": \"10\", \"checksums\": {\"md5\": \"m1\", \"sha1\": \"s1\"}}", "\"etag-1\"");
+
+        try
+        {
+            FileMetadata first = api.getFileMetadata("libs", "org.acme", "lib", "1.0", "lib-1.0.jar");
+            FileMetadata second = api.getFileMetadata("libs", "org.acme", "lib", "1.0", "lib-1.0.jar");
+
+            assertEquals("m1", first.getMD5Sum());
+            assertSame(first, second);
+            assertEquals(2, server.getRequests().size());
+            assertEquals(1, connection.getResponseCache().getHits());
+            assertEquals(1, connection.getResponseCache().getMisses());
+        }
+        finally
+        {
+            connection.close();
+        }
+    }
+
+    @Test
+    public void testCompressedResponsesAreCounted() throws Exception
+    {
+        ArtifactoryConnection connection = new ArtifactoryConnection(server.getURL(), 2, 2, 0, 0, 1, true);
+        ArtifactoryAPI api = new ArtifactoryAPI(connection);
+        StringBuilder children = new StringBuilder();
+        for (int i = 0; i < 200; i++)
+        {
+            children.append(i == 0 ? "" : ",").append("{\"uri\": \"/1.0.").append(i).append("\", \"folder\": true}");
+        }
+        server.respond("api/storage/libs/org/acme/lib/", "{\"children\": [" + children + "]}");
+        server.setCompress(true);
+
+        try
+        {
+            assertEquals(200, api.getArtifactVersions("libs", "org.acme", "lib", "+").size());
+            assertTrue(connection.getBytesReceived() > 0);
+            assertTrue(connection.getBytesReceived() < connection.getBytesDecoded());
+        }
+        finally
+        {
+            connection.close();
+        }
+    }
+
+    @Test
+    public void testServerErrorsAreRetried() throws Exception
+    {
+        CircuitBreaker breaker = new CircuitBreaker(server.getURL(), 5, 60);
+        ArtifactoryConnection connection = new ArtifactoryConnection(server.getURL(), 2, 2, 0, 0, 1, true, 2, breaker);
+        ArtifactoryAPI api = new ArtifactoryAPI(connection);
+        server.respond("api/storage/libs/org/acme/lib/", "{\"children\": [{\"uri\": \"/1.0\", \"folder\": true}]}");
+        server.fail("api/storage/libs/org/acme/lib/", 503, 2);
+
+        try
+        {
+            assertEquals(1, api.getArtifactVersions("libs", "org.acme", "lib", "+").size());
+            assertEquals(3, server.getRequests().size());
+            assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        }
+        finally
+        {
+            connection.close();
+        }
+    }
+
+    @Test
+    public void testMalformedResponseIsNotRetried() throws Exception
+    {
+        CircuitBreaker breaker = new CircuitBreaker(server.getURL(), 1, 60);
+        ArtifactoryConnection connection = new ArtifactoryConnection(server.getURL(), 2, 2, 0, 0, 1, true, 2, breaker);
+        ArtifactoryAPI api = new ArtifactoryAPI(connection);
+        server.respond("api/storage/libs/org/acme/lib/", "{\"children\": [{\"uri\": ");
+
+        try
+        {
+            api.getArtifactVersions("libs", "org.acme", "lib", "+");
+            fail("Expected the malformed response to be reported");
+        }
+        catch (ArtifactoryException e)
+        {
+            // The server answered, so neither a retry nor the breaker would help
+            assertEquals(200, e.getStatus());
+            assertEquals(1, server.getRequests().size());
+            assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+            assertEquals(0, breaker.getFailures());
+        }
+        finally
+        {
+            connection.close();
+        }
+    }
+
+    @Test
+    public void testOutageIsNotAnEmptyResponse() throws Exception
+    {
+        CircuitBreaker breaker = new CircuitBreaker(server.getURL(), 2, 60);
+        ArtifactoryConnection connection = new ArtifactoryConnection(server.getURL(), 2, 2, 0, 0, 1, true, 0, breaker);
+        ArtifactoryAPI api = new ArtifactoryAPI(connection);
+        server.fail("api/storage/libs/org/acme/lib/", 503, 10);
+
+        try
+        {
+            for (int i = 0; i < 3; i++)
+            {
+                try
+                {
+                    api.getArtifactVersions("libs", "org.acme", "lib", "+");
+                    fail("Expected the outage to be reported");
+                }
+                catch (ArtifactoryException e)
+                {
+                    // expected
+                }
+            }
+
+            // The third call is rejected by the open breaker without reaching the server
+            assertEquals(2, server.getRequests().size());
+            assertTrue(breaker.isOpen());
+        }
+        finally
+        {
+            connection.close();
+        }
+    }
+
+    @Test
+    public void testMissingResourceReturnsDefault() throws Exception
+    {
+        ArtifactoryAPI api = new ArtifactoryAPI(server.getURL());
+
+        try
+        {
+            assertTrue(api.getArtifactVersions("libs", "org.acme", "missing", "+").isEmpty());
+            assertNull(api.getFileMetadata("libs", "org.acme", "missing", "1.0", "missing-1.0.jar"));
+        }
+        finally
+        {
+            api.close();
+        }
+    }
+
+    @Test
+    public void testAsyncRequests() throws Exception
+    {
+        ArtifactoryConnection connection = new ArtifactoryConnection(server.getURL(), 2, 2, 0, 0, 2, true);
+        ArtifactoryAPI api = new ArtifactoryAPI(connection);
+        server.respond("api/storage/libs/org/acme/lib/", 
+            "{\"children\": [{\"uri\": \"/1.0\", \"folder\": true}, {\"uri\": \"/2.0\", \"folder\": true}]}");
+        server.respond("api/storage/libs/org/acme/lib/1.0/lib-1.0.jar", 
+            "{\"size\": \"10\", \"checksums\": {\"md5\": \"m1\", \"sha1\": \"s1\"}}");
+
+        try
+        {
+            ListenableFuture<List<String>> versions = api.getArtifactVersionsAsync("libs", "org.acme", "lib", "+");
+            ListenableFuture<FileMetadata> metadata = api.getFileMetadataAsync("libs", "org.acme", "lib", "1.0", "lib-1.0.jar");
+            ListenableFuture<FileMetadata> missing = api.getFileMetadataAsync("libs", "org.acme", "lib", "1.0", "lib-1.0.pom");
+
+            assertEquals(Arrays.asList("1.0", "2.0"), ArtifactoryAPI.await(versions));
+            assertEquals("s1", ArtifactoryAPI.await(metadata).getSHA1Sum());
+            assertNull(ArtifactoryAPI.await(missing));
+        }
+        finally
+        {
+            connection.close();
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.pason.plugins.artifactorypolling;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ArtifactoryCheckoutActionTest {
+
+    private static final ArtifactCoordinate COORDINATE = new ArtifactCoordinate("libs", "org.acme", "lib", "+", null);
+
+    private static ArtifactoryRevisionState createState(String... versions)
+    {
+        Artifact[] artifacts = new Artifact[versions.length];
+        for (int i = 0; i < versions.length; i++)
+        {
+            HashMap<String, FileMetadata> metadata = new HashMap<String, FileMetadata>();
+            metadata.put("lib-" + versions[i] + ".jar", new FileMetadata("m" + versions[i], "s" + versions[i], 10));
+            artifacts[i] = new Artifact(versions[i], metadata);
+        }
+        return new ArtifactoryRevisionState("libs", "org.acme", "lib", Arrays.asList(artifacts));
+    }
+
+    @Test
+    public void testPolledChangesOnlyApplyToTheirBaseline()
+    {
+        ArtifactoryRevisionState baseline = createState("1.0");
+        ArtifactoryRevisionState server = createState("1.0", "2.0");
+        RevisionStateDiff diff = RevisionStateDiff.compute(baseline, server);
+
+        ArtifactoryCheckoutAction polled = new ArtifactoryCheckoutAction(
+            Collections.singletonMap(COORDINATE.getKey(), diff.getCheckoutArtifact()), 
+            Collections.singletonMap(COORDINATE.getKey(), diff), 
+            Collections.singletonMap(COORDINATE.getKey(), baseline.getDigest()));
+
+        assertTrue(polled.isBasedOn(COORDINATE, createState("1.0")));
+
+        // A build checked out 2.0 since the poll, or the job has not been built yet
+        assertFalse(polled.isBasedOn(COORDINATE, server));
+        assertFalse(polled.isBasedOn(COORDINATE, ArtifactoryRevisionState.BASE));
+    }
+
+    @Test
+    public void testRecordedCheckoutsHaveNoBaseline()
+    {
+        ArtifactoryCheckoutAction recorded = new ArtifactoryCheckoutAction(
+            Collections.singletonMap(COORDINATE.getKey(), createState("1.0").getArtifacts().get(0)));
+        assertFalse(recorded.isBasedOn(COORDINATE, createState("1.0")));
+    }
+}
@@ -0,0 +1,46 @@
+package com.pason.plugins.artifactorypolling;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.List;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ArtifactoryJsonDecoderTest {
+
+    private static InputStream stream(String json) throws Exception
+    {
+        return new ByteArrayInputStream(json.getBytes("UTF-8"));
+    }
+
+    @Test
+    public void testReadFolderInfo() throws Exception
+    {
+        FolderInfo folder = ArtifactoryJsonDecoder.readFolderInfo(stream(
+            "{\"repo\": \"libs\", \"path\": \"/org/acme/lib\", \"lastModified\": \"2014-01-01T00:00:00.000Z\","
+            + " \"children\": [{\"uri\": \"/1.0\", \"folder\": true}, {\"uri\": \"/maven-metadata.xml\", \"folder\": false}],"
+            + " \"uri\": \"http://localhost/artifactory/api/storage/libs/org/acme/lib\"}"));
+
+        List<FolderChild> children = folder.getChildren();
+        assertEquals("2014-01-01T00:00:00.000Z", folder.getLastModified());
+        assertEquals(2, children.size());
+        assertEquals("1.0", children.get(0).getName());
+        assertTrue(children.get(0).isFolder());
+        assertEquals("maven-metadata.xml", children.get(1).getName());
+        assertFalse(children.get(1).isFolder());
+    }
+
+    @Test
+    public void testReadFileMetadata() throws Exception
+    {
+        FileMetadata metadata = ArtifactoryJsonDecoder.readFileMetadata(stream(
+            "{\"repo\": \"libs\", \"size\": \"1024\", \"mimeType\": \"application/java-archive\", \"created\": \"2014-01-20T15:21:43.221-07:00\","
+            + " \"checksums\": {\"sha1\": \"s1\", \"md5\": \"m1\"}, \"originalChecksums\": {\"sha1\": \"s0\", \"md5\": \"m0\"}}"));
+
+        assertEquals(1024, metadata.getSize());
+        assertEquals("m1", metadata.getMD5Sum());
+        assertEquals("s1", metadata.getSHA1Sum());
+        assertEquals(1390256503221L, metadata.getCreatedTime());
+    }
+}
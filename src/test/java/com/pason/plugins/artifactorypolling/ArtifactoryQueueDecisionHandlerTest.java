@@ -0,0 +1,33 @@
+package com.pason.plugins.artifactorypolling;
+
+import hudson.model.Action;
+import hudson.model.Cause;
+import hudson.model.CauseAction;
+import hudson.triggers.SCMTrigger;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ArtifactoryQueueDecisionHandlerTest {
+
+    @Test
+    public void testOnlyPollsAttachChanges()
+    {
+        List<Action> actions = new ArrayList<Action>();
+        assertFalse(ArtifactoryQueueDecisionHandler.isTriggeredByPoll(actions));
+
+        actions.add(new CauseAction(new Cause() {
+            public String getShortDescription()
+            {
+                return "Started by user";
+            }
+        }));
+        assertFalse(ArtifactoryQueueDecisionHandler.isTriggeredByPoll(actions));
+
+        actions.add(new CauseAction(new SCMTrigger.SCMTriggerCause("")));
+        assertTrue(ArtifactoryQueueDecisionHandler.isTriggeredByPoll(actions));
+    }
+}
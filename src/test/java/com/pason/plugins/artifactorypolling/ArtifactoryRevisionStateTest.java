@@ -0,0 +1,264 @@
+package com.pason.plugins.artifactorypolling;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ArtifactoryRevisionStateTest {
+
+    private StubArtifactoryServer server;
+    private ArtifactoryAPI api;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        server = new StubArtifactoryServer();
+        api = new ArtifactoryAPI(server.getURL());
+    }
+
+    @After
+    public void tearDown()
+    {
+        api.close();
+        server.stop();
+    }
+
+    @Test
+    public void testFromAQL() throws Exception
+    {
+        server.respond("api/search/aql", "{\"results\": ["
+            + "{\"repo\": \"libs\", \"path\": \"org/acme/lib/1.0\", \"name\": \"lib-1.0.jar\", \"size\": 10, \"actual_md5\": \"m1\", \"actual_sha1\": \"s1\"},"
+            + "{\"repo\": \"libs\", \"path\": \"org/acme/lib/1.0/docs\", \"name\": \"index.html\", \"size\": 20, \"actual_md5\": \"m2\", \"actual_sha1\": \"s2\"},"
+            + "{\"repo\": \"libs\", \"path\": \"org/acme/lib/2.0\", \"name\": \"lib-2.0.jar\", \"size\": 30, \"actual_md5\": \"m3\", \"actual_sha1\": \"s3\"}"
+            + "], \"range\": {\"start_pos\": 0, \"end_pos\": 3, \"total\": 3}}");
+
+        ArtifactoryRevisionState state = ArtifactoryRevisionState.fromServer("libs", "org.acme", "lib", "+", api, CrawlMode.AQL);
+
+        assertEquals(1, server.getRequests().size());
+        assertEquals("POST /artifactory/api/search/aql", server.getRequests().get(0));
+        assertTrue(server.getBodies().get(0).contains("org/acme/lib/*"));
+
+        assertEquals(2, state.getArtifacts().size());
+        Artifact first = state.getVersion("1.0");
+        assertEquals(2, first.getFileMetadata().size());
+        assertEquals("m1", first.getFileMetadata().get("lib-1.0.jar").getMD5Sum());
+        assertEquals("s2", first.getFileMetadata().get("docs/index.html").getSHA1Sum());
+        assertEquals(30, state.getVersion("2.0").getFileMetadata().get("lib-2.0.jar").getSize());
+    }
+
+    @Test
+    public void testFromAQLAppliesVersionFilter() throws Exception
+    {
+        server.respond("api/search/aql", "{\"results\": ["
+            + "{\"path\": \"org/acme/lib/1.0\", \"name\": \"lib-1.0.jar\", \"size\": 10, \"actual_md5\": \"m1\", \"actual_sha1\": \"s1\"},"
+            + "{\"path\": \"org/acme/lib/2.0\", \"name\": \"lib-2.0.jar\", \"size\": 30, \"actual_md5\": \"m3\", \"actual_sha1\": \"s3\"}"
+            + "]}");
+
+        ArtifactoryRevisionState state = ArtifactoryRevisionState.fromServer("libs", "org.acme", "lib", "2.+", api, CrawlMode.AQL);
+
+        assertEquals(1, state.getArtifacts().size());
+        assertNotNull(state.getVersion("2.0"));
+    }
+
+    @Test
+    public void testFromAQLForSeveralArtifacts() throws Exception
+    {
+        server.respond("api/search/aql", "{\"results\": ["
+            + "{\"repo\": \"libs\", \"path\": \"org/acme/lib/1.0\", \"name\": \"lib-1.0.jar\", \"size\": 10, \"actual_md5\": \"m1\", \"actual_sha1\": \"s1\"},"
+            + "{\"repo\": \"libs\", \"path\": \"org/acme/tool/3.0\", \"name\": \"tool-3.0.jar\", \"size\": 20, \"actual_md5\": \"m2\", \"actual_sha1\": \"s2\"},"
+            + "{\"repo\": \"staging\", \"path\": \"org/acme/lib/2.0\", \"name\": \"lib-2.0.jar\", \"size\": 30, \"actual_md5\": \"m3\", \"actual_sha1\": \"s3\"}"
+            + "]}");
+
+        ArtifactCoordinate lib = new ArtifactCoordinate("libs", "org.acme", "lib", "+", null);
+        ArtifactCoordinate tool = new ArtifactCoordinate("libs", "org.acme", "tool", "2.+", null);
+        ArtifactCoordinate stagedLib = new ArtifactCoordinate("staging", "org.acme", "lib", "", "staged");
+        Map<String, ArtifactoryRevisionState> states = ArtifactoryRevisionState.fromServer(Arrays.asList(lib, tool, stagedLib), api);
+
+        // A single query for every artifact
+        assertEquals(1, server.getRequests().size());
+        assertTrue(server.getBodies().get(0).contains("$or"));
+        assertTrue(server.getBodies().get(0).contains("org/acme/tool/*"));
+
+        assertEquals(1, states.get(lib.getKey()).getArtifacts().size());
+        assertNotNull(states.get(lib.getKey()).getVersion("1.0"));
+        assertTrue(states.get(tool.getKey()).getArtifacts().isEmpty());
+        assertNotNull(states.get(stagedLib.getKey()).getVersion("2.0"));
+        assertEquals("staging", states.get(stagedLib.getKey()).getRepo());
+
+        assertEquals("tool", tool.getLocalPath());
+        assertEquals("+", stagedLib.getVersionFilter());
+    }
+
+    @Test
+    public void testModifiedFilesAreComparedWithBaseline() throws Exception
+    {
+        server.respond("api/search/aql", "{\"results\": ["
+            + "{\"path\": \"org/acme/lib/1.0\", \"name\": \"lib-1.0.jar\", \"size\": 10, \"actual_md5\": \"m1\", \"actual_sha1\": \"s1\"},"
+            + "{\"path\": \"org/acme/lib/2.0\", \"name\": \"lib-2.0.jar\", \"size\": 30, \"actual_md5\": \"m3\", \"actual_sha1\": \"s3\"}"
+            + "]}");
+        ArtifactoryRevisionState baseline = ArtifactoryRevisionState.fromServer("libs", "org.acme", "lib", "+", api, CrawlMode.AQL);
+
+        // Files that the previous poll already saw are not a change
+        server.respond("api/search/aql", "{\"results\": ["
+            + "{\"path\": \"org/acme/lib/2.0\", \"name\": \"lib-2.0.jar\", \"size\": 30, \"actual_md5\": \"m3\", \"actual_sha1\": \"s3\"}"
+            + "]}");
+        List<RemoteFile> modified = api.searchModifiedFiles("libs", "org.acme", "lib", 1390256503221L);
+        assertTrue(server.getBodies().get(1).contains("\"$gt\":\"2014-01-20T22:21:43.221Z\""));
+        assertTrue(ArtifactoryRevisionState.containsFiles(baseline, modified, "+"));
+
+        // A republished file is
+        server.respond("api/search/aql", "{\"results\": ["
+            + "{\"path\": \"org/acme/lib/2.0\", \"name\": \"lib-2.0.jar\", \"size\": 30, \"actual_md5\": \"m4\", \"actual_sha1\": \"s4\"}"
+            + "]}");
+        modified = api.searchModifiedFiles("libs", "org.acme", "lib", 1390256503221L);
+        assertFalse(ArtifactoryRevisionState.containsFiles(baseline, modified, "+"));
+        assertTrue(ArtifactoryRevisionState.containsFiles(baseline, modified, "1.+"));
+
+        // A server without AQL can't be searched
+        server.respond("api/search/aql", null);
+        assertNull(api.searchModifiedFiles("libs", "org.acme", "lib", 1390256503221L));
+
+        assertEquals(0, baseline.getWatermark());
+        assertEquals(1000L, baseline.withWatermark(1000L).getWatermark());
+        assertEquals(baseline.getFullCrawlTime(), baseline.withWatermark(1000L).getFullCrawlTime());
+    }
+
+    @Test
+    public void testFromDeepList() throws Exception
+    {
+        server.respond("api/storage/libs/org/acme/lib/?list&deep=1&listFolders=0", "{\"uri\": \"" + server.getURL() + "api/storage/libs/org/acme/lib\", \"files\": ["
+            + "{\"uri\": \"/maven-metadata.xml\", \"size\": 5, \"folder\": false, \"sha1\": \"s0\"},"
+            + "{\"uri\": \"/1.0/lib-1.0.jar\", \"size\": 10, \"folder\": false, \"sha1\": \"s1\"},"
+            + "{\"uri\": \"/1.0/docs/index.html\", \"size\": 20, \"folder\": false, \"sha1\": \"s2\"},"
+            + "{\"uri\": \"/2.0/lib-2.0.jar\", \"size\": 30, \"folder\": false, \"sha1\": \"s3\"}"
+            + "]}");
+
+        ArtifactoryRevisionState state = ArtifactoryRevisionState.fromServer("libs", "org.acme", "lib", "+", api, CrawlMode.DEEP_LIST);
+
+        assertEquals(1, server.getRequests().size());
+        assertEquals(2, state.getArtifacts().size());
+        assertEquals("s2", state.getVersion("1.0").getFileMetadata().get("docs/index.html").getSHA1Sum());
+        assertNull(state.getVersion("1.0").getFileMetadata().get("lib-1.0.jar").getMD5Sum());
+        assertEquals(30, state.getVersion("2.0").getFileMetadata().get("lib-2.0.jar").getSize());
+    }
+
+    @Test
+    public void testFromStorageInParallel() throws Exception
+    {
+        ArtifactoryConnection connection = new ArtifactoryConnection(server.getURL(), 4, 4, 0, 0, 4, true);
+        ArtifactoryAPI parallelAPI = new ArtifactoryAPI(connection);
+        server.respond("api/storage/libs/org/acme/lib/", "{\"children\": [{\"uri\": \"/2.0\", \"folder\": true}, {\"uri\": \"/1.0\", \"folder\": true}]}");
+        for (String version : new String[] {"1.0", "2.0"})
+        {
+            server.respond("api/storage/libs/org/acme/lib/" + version + "/", "{\"children\": ["
+                + "{\"uri\": \"/lib-" + version + ".jar\", \"folder\": false}, {\"uri\": \"/lib-" + version + ".pom\", \"folder\": false}]}");
+            for (String extension : new String[] {"jar", "pom"})
+            {
+                server.respond("api/storage/libs/org/acme/lib/" + version + "/lib-" + version + "." + extension, 
+                    "{\"size\": \"1\", \"checksums\": {\"md5\": \"" + version + extension + "\", \"sha1\": \"s\"}}");
+            }
+        }
+
+        try
+        {
+            ArtifactoryRevisionState state = ArtifactoryRevisionState.fromServer("libs", "org.acme", "lib", "+", parallelAPI, CrawlMode.STORAGE);
+
+            assertEquals(7, server.getRequests().size());
+            assertEquals("2.0", state.getArtifacts().get(0).getVersion());
+            assertEquals("1.0", state.getArtifacts().get(1).getVersion());
+            assertEquals("1.0pom", state.getVersion("1.0").getFileMetadata().get("lib-1.0.pom").getMD5Sum());
+            assertEquals("2.0jar", state.getVersion("2.0").getFileMetadata().get("lib-2.0.jar").getMD5Sum());
+        }
+        finally
+        {
+            connection.close();
+        }
+    }
+
+    @Test
+    public void testCompareManyVersions()
+    {
+        ArrayList<Artifact> artifacts = new ArrayList<Artifact>();
+        for (int i = 0; i < 5000; i++)
+        {
+            HashMap<String, FileMetadata> files = new HashMap<String, FileMetadata>();
+            files.put("lib-" + i + ".jar", new FileMetadata("m" + i, "s" + i, i));
+            artifacts.add(new Artifact(String.valueOf(i), files));
+        }
+        ArtifactoryRevisionState stateA = new ArtifactoryRevisionState("libs", "org.acme", "lib", artifacts);
+        ArtifactoryRevisionState stateB = new ArtifactoryRevisionState("libs", "org.acme", "lib", stateA.addOrReplaceArtifact(
+            new Artifact("5000", new HashMap<String, FileMetadata>())));
+
+        assertSame(artifacts.get(1234), stateA.getVersion("1234"));
+        assertSame(stateA.getArtifacts(), stateA.getArtifacts());
+        assertNull(ArtifactoryRevisionState.compareRevisionStates(stateA, stateB));
+        assertEquals("5000", ArtifactoryRevisionState.compareRevisionStates(stateB, stateA).getVersion());
+
+        try
+        {
+            stateA.getArtifacts().clear();
+            fail("The artifacts of a state can not be modified");
+        }
+        catch (UnsupportedOperationException e)
+        {
+            assertEquals(5000, stateA.getArtifacts().size());
+        }
+    }
+
+    @Test
+    public void testDigests()
+    {
+        HashMap<String, FileMetadata> files = new HashMap<String, FileMetadata>();
+        files.put("lib-1.0.jar", new FileMetadata("m1", "s1", 10));
+        files.put("lib-1.0.pom", new FileMetadata("m2", "s2", 20));
+        Artifact first = new Artifact("1.0", files);
+        Artifact second = new Artifact("2.0", new HashMap<String, FileMetadata>());
+
+        ArtifactoryRevisionState state = new ArtifactoryRevisionState("libs", "org.acme", "lib", Arrays.asList(first, second));
+        ArtifactoryRevisionState reordered = new ArtifactoryRevisionState("libs", "org.acme", "lib", 
+            Arrays.asList(second, new Artifact("1.0", new HashMap<String, FileMetadata>(files))));
+        assertEquals(state.getDigest(), reordered.getDigest());
+        assertEquals(40, state.getDigest().length());
+
+        files.put("lib-1.0.pom", new FileMetadata("m2", "changed", 20));
+        Artifact changed = new Artifact("1.0", files);
+        assertFalse(first.getDigest().equals(changed.getDigest()));
+        ArtifactoryRevisionState changedState = new ArtifactoryRevisionState("libs", "org.acme", "lib", Arrays.asList(changed, second));
+        assertFalse(state.getDigest().equals(changedState.getDigest()));
+        assertSame(changed, ArtifactoryRevisionState.compareRevisionStates(changedState, state));
+    }
+
+    private static Artifact createArtifact(String md5, String sha1)
+    {
+        HashMap<String, FileMetadata> files = new HashMap<String, FileMetadata>();
+        files.put("lib-1.0.jar", new FileMetadata(md5, sha1, 10));
+        return new Artifact("1.0", files);
+    }
+
+    @Test
+    public void testDigestsCoverBothChecksums()
+    {
+        // The same SHA-1 is the same content, so a different MD5 only makes the files be compared
+        Artifact artifact = createArtifact("m1", "s1");
+        Artifact otherMD5 = createArtifact("m2", "s1");
+        assertFalse(artifact.getDigest().equals(otherMD5.getDigest()));
+        assertTrue(ArtifactoryRevisionState.isContainedIn(artifact, otherMD5));
+
+        // Without the SHA-1 of one side the MD5s are compared, and they differ
+        Artifact withoutSHA1 = createArtifact("m2", null);
+        assertFalse(artifact.getDigest().equals(withoutSHA1.getDigest()));
+        assertFalse(ArtifactoryRevisionState.isContainedIn(artifact, withoutSHA1));
+        assertFalse(RevisionStateDiff.compute(
+            new ArtifactoryRevisionState("libs", "org.acme", "lib", Arrays.asList(artifact)), 
+            new ArtifactoryRevisionState("libs", "org.acme", "lib", Arrays.asList(withoutSHA1))).isEmpty());
+
+        assertEquals(artifact.getDigest(), createArtifact("m1", "s1").getDigest());
+    }
+}
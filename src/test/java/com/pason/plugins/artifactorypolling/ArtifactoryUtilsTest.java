@@ -11,4 +11,12 @@ public class ArtifactoryUtilsTest {
         assertTrue(!ArtifactoryUtils.isVersionDynamic("3.20.2.0"));
         assertTrue(ArtifactoryUtils.isVersionDynamic("+"));
     }   
+
+    @Test
+    public void testMatchesVersionFilter(){
+        assertTrue(ArtifactoryUtils.matchesVersionFilter("3.20.2.1", "3.20.2.+"));
+        assertTrue(ArtifactoryUtils.matchesVersionFilter("3.20.2.1", "+"));
+        assertFalse(ArtifactoryUtils.matchesVersionFilter("3.21.0.1", "3.20.+"));
+        assertTrue(ArtifactoryUtils.matchesVersionFilter("3.20.2.0", "3.20.2.0"));
+    }
 }
\ No newline at end of file
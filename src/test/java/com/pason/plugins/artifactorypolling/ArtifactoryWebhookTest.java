@@ -0,0 +1,43 @@
+package com.pason.plugins.artifactorypolling;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ArtifactoryWebhookTest {
+
+    @Test
+    public void testTokenIsRequired()
+    {
+        assertFalse(ArtifactoryWebhook.isValidToken("", null));
+        assertFalse(ArtifactoryWebhook.isValidToken("", ""));
+        assertFalse(ArtifactoryWebhook.isValidToken(null, "anything"));
+    }
+
+    @Test
+    public void testConfiguredTokenHasToMatch()
+    {
+        assertTrue(ArtifactoryWebhook.isValidToken("s3cret", "s3cret"));
+        assertFalse(ArtifactoryWebhook.isValidToken("s3cret", null));
+        assertFalse(ArtifactoryWebhook.isValidToken("s3cret", "s3cre"));
+        assertFalse(ArtifactoryWebhook.isValidToken("s3cret", "S3CRET"));
+    }
+
+    @Test
+    public void testPollsAreCoalescedPerJob()
+    {
+        ArtifactoryWebhook webhook = new ArtifactoryWebhook();
+
+        assertEquals(0, webhook.getPollDelay("job", 1000));
+        assertEquals(0, webhook.getPollDelay("other", 1000));
+
+        // The payloads of a burst arm a single poll at the end of the interval
+        assertEquals(ArtifactoryWebhook.POLL_INTERVAL - 500, webhook.getPollDelay("job", 1500));
+        assertEquals(-1, webhook.getPollDelay("job", 2000));
+
+        long end = 1000 + ArtifactoryWebhook.POLL_INTERVAL;
+        webhook.delayedPollStarted("job", end);
+        assertEquals(ArtifactoryWebhook.POLL_INTERVAL - 1, webhook.getPollDelay("job", end + 1));
+        webhook.delayedPollStarted("job", 2 * end);
+        assertEquals(0, webhook.getPollDelay("job", 2 * end + ArtifactoryWebhook.POLL_INTERVAL));
+    }
+}
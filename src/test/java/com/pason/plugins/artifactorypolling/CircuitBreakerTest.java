@@ -0,0 +1,84 @@
+package com.pason.plugins.artifactorypolling;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class CircuitBreakerTest {
+
+    @Test
+    public void testOpensAfterConsecutiveFailures()
+    {
+        CircuitBreaker breaker = new CircuitBreaker("server", 3, 60);
+
+        breaker.recordFailure();
+        breaker.recordFailure();
+        breaker.recordSuccess();
+        breaker.recordFailure();
+        breaker.recordFailure();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.allowRequest());
+
+        breaker.recordFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertTrue(breaker.isOpen());
+        assertFalse(breaker.allowRequest());
+    }
+
+    @Test
+    public void testLetsOneProbeThroughAfterOpenDuration()
+    {
+        CircuitBreaker breaker = new CircuitBreaker("server", 1, 0);
+
+        breaker.recordFailure();
+        assertFalse(breaker.isOpen());
+        assertTrue(breaker.allowRequest());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertTrue(breaker.isOpen());
+        assertFalse(breaker.allowRequest());
+
+        breaker.recordSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(0, breaker.getFailures());
+    }
+
+    @Test
+    public void testFailedProbeReopens()
+    {
+        CircuitBreaker breaker = new CircuitBreaker("server", 1, 0);
+
+        breaker.recordFailure();
+        assertTrue(breaker.allowRequest());
+        breaker.recordFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    public void testZeroThresholdNeverOpens()
+    {
+        CircuitBreaker breaker = new CircuitBreaker("server", 0, 60);
+
+        for (int i = 0; i < 100; i++)
+        {
+            breaker.recordFailure();
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void testLostProbeFreesTheSlot() throws Exception
+    {
+        CircuitBreaker breaker = new CircuitBreaker("server", 1, 0, 50);
+
+        breaker.recordFailure();
+        assertTrue(breaker.allowRequest());
+        assertFalse(breaker.allowRequest());
+
+        // The probe never reports back
+        Thread.sleep(100);
+        assertFalse(breaker.isOpen());
+        assertTrue(breaker.allowRequest());
+        assertFalse(breaker.allowRequest());
+        breaker.recordSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+}
@@ -0,0 +1,41 @@
+package com.pason.plugins.artifactorypolling;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class CoordinateIndexTest {
+
+    @Test
+    public void testFindsJobsOfPath()
+    {
+        CoordinateIndex index = new CoordinateIndex();
+        index.put("lib-job", Collections.singletonList(new String[] { "libs", "org.acme", "lib" }));
+        index.put("other-job", Collections.singletonList(new String[] { "libs", "org.acme", "other" }));
+        index.put("tests", Collections.singletonList(new String[] { "libs", "org.acme", "lib" }));
+
+        assertEquals(new TreeSet<String>(Arrays.asList("lib-job", "tests")), index.find("libs", "org/acme/lib/1.0/lib-1.0.jar"));
+        assertEquals(new TreeSet<String>(Arrays.asList("lib-job", "tests")), index.find("libs", "org/acme/lib"));
+        assertTrue(index.find("libs", "org/acme").isEmpty());
+        assertTrue(index.find("snapshots", "org/acme/lib/1.0/lib-1.0.jar").isEmpty());
+    }
+
+    @Test
+    public void testReconfiguredJobIsMoved()
+    {
+        CoordinateIndex index = new CoordinateIndex();
+        index.put("job", Collections.singletonList(new String[] { "libs", "org.acme", "lib" }));
+        index.put("job", Collections.singletonList(new String[] { "libs", "org.acme", "other" }));
+
+        assertTrue(index.find("libs", "org/acme/lib/1.0").isEmpty());
+        Set<String> found = index.find("libs", "org/acme/other/1.0");
+        assertEquals(Collections.singleton("job"), found);
+
+        index.remove("job");
+        assertTrue(index.find("libs", "org/acme/other/1.0").isEmpty());
+    }
+}
@@ -0,0 +1,100 @@
+package com.pason.plugins.artifactorypolling;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class LazyServerStateTest {
+
+    private StubArtifactoryServer server;
+    private ArtifactoryAPI api;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        server = new StubArtifactoryServer();
+        api = new ArtifactoryAPI(server.getURL());
+        server.respond("api/storage/libs/org/acme/lib/", "{\"children\": [{\"uri\": \"/1.0\", \"folder\": true}]}");
+        server.respond("api/storage/libs/org/acme/lib/1.0/", "{\"children\": [{\"uri\": \"/lib-1.0.jar\", \"folder\": false}]}");
+        server.respond("api/storage/libs/org/acme/lib/1.0/lib-1.0.jar", 
+            "{\"size\": \"10\", \"checksums\": {\"md5\": \"m1\", \"sha1\": \"s1\"}}");
+    }
+
+    @After
+    public void tearDown()
+    {
+        api.close();
+        server.stop();
+    }
+
+    private static Artifact artifact(String version, String... files)
+    {
+        HashMap<String, FileMetadata> metadata = new HashMap<String, FileMetadata>();
+        for (String file : files)
+        {
+            metadata.put(file, new FileMetadata("m1", "s1", 10));
+        }
+        return new Artifact(version, metadata);
+    }
+
+    private static ArtifactoryRevisionState state(Artifact... artifacts)
+    {
+        return new ArtifactoryRevisionState("libs", "org.acme", "lib", new ArrayList<Artifact>(Arrays.asList(artifacts)));
+    }
+
+    @Test
+    public void testUnchangedServerHasNoChange() throws Exception
+    {
+        LazyServerState lazyState = new LazyServerState("libs", "org.acme", "lib", "+", api);
+        ArtifactoryRevisionState baseline = state(artifact("1.0", "lib-1.0.jar"));
+
+        assertNull(lazyState.findChange(baseline, null));
+        assertEquals(1, lazyState.toRevisionState(null).getArtifacts().size());
+    }
+
+    @Test
+    public void testDeletedFileBuildsTheServerVersion() throws Exception
+    {
+        LazyServerState lazyState = new LazyServerState("libs", "org.acme", "lib", "+", api);
+        ArtifactoryRevisionState baseline = state(artifact("1.0", "lib-1.0.jar", "lib-1.0.pom"));
+
+        Artifact change = lazyState.findChange(baseline, null);
+        assertEquals("1.0", change.getVersion());
+        assertEquals(Arrays.asList("lib-1.0.jar"), new ArrayList<String>(change.getFileMetadata().keySet()));
+    }
+
+    @Test
+    public void testRemovedVersionOnlyUpdatesTheBaseline() throws Exception
+    {
+        LazyServerState lazyState = new LazyServerState("libs", "org.acme", "lib", "+", api);
+        ArtifactoryRevisionState baseline = state(artifact("0.9", "lib-0.9.jar"), artifact("1.0", "lib-1.0.jar"));
+
+        assertNull(lazyState.findChange(baseline, null));
+        List<Artifact> artifacts = lazyState.toRevisionState(null).getArtifacts();
+        assertEquals(1, artifacts.size());
+        assertEquals("1.0", artifacts.get(0).getVersion());
+    }
+
+    @Test
+    public void testLegacyBaselineIsNotAChange() throws Exception
+    {
+        // Builds from before several artifacts could be polled recorded the state of one artifact
+        ArtifactCoordinate coordinate = new ArtifactCoordinate("libs", "org.acme", "lib", "+", "");
+        ArtifactoryRevisionState legacy = state(artifact("1.0", "lib-1.0.jar"));
+        CombinedRevisionState baseline = CombinedRevisionState.fromBaseline(legacy, Arrays.asList(coordinate));
+        assertSame(legacy, baseline.getState(coordinate));
+
+        LazyServerState lazyState = new LazyServerState("libs", "org.acme", "lib", "+", api);
+        assertNull(lazyState.findChange(baseline.getState(coordinate), null));
+        assertTrue(RevisionStateDiff.compute(baseline.getState(coordinate), lazyState.toRevisionState(null)).isEmpty());
+
+        ArtifactCoordinate other = new ArtifactCoordinate("libs", "org.acme", "other", "+", "");
+        assertSame(CombinedRevisionState.EMPTY, CombinedRevisionState.fromBaseline(legacy, Arrays.asList(other)));
+    }
+}
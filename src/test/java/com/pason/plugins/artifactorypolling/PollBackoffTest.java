@@ -0,0 +1,113 @@
+package com.pason.plugins.artifactorypolling;
+
+import java.util.Collections;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class PollBackoffTest {
+
+    private static final long MINUTE = 60 * 1000L;
+    private static final long DAY = 24 * 60 * MINUTE;
+    private static final String KEY = ArtifactCoordinate.key("libs", "org.acme", "lib", "+");
+    private static final String JOB = "job";
+
+    @Test
+    public void testQuietArtifactBacksOffUpToMaximum()
+    {
+        PollBackoff backoff = new PollBackoff(30);
+        long now = 100 * DAY;
+        long published = now - 90 * DAY;
+
+        backoff.recordPoll(JOB, KEY, now, published, false);
+        assertEquals(MINUTE, backoff.getBackoff(JOB, KEY));
+        assertTrue(backoff.shouldSkip(JOB, KEY, now + MINUTE / 2));
+        assertFalse(backoff.shouldSkip(JOB, KEY, now + MINUTE));
+
+        for (int i = 0; i < 10; i++)
+        {
+            backoff.recordPoll(JOB, KEY, now, published, false);
+        }
+        assertEquals(30 * MINUTE, backoff.getBackoff(JOB, KEY));
+    }
+
+    @Test
+    public void testRecentlyPublishedArtifactStaysFast()
+    {
+        PollBackoff backoff = new PollBackoff(30);
+        long now = 100 * DAY;
+
+        for (int i = 0; i < 10; i++)
+        {
+            backoff.recordPoll(JOB, KEY, now, now - 4 * MINUTE, false);
+        }
+        assertEquals(2 * MINUTE, backoff.getBackoff(JOB, KEY));
+    }
+
+    @Test
+    public void testChangeSnapsBack()
+    {
+        PollBackoff backoff = new PollBackoff(30);
+        long now = 100 * DAY;
+        long published = now - 90 * DAY;
+        for (int i = 0; i < 10; i++)
+        {
+            backoff.recordPoll(JOB, KEY, now, published, false);
+        }
+
+        backoff.recordPoll(JOB, KEY, now, 0, true);
+        assertEquals(0, backoff.getBackoff(JOB, KEY));
+        assertFalse(backoff.shouldSkip(JOB, KEY, now));
+
+        backoff.recordPoll(JOB, KEY, now, published, false);
+        backoff.recordPoll(JOB, KEY, now, now - MINUTE, false);
+        assertEquals(0, backoff.getBackoff(JOB, KEY));
+    }
+
+    @Test
+    public void testResetPollsAgain()
+    {
+        PollBackoff backoff = new PollBackoff(30);
+        long now = 100 * DAY;
+        backoff.recordPoll(JOB, KEY, now, now - 90 * DAY, false);
+        assertTrue(backoff.shouldSkip(JOB, KEY, now));
+
+        backoff.reset("libs", "org.acme", "lib");
+        assertFalse(backoff.shouldSkip(JOB, KEY, now));
+    }
+
+    @Test
+    public void testJobsBackOffOnTheirOwn()
+    {
+        PollBackoff backoff = new PollBackoff(30);
+        long now = 100 * DAY;
+        backoff.recordPoll(JOB, KEY, now, now - 90 * DAY, false);
+        assertTrue(backoff.shouldSkip(JOB, KEY, now));
+        assertFalse(backoff.shouldSkip("other", KEY, now));
+
+        backoff.recordPoll("other", KEY, now, now - 90 * DAY, false);
+        backoff.reset("libs", "org.acme", "lib");
+        assertFalse(backoff.shouldSkip(JOB, KEY, now));
+        assertFalse(backoff.shouldSkip("other", KEY, now));
+    }
+
+    @Test
+    public void testRemovedJobsAreForgotten()
+    {
+        PollBackoff backoff = new PollBackoff(30);
+        String other = ArtifactCoordinate.key("libs", "org.acme", "other", "+");
+        long now = 100 * DAY;
+        backoff.recordPoll(JOB, KEY, now, now - 90 * DAY, false);
+        backoff.recordPoll(JOB, other, now, now - 90 * DAY, false);
+        backoff.recordPoll("renamed", KEY, now, now - 90 * DAY, false);
+
+        // The job stopped polling the other artifact
+        backoff.retain(JOB, Collections.singletonList(KEY));
+        assertEquals(MINUTE, backoff.getBackoff(JOB, KEY));
+        assertEquals(0, backoff.getBackoff(JOB, other));
+
+        backoff.retain("renamed", Collections.<String>emptyList());
+        assertEquals(0, backoff.getBackoff("renamed", KEY));
+        assertEquals(MINUTE, backoff.getBackoff(JOB, KEY));
+    }
+}
@@ -0,0 +1,88 @@
+package com.pason.plugins.artifactorypolling;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class PollSchedulerTest {
+
+    @Test
+    public void testPerServerLimit() throws Exception
+    {
+        final PollScheduler scheduler = new PollScheduler(2, 1, 0);
+        PollScheduler.Permit first = scheduler.acquire("http://a/");
+        PollScheduler.Permit other = scheduler.acquire("http://b/");
+        assertEquals(2, scheduler.getRunning());
+
+        final CountDownLatch acquired = new CountDownLatch(1);
+        Thread waiting = new Thread(new Runnable() {
+            public void run()
+            {
+                try
+                {
+                    scheduler.acquire("http://a/").release();
+                    acquired.countDown();
+                }
+                catch (InterruptedException e)
+                {
+                    // test failed
+                }
+            }
+        });
+        waiting.start();
+
+        while (scheduler.getQueued() == 0)
+        {
+            Thread.sleep(10);
+        }
+        assertFalse(acquired.await(200, TimeUnit.MILLISECONDS));
+        assertEquals(1, scheduler.getQueued());
+
+        first.release();
+        assertTrue(acquired.await(5, TimeUnit.SECONDS));
+        other.release();
+        assertEquals(0, scheduler.getRunning());
+        assertEquals(0, scheduler.getQueued());
+        assertTrue(scheduler.getMaxWait() >= 200);
+    }
+
+    @Test
+    public void testGlobalLimit() throws Exception
+    {
+        PollScheduler scheduler = new PollScheduler(1, 4, 0);
+        final PollScheduler.Permit first = scheduler.acquire("http://a/");
+
+        new Thread(new Runnable() {
+            public void run()
+            {
+                try
+                {
+                    Thread.sleep(200);
+                }
+                catch (InterruptedException e)
+                {
+                    // release right away
+                }
+                first.release();
+            }
+        }).start();
+
+        long start = System.currentTimeMillis();
+        scheduler.acquire("http://b/").release();
+        assertTrue(System.currentTimeMillis() - start >= 150);
+    }
+
+    @Test
+    public void testReleaseIsIdempotent() throws Exception
+    {
+        PollScheduler scheduler = new PollScheduler(1, 1, 0);
+        PollScheduler.Permit permit = scheduler.acquire("http://a/");
+        permit.release();
+        permit.release();
+        assertEquals(0, scheduler.getRunning());
+
+        scheduler.acquire("http://a/").release();
+    }
+}
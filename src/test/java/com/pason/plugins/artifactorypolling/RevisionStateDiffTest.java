@@ -0,0 +1,129 @@
+package com.pason.plugins.artifactorypolling;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class RevisionStateDiffTest {
+
+    private static Artifact createArtifact(String version, String... files)
+    {
+        HashMap<String, FileMetadata> metadata = new HashMap<String, FileMetadata>();
+        for (int i = 0; i < files.length; i += 2)
+        {
+            metadata.put(files[i], new FileMetadata("m", files[i + 1], 10));
+        }
+        return new Artifact(version, metadata);
+    }
+
+    private static ArtifactoryRevisionState createState(Artifact... artifacts)
+    {
+        return new ArtifactoryRevisionState("libs", "org.acme", "lib", Arrays.asList(artifacts));
+    }
+
+    @Test
+    public void testEqualStates()
+    {
+        ArtifactoryRevisionState state = createState(createArtifact("1.0", "lib-1.0.jar", "s1"));
+        ArtifactoryRevisionState same = createState(createArtifact("1.0", "lib-1.0.jar", "s1"));
+
+        RevisionStateDiff diff = RevisionStateDiff.compute(state, same);
+        assertTrue(diff.isEmpty());
+        assertNull(diff.getCheckoutArtifact());
+    }
+
+    @Test
+    public void testAllChangesInOnePass()
+    {
+        ArtifactoryRevisionState baseline = createState(
+            createArtifact("1.0", "lib-1.0.jar", "s1", "lib-1.0.pom", "s2"),
+            createArtifact("2.0", "lib-2.0.jar", "s3"),
+            createArtifact("3.0", "lib-3.0.jar", "s4"));
+        Artifact added = createArtifact("5.0", "lib-5.0.jar", "s6");
+        ArtifactoryRevisionState state = createState(
+            added,
+            createArtifact("4.0", "lib-4.0.jar", "s5"),
+            createArtifact("1.0", "lib-1.0.jar", "changed", "lib-1.0-sources.jar", "s7"),
+            createArtifact("2.0", "lib-2.0.jar", "s3"));
+
+        RevisionStateDiff diff = RevisionStateDiff.compute(baseline, state);
+        List<RevisionStateDiff.VersionChange> changes = diff.getChanges();
+        assertEquals(4, changes.size());
+        assertEquals(RevisionStateDiff.ChangeType.ADDED, changes.get(0).getType());
+        assertEquals("5.0", changes.get(0).getVersion());
+        assertEquals(RevisionStateDiff.ChangeType.ADDED, changes.get(1).getType());
+        assertEquals("4.0", changes.get(1).getVersion());
+        assertEquals(RevisionStateDiff.ChangeType.MODIFIED, changes.get(2).getType());
+        assertEquals(RevisionStateDiff.ChangeType.REMOVED, changes.get(3).getType());
+        assertEquals("3.0", changes.get(3).getVersion());
+        assertSame(added, diff.getCheckoutArtifact());
+
+        List<RevisionStateDiff.FileChange> files = new ArrayList<RevisionStateDiff.FileChange>(changes.get(2).getFiles());
+        assertEquals(3, files.size());
+        for (RevisionStateDiff.FileChange file : files)
+        {
+            if (file.getName().equals("lib-1.0.jar"))
+            {
+                assertEquals(RevisionStateDiff.ChangeType.MODIFIED, file.getType());
+                assertEquals("sha1 changed from s1 to changed", file.getReason());
+            }
+            else if (file.getName().equals("lib-1.0.pom"))
+            {
+                assertEquals(RevisionStateDiff.ChangeType.REMOVED, file.getType());
+            }
+            else
+            {
+                assertEquals("lib-1.0-sources.jar", file.getName());
+                assertEquals(RevisionStateDiff.ChangeType.ADDED, file.getType());
+            }
+        }
+
+        ArtifactoryRevisionState applied = new ArtifactoryRevisionState("libs", "org.acme", "lib", diff.apply(baseline));
+        assertTrue(RevisionStateDiff.compute(applied, state).isEmpty());
+        assertNull(applied.getVersion("3.0"));
+        assertEquals(4, applied.getArtifacts().size());
+    }
+
+    @Test
+    public void testRemovalsAreNotCheckedOut()
+    {
+        ArtifactoryRevisionState baseline = createState(createArtifact("1.0", "lib-1.0.jar", "s1"), createArtifact("2.0", "lib-2.0.jar", "s2"));
+        ArtifactoryRevisionState state = createState(createArtifact("2.0", "lib-2.0.jar", "s2"));
+
+        RevisionStateDiff diff = RevisionStateDiff.compute(baseline, state);
+        assertFalse(diff.isEmpty());
+        assertEquals(RevisionStateDiff.ChangeType.REMOVED, diff.getChanges().get(0).getType());
+        assertNull(diff.getCheckoutArtifact());
+    }
+
+    private static Artifact createPublishedArtifact(String version, String created)
+    {
+        HashMap<String, FileMetadata> metadata = new HashMap<String, FileMetadata>();
+        metadata.put("lib-" + version + ".jar", new FileMetadata("m", "s" + version, 10, created));
+        return new Artifact(version, metadata);
+    }
+
+    @Test
+    public void testNewestOfSeveralPublishedVersionsIsCheckedOut()
+    {
+        ArtifactoryRevisionState baseline = createState(createPublishedArtifact("1.0", "2014-01-01T00:00:00.000Z"));
+
+        // The server lists 1.10 before 1.9, although 1.9 was published last
+        Artifact newest = createPublishedArtifact("1.9", "2014-03-01T00:00:00.000Z");
+        ArtifactoryRevisionState state = createState(
+            createPublishedArtifact("1.0", "2014-01-01T00:00:00.000Z"),
+            createPublishedArtifact("1.10", "2014-02-01T00:00:00.000Z"),
+            newest);
+
+        RevisionStateDiff diff = RevisionStateDiff.compute(baseline, state);
+        assertEquals(2, diff.getChanges().size());
+        assertSame(newest, diff.getCheckoutArtifact());
+
+        // Both versions are recorded, the older one is superseded by the one that was checked out
+        assertTrue(RevisionStateDiff.compute(state, createState(diff.apply(baseline).toArray(new Artifact[0]))).isEmpty());
+    }
+}
@@ -0,0 +1,123 @@
+package com.pason.plugins.artifactorypolling;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class RevisionStateFileTest {
+
+    private static final String MD5 = "106cd40a9210249f791afebcd0012fa7";
+    private static final String SHA1 = "f4a2f41ea4c23d151cd7a4fde5989b56cc42873e";
+
+    private File file;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        file = File.createTempFile("artifactoryVersions", ".state");
+    }
+
+    @After
+    public void tearDown()
+    {
+        file.delete();
+    }
+
+    private static ArtifactoryRevisionState createState()
+    {
+        HashMap<String, FileMetadata> first = new HashMap<String, FileMetadata>();
+        first.put("lib-1.0.jar", new FileMetadata(MD5, SHA1, 123456, "2014-01-20T15:21:43.221-07:00"));
+        first.put("docs/index.html", new FileMetadata(null, "NOT-HEX", 0));
+        HashMap<String, FileMetadata> second = new HashMap<String, FileMetadata>();
+        second.put("lib-2.0.jar", new FileMetadata(MD5.toUpperCase(), SHA1, 1L << 40));
+
+        ArrayList<Artifact> artifacts = new ArrayList<Artifact>();
+        artifacts.add(new Artifact("1.0", first, "2014-01-01T00:00:00.000Z"));
+        artifacts.add(new Artifact("2.0", second));
+        return new ArtifactoryRevisionState("libs", "org.acme", "lib", artifacts);
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception
+    {
+        ArtifactoryRevisionState state = createState();
+        state.toFile(file);
+
+        assertTrue(RevisionStateFile.isBinary(file));
+        ArtifactoryRevisionState read = ArtifactoryRevisionState.fromFile(file);
+        assertEquals("libs", read.getRepo());
+        assertEquals("org.acme", read.getGroupID());
+        assertEquals("lib", read.getArtifactID());
+        assertEquals(2, read.getArtifacts().size());
+        assertNull(ArtifactoryRevisionState.compareRevisionStates(state, read));
+        assertNull(ArtifactoryRevisionState.compareRevisionStates(read, state));
+        assertEquals(state.getDigest(), read.getDigest());
+        assertEquals(state.getVersion("1.0").getDigest(), read.getVersion("1.0").getDigest());
+
+        FileMetadata jar = read.getVersion("1.0").getFileMetadata().get("lib-1.0.jar");
+        assertEquals(MD5, jar.getMD5Sum());
+        assertEquals(SHA1, jar.getSHA1Sum());
+        assertEquals(123456, jar.getSize());
+        assertEquals("2014-01-20T15:21:43.221-07:00", jar.getCreated());
+        assertEquals("2014-01-01T00:00:00.000Z", read.getVersion("1.0").getLastModified());
+
+        FileMetadata docs = read.getVersion("1.0").getFileMetadata().get("docs/index.html");
+        assertNull(docs.getMD5Sum());
+        assertEquals("NOT-HEX", docs.getSHA1Sum());
+        assertNull(docs.getCreated());
+
+        FileMetadata large = read.getVersion("2.0").getFileMetadata().get("lib-2.0.jar");
+        assertEquals(MD5.toUpperCase(), large.getMD5Sum());
+        assertEquals(1L << 40, large.getSize());
+        assertNull(read.getVersion("2.0").getLastModified());
+    }
+
+    @Test
+    public void testBinaryIsSmallerThanJSON() throws Exception
+    {
+        ArrayList<Artifact> artifacts = new ArrayList<Artifact>();
+        for (int i = 0; i < 100; i++)
+        {
+            HashMap<String, FileMetadata> files = new HashMap<String, FileMetadata>();
+            files.put("lib-1." + i + ".jar", new FileMetadata(MD5, SHA1, 123456));
+            files.put("lib-1." + i + ".pom", new FileMetadata(MD5, SHA1, 1234));
+            files.put("lib-1." + i + "-sources.jar", new FileMetadata(MD5, SHA1, 12345));
+            artifacts.add(new Artifact("1." + i, files));
+        }
+        ArtifactoryRevisionState state = new ArtifactoryRevisionState("libs", "org.acme", "lib", artifacts);
+        state.toFile(file);
+        assertTrue(file.length() < state.toJSON().toString().length() / 2);
+    }
+
+    @Test
+    public void testReadsLegacyJSON() throws Exception
+    {
+        ArtifactoryRevisionState state = createState();
+        FileWriter writer = new FileWriter(file);
+        state.toJSON().write(writer);
+        writer.close();
+
+        assertFalse(RevisionStateFile.isBinary(file));
+        ArtifactoryRevisionState read = ArtifactoryRevisionState.fromFile(file);
+        assertEquals("lib", read.getArtifactID());
+        assertNull(ArtifactoryRevisionState.compareRevisionStates(state, read));
+    }
+
+    @Test
+    public void testTruncatedFileIsBase() throws Exception
+    {
+        createState().toFile(file);
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.setLength(raf.length() / 2);
+        raf.close();
+
+        assertSame(ArtifactoryRevisionState.BASE, ArtifactoryRevisionState.fromFile(file));
+    }
+}
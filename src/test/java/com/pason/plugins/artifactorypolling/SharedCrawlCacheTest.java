@@ -0,0 +1,197 @@
+package com.pason.plugins.artifactorypolling;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class SharedCrawlCacheTest {
+
+    private static final String KEY = SharedCrawlCache.key(CrawlMode.STORAGE, "libs", "org.acme", "lib", "+");
+
+    @Test
+    public void testConcurrentCrawlsAreShared() throws Exception
+    {
+        final SharedCrawlCache cache = new SharedCrawlCache(60);
+        final AtomicInteger crawls = new AtomicInteger();
+        final CountDownLatch release = new CountDownLatch(1);
+        final Callable<ArtifactoryRevisionState> crawl = new Callable<ArtifactoryRevisionState>() {
+            public ArtifactoryRevisionState call() throws Exception
+            {
+                crawls.incrementAndGet();
+                release.await();
+                return new ArtifactoryRevisionState("libs", "org.acme", "lib", new ArrayList<Artifact>());
+            }
+        };
+
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try
+        {
+            ArrayList<Future<ArtifactoryRevisionState>> results = new ArrayList<Future<ArtifactoryRevisionState>>();
+            for (int i = 0; i < 4; i++)
+            {
+                results.add(pool.submit(new Callable<ArtifactoryRevisionState>() {
+                    public ArtifactoryRevisionState call() throws Exception
+                    {
+                        return cache.get(KEY, crawl);
+                    }
+                }));
+            }
+            Thread.sleep(200);
+            release.countDown();
+
+            ArtifactoryRevisionState first = results.get(0).get();
+            for (Future<ArtifactoryRevisionState> result : results)
+            {
+                assertSame(first, result.get());
+            }
+            assertSame(first, cache.get(KEY, crawl));
+            assertEquals(1, crawls.get());
+            assertEquals(1, cache.getMisses());
+            assertEquals(4, cache.getHits());
+        }
+        finally
+        {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testFailedCrawlIsNotShared() throws Exception
+    {
+        SharedCrawlCache cache = new SharedCrawlCache(60);
+        try
+        {
+            cache.get(KEY, new Callable<ArtifactoryRevisionState>() {
+                public ArtifactoryRevisionState call() throws Exception
+                {
+                    throw new IOException("Server unavailable");
+                }
+            });
+            fail("Expected the failure to be reported");
+        }
+        catch (IOException e)
+        {
+            assertEquals("Server unavailable", e.getMessage());
+        }
+
+        ArtifactoryRevisionState state = cache.get(KEY, new Callable<ArtifactoryRevisionState>() {
+            public ArtifactoryRevisionState call()
+            {
+                return new ArtifactoryRevisionState("libs", "org.acme", "lib", new ArrayList<Artifact>());
+            }
+        });
+        assertNotNull(state);
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    public void testExpiredCrawlIsRepeated() throws Exception
+    {
+        SharedCrawlCache cache = new SharedCrawlCache(0);
+        final AtomicInteger crawls = new AtomicInteger();
+        Callable<ArtifactoryRevisionState> crawl = new Callable<ArtifactoryRevisionState>() {
+            public ArtifactoryRevisionState call()
+            {
+                crawls.incrementAndGet();
+                return new ArtifactoryRevisionState("libs", "org.acme", "lib", new ArrayList<Artifact>());
+            }
+        };
+
+        cache.get(KEY, crawl);
+        cache.get(KEY, crawl);
+        assertEquals(2, crawls.get());
+    }
+
+    private static void assertWaitersCrawlAgain(final Exception interruption) throws Exception
+    {
+        final SharedCrawlCache cache = new SharedCrawlCache(60);
+        final AtomicInteger crawls = new AtomicInteger();
+        final CountDownLatch release = new CountDownLatch(1);
+        final Callable<ArtifactoryRevisionState> crawl = new Callable<ArtifactoryRevisionState>() {
+            public ArtifactoryRevisionState call() throws Exception
+            {
+                if (crawls.incrementAndGet() == 1)
+                {
+                    release.await();
+                    throw interruption;
+                }
+                return new ArtifactoryRevisionState("libs", "org.acme", "lib", new ArrayList<Artifact>());
+            }
+        };
+        Callable<ArtifactoryRevisionState> get = new Callable<ArtifactoryRevisionState>() {
+            public ArtifactoryRevisionState call() throws Exception
+            {
+                return cache.get(KEY, crawl);
+            }
+        };
+
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try
+        {
+            Future<ArtifactoryRevisionState> owner = pool.submit(get);
+            Thread.sleep(200);
+            Future<ArtifactoryRevisionState> waiter = pool.submit(get);
+            Thread.sleep(200);
+            release.countDown();
+
+            try
+            {
+                owner.get();
+                fail("Expected the owner to be interrupted");
+            }
+            catch (ExecutionException e)
+            {
+                assertSame(interruption, e.getCause());
+            }
+            assertNotNull(waiter.get());
+            assertEquals(2, crawls.get());
+        }
+        finally
+        {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testInterruptedCrawlIsRepeatedByWaiters() throws Exception
+    {
+        assertWaitersCrawlAgain(new InterruptedException());
+    }
+
+    @Test
+    public void testInterruptedRequestIsRepeatedByWaiters() throws Exception
+    {
+        assertWaitersCrawlAgain(new InterruptedIOException("Interrupted while waiting to retry"));
+    }
+
+    @Test
+    public void testStatesReadWithoutTheCacheAreShared() throws Exception
+    {
+        SharedCrawlCache cache = new SharedCrawlCache(60);
+        assertNull(cache.peek(KEY));
+
+        ArtifactoryRevisionState state = new ArtifactoryRevisionState("libs", "org.acme", "lib", new ArrayList<Artifact>());
+        cache.put(KEY, state);
+        assertSame(state, cache.peek(KEY));
+        assertSame(state, cache.get(KEY, new Callable<ArtifactoryRevisionState>() {
+            public ArtifactoryRevisionState call()
+            {
+                throw new AssertionError("The shared state should be used");
+            }
+        }));
+        assertEquals(0, cache.getMisses());
+
+        cache.invalidate("libs", "org.acme", "lib");
+        assertNull(cache.peek(KEY));
+    }
+}
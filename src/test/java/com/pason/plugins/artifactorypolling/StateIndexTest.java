@@ -0,0 +1,55 @@
+package com.pason.plugins.artifactorypolling;
+
+import java.io.File;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class StateIndexTest {
+
+    private File file;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        file = File.createTempFile("artifactoryVersions", ".index");
+        file.delete();
+    }
+
+    @After
+    public void tearDown()
+    {
+        file.delete();
+    }
+
+    @Test
+    public void testMissingKey()
+    {
+        assertEquals(-1, new StateIndex(file).get("libs:org.acme:lib:+"));
+    }
+
+    @Test
+    public void testPutIsPersisted() throws Exception
+    {
+        new StateIndex(file).put("libs:org.acme:lib:+", 12, true);
+        new StateIndex(file).put("libs:org.acme:other:+", 3, true);
+
+        StateIndex index = new StateIndex(file);
+        assertEquals(12, index.get("libs:org.acme:lib:+"));
+        assertEquals(3, index.get("libs:org.acme:other:+"));
+    }
+
+    @Test
+    public void testOnlyNewerBuildsReplace() throws Exception
+    {
+        StateIndex index = new StateIndex(file);
+        index.put("libs:org.acme:lib:+", 12, true);
+        index.put("libs:org.acme:lib:+", 10, true);
+        assertEquals(12, index.get("libs:org.acme:lib:+"));
+
+        index.put("libs:org.acme:lib:+", 10, false);
+        assertEquals(10, index.get("libs:org.acme:lib:+"));
+    }
+}
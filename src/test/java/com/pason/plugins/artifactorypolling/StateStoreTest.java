@@ -0,0 +1,185 @@
+package com.pason.plugins.artifactorypolling;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class StateStoreTest {
+
+    private File root;
+    private StateStore store;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        root = File.createTempFile("artifactoryStates", "");
+        root.delete();
+        root.mkdirs();
+        store = new StateStore(new File(root, StateStore.DIRECTORY_NAME));
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        FileUtils.deleteDirectory(root);
+    }
+
+    private static Artifact createArtifact(String version)
+    {
+        HashMap<String, FileMetadata> files = new HashMap<String, FileMetadata>();
+        files.put("lib-" + version + ".jar", new FileMetadata("m" + version, "s" + version, 10));
+        return new Artifact(version, files);
+    }
+
+    private static ArtifactoryRevisionState createState(String... versions)
+    {
+        ArrayList<Artifact> artifacts = new ArrayList<Artifact>();
+        for (String version : versions)
+        {
+            artifacts.add(createArtifact(version));
+        }
+        return new ArtifactoryRevisionState("libs", "org.acme", "lib", artifacts);
+    }
+
+    private int countChunks()
+    {
+        return countChunks(store.getDirectory());
+    }
+
+    private static int countChunks(File directory)
+    {
+        int chunks = 0;
+        for (String name : directory.list())
+        {
+            if (name.matches("[0-9a-f]{40}"))
+            {
+                chunks++;
+            }
+        }
+        return chunks;
+    }
+
+    @Test
+    public void testBuildsShareChunks() throws Exception
+    {
+        File first = new File(root, "1");
+        File second = new File(root, "2");
+        store.write(createState("1.0", "2.0"), first);
+        store.write(createState("1.0", "2.0", "3.0"), second);
+
+        assertTrue(StateStore.isManifest(first));
+        assertEquals(3, countChunks());
+
+        ArtifactoryRevisionState read = ArtifactoryRevisionState.fromFile(second, store);
+        assertEquals("lib", read.getArtifactID());
+        assertEquals(3, read.getArtifacts().size());
+        assertEquals("3.0", read.getArtifacts().get(2).getVersion());
+        assertNull(ArtifactoryRevisionState.compareRevisionStates(createState("1.0", "2.0", "3.0"), read));
+    }
+
+    @Test
+    public void testReleaseDeletesUnreferencedChunks() throws Exception
+    {
+        File first = new File(root, "1");
+        File second = new File(root, "2");
+        store.write(createState("1.0", "2.0"), first);
+        store.write(createState("1.0", "3.0"), second);
+        assertEquals(3, countChunks());
+
+        store.release(first);
+        assertEquals(2, countChunks());
+        assertEquals(2, ArtifactoryRevisionState.fromFile(second, store).getArtifacts().size());
+
+        store.release(second);
+        assertEquals(0, countChunks());
+    }
+
+    @Test
+    public void testRewriteReleasesReplacedManifest() throws Exception
+    {
+        File manifest = new File(root, "1");
+        store.write(createState("1.0"), manifest);
+        store.write(createState("2.0"), manifest);
+
+        store.release(manifest);
+        assertEquals(0, countChunks());
+    }
+
+    @Test
+    public void testDerivedStateReusesChunks() throws Exception
+    {
+        File first = new File(root, "1");
+        File second = new File(root, "2");
+        store.write(createState("1.0", "2.0"), first);
+
+        ArrayList<Artifact> artifacts = new ArrayList<Artifact>(store.read(first).getArtifacts());
+        artifacts.add(createArtifact("3.0"));
+        ArtifactoryRevisionState derived = new ArtifactoryRevisionState("libs", "org.acme", "lib", artifacts);
+        store.write(derived, second, first);
+        assertEquals(3, countChunks());
+        assertNull(ArtifactoryRevisionState.compareRevisionStates(createState("1.0", "2.0", "3.0"), store.read(second)));
+
+        store.release(first);
+        assertEquals(3, countChunks());
+    }
+
+    @Test
+    public void testDeletedChunkIsWrittenAgain() throws Exception
+    {
+        File first = new File(root, "1");
+        File second = new File(root, "2");
+        store.write(createState("1.0"), first);
+        ArtifactoryRevisionState read = store.read(first);
+
+        // The build of the previous state was deleted before this one was written
+        store.release(first);
+        assertEquals(0, countChunks());
+
+        store.write(read, second, first);
+        assertEquals(1, countChunks());
+        assertEquals("1.0", store.read(second).getArtifacts().get(0).getVersion());
+    }
+
+    @Test
+    public void testReferencesAreReadAgainByANewProcess() throws Exception
+    {
+        File first = new File(root, "1");
+        File second = new File(root, "2");
+        store.write(createState("1.0", "2.0"), first);
+        store.write(createState("1.0", "3.0"), second);
+
+        // The journal of the counts is all there is on disk, another directory has no counts in memory yet
+        File moved = new File(root, "moved");
+        assertTrue(store.getDirectory().renameTo(moved));
+        StateStore reopened = new StateStore(moved);
+
+        reopened.release(first);
+        assertEquals(2, countChunks(moved));
+        assertEquals(2, ArtifactoryRevisionState.fromFile(second, reopened).getArtifacts().size());
+        reopened.release(second);
+        assertEquals(0, countChunks(moved));
+    }
+
+    @Test
+    public void testJournalIsFoldedIntoTheReferences() throws Exception
+    {
+        for (int i = 0; i < 600; i++)
+        {
+            store.write(createState("1.0", "2.0"), new File(root, String.valueOf(i)));
+        }
+        assertTrue(new File(store.getDirectory(), "references.properties").exists());
+        assertEquals(2, countChunks());
+
+        for (int i = 0; i < 600; i++)
+        {
+            store.release(new File(root, String.valueOf(i)));
+        }
+        assertEquals(0, countChunks());
+    }
+}
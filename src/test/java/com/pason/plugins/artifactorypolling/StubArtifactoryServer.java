@@ -0,0 +1,136 @@
+package com.pason.plugins.artifactorypolling;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * A local stand-in for an artifactory server that answers requests with canned JSON
+ */
+public class StubArtifactoryServer {
+
+    private final HttpServer server;
+    private final Map<String, String> responses = Collections.synchronizedMap(new HashMap<String, String>());
+    private final Map<String, String> eTags = Collections.synchronizedMap(new HashMap<String, String>());
+    private final List<String> requests = Collections.synchronizedList(new ArrayList<String>());
+    private final List<String> bodies = Collections.synchronizedList(new ArrayList<String>());
+    private final Map<String, int[]> failures = Collections.synchronizedMap(new HashMap<String, int[]>());
+    private volatile boolean compress = false;
+
+    public StubArtifactoryServer() throws IOException
+    {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException
+            {
+                String uri = exchange.getRequestURI().toString();
+                InputStream in = exchange.getRequestBody();
+                bodies.add(IOUtils.toString(in, "UTF-8"));
+                in.close();
+                requests.add(exchange.getRequestMethod() + " " + uri);
+
+                int[] failure = failures.get(uri);
+                if (failure != null && failure[1] > 0)
+                {
+                    failure[1]--;
+                    exchange.sendResponseHeaders(failure[0], -1);
+                    exchange.close();
+                    return;
+                }
+
+                String response = responses.get(uri);
+                String eTag = eTags.get(uri);
+                if (eTag != null)
+                {
+                    exchange.getResponseHeaders().add("ETag", eTag);
+                    if (eTag.equals(exchange.getRequestHeaders().getFirst("If-None-Match")))
+                    {
+                        exchange.sendResponseHeaders(304, -1);
+                        exchange.close();
+                        return;
+                    }
+                }
+
+                byte[] data = response == null ? new byte[0] : response.getBytes("UTF-8");
+                String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+                if (compress && data.length > 0 && acceptEncoding != null && acceptEncoding.contains("gzip"))
+                {
+                    ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+                    GZIPOutputStream gzip = new GZIPOutputStream(compressed);
+                    gzip.write(data);
+                    gzip.close();
+                    data = compressed.toByteArray();
+                    exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+                }
+                exchange.getResponseHeaders().add("Content-Type", "application/json");
+                exchange.sendResponseHeaders(response == null ? 404 : 200, data.length == 0 ? -1 : data.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(data);
+                out.close();
+            }
+        });
+        server.start();
+    }
+
+    /** The URL of the stand-in, ending in '/' */
+    public String getURL()
+    {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/artifactory/";
+    }
+
+    /** Answers requests for the path (relative to the artifactory URL, including any query) with the JSON */
+    public void respond(String path, String json)
+    {
+        responses.put("/artifactory/" + path, json);
+    }
+
+    /** Answers requests for the path with the JSON and the ETag, and with 304 when the ETag is sent back */
+    public void respond(String path, String json, String eTag)
+    {
+        respond(path, json);
+        eTags.put("/artifactory/" + path, eTag);
+    }
+
+    /** Answers the next requests for the path with the status instead of the response */
+    public void fail(String path, int status, int times)
+    {
+        failures.put("/artifactory/" + path, new int[] { status, times });
+    }
+
+    /** Whether or not to gzip responses for clients that accept it */
+    public void setCompress(boolean compress)
+    {
+        this.compress = compress;
+    }
+
+    /** Every request received so far as "METHOD /uri" */
+    public List<String> getRequests()
+    {
+        return new ArrayList<String>(requests);
+    }
+
+    /** Every request body received so far */
+    public List<String> getBodies()
+    {
+        return new ArrayList<String>(bodies);
+    }
+
+    public void stop()
+    {
+        server.stop(0);
+    }
+}
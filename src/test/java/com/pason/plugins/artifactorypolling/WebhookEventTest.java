@@ -0,0 +1,38 @@
+package com.pason.plugins.artifactorypolling;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class WebhookEventTest {
+
+    @Test
+    public void testBuiltInWebhookPayload()
+    {
+        WebhookEvent event = WebhookEvent.fromJSON(
+            "{\"domain\": \"artifact\", \"event_type\": \"deployed\", \"data\": {\"repo_key\": \"libs-release-local\", "
+            + "\"path\": \"org/acme/lib/1.0/lib-1.0.jar\", \"name\": \"lib-1.0.jar\", \"size\": 1024, \"sha256\": \"abc\"}}");
+
+        assertEquals("deployed", event.getType());
+        assertEquals("libs-release-local", event.getRepo());
+        assertEquals("org/acme/lib/1.0/lib-1.0.jar", event.getPath());
+    }
+
+    @Test
+    public void testUserPluginPayload()
+    {
+        WebhookEvent event = WebhookEvent.fromJSON(
+            "{\"artifactory\": {\"webhook\": {\"event\": \"storage.afterDelete\", \"data\": "
+            + "{\"repoPath\": {\"repoKey\": \"libs-release-local\", \"path\": \"/org/acme/lib/1.0/\"}}}}}");
+
+        assertEquals("storage.afterDelete", event.getType());
+        assertEquals("libs-release-local", event.getRepo());
+        assertEquals("org/acme/lib/1.0", event.getPath());
+    }
+
+    @Test
+    public void testUnrelatedPayload()
+    {
+        assertNull(WebhookEvent.fromJSON("{\"domain\": \"build\", \"event_type\": \"uploaded\", \"data\": {\"build_name\": \"x\"}}"));
+        assertNull(WebhookEvent.fromJSON("not json"));
+    }
+}